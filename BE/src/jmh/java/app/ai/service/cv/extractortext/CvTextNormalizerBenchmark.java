@@ -0,0 +1,71 @@
+package app.ai.service.cv.extractortext;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh CvTextNormalizer (1 lượt char[]) với chuỗi replaceAll cũ của PDFTextExtractor / DOCXTextExtractor
+ * trên văn bản kiểu OCR lớn (~200k dòng: tab, NBSP, khoảng trắng đầu/cuối dòng, nhiều dòng trống, \r\n).
+ * Chạy: mvn -Pbenchmark compile exec:exec  (thêm -Djmh.args="..." để truyền tham số cho JMH)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class CvTextNormalizerBenchmark {
+
+    @Param({"200000"})
+    public int lines;
+
+    private String text;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        String[] words = {"Kinh", "nghiệm", "Java", "Spring", "Boot", "Công", "ty", "TNHH", "2020-06", "React",
+                "phát", "triển", "hệ", "thống", "Đại", "học", "Bách", "Khoa", "SQL", "|", "•"};
+        StringBuilder sb = new StringBuilder(lines * 48);
+        for (int i = 0; i < lines; i++) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                // Dòng trống / chỉ có khoảng trắng (OCR hay sinh ra giữa các khối)
+                sb.append(random.nextBoolean() ? "" : "  \t ");
+            } else {
+                if (kind == 1) sb.append("    ");
+                int n = 3 + random.nextInt(8);
+                for (int w = 0; w < n; w++) {
+                    sb.append(words[random.nextInt(words.length)]);
+                    int gap = random.nextInt(12);
+                    sb.append(gap == 0 ? "\t\t" : gap == 1 ? "\u00A0\u00A0" : gap == 2 ? " \t" : " ");
+                }
+                if (kind == 2) sb.append("   ");
+            }
+            sb.append(random.nextInt(4) == 0 ? "\r\n" : "\n");
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public String singlePass() {
+        return CvTextNormalizer.normalize(text);
+    }
+
+    // cleanForAI cũ của DOCXTextExtractor
+    @Benchmark
+    public String regexChainDocx() {
+        return text.replaceAll("[\\t\\u00A0]+", " ")
+                   .replaceAll("\\n\\s*\\n", "\n\n")
+                   .replaceAll("(?m)^\\s+|\\s+$", "")
+                   .trim();
+    }
+
+    // cleanForAI cũ của PDFTextExtractor
+    @Benchmark
+    public String regexChainPdf() {
+        return text.replaceAll("[\\t\\u00A0]+", " ").replaceAll("\\n\\s*\\n", "\n\n").trim();
+    }
+}
@@ -2,6 +2,7 @@ package app.admin.controller;
 
 import app.admin.dto.request.MaintenanceRequest;
 import app.admin.service.SystemSettingService;
+import app.ai.service.matching.SkillLexicon;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -13,9 +14,11 @@ import java.util.Map;
 public class AdminSettingController {
 
     private final SystemSettingService settingService;
+    private final SkillLexicon skillLexicon;
 
-    public AdminSettingController(SystemSettingService settingService) {
+    public AdminSettingController(SystemSettingService settingService, SkillLexicon skillLexicon) {
         this.settingService = settingService;
+        this.skillLexicon = skillLexicon;
     }
 
     @GetMapping("/maintenance")
@@ -39,4 +42,26 @@ public class AdminSettingController {
                 "message", "Cập nhật chế độ bảo trì thành công"
         ));
     }
+
+    // Nạp lại từ điển kỹ năng ngay (không chờ lượt kiểm tra định kỳ)
+    @PostMapping("/skill-lexicon/reload")
+    public ResponseEntity<?> reloadSkillLexicon() {
+        try {
+            SkillLexicon.Snapshot snapshot = skillLexicon.reload();
+            Map<String, Object> data = new HashMap<>();
+            data.put("version", snapshot.version());
+            data.put("skills", snapshot.entries().size());
+            data.put("variants", snapshot.aliasIds().size());
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Đã nạp lại từ điển kỹ năng",
+                    "data", data
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Không nạp được từ điển kỹ năng: " + e.getMessage()
+            ));
+        }
+    }
 }
@@ -12,14 +12,17 @@ import app.auth.model.User;
 import app.auth.model.enums.UserRole;
 import app.auth.model.enums.UserStatus;
 import app.auth.repository.UserRepository;
+import app.candidate.event.CandidateProfileChangedEvent;
 import app.notification.service.NotificationService;
 import app.recruitment.entity.JobApplication;
 import app.recruitment.entity.JobPosting;
 import app.recruitment.entity.enums.ApplicationStatus;
 import app.recruitment.entity.enums.JobStatus;
+import app.recruitment.event.JobPostingChangedEvent;
 import app.recruitment.repository.JobApplicationRepository;
 import app.recruitment.repository.JobPostingRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -37,6 +40,7 @@ public class ViolationReportService {
     private final JobPostingRepository jobPostingRepo;
     private final JobApplicationRepository jobAppRepo;
     private final NotificationService notificationService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public ViolationReportResponse create(Long reporterId, CreateViolationReportRequest req) {
@@ -152,12 +156,14 @@ public class ViolationReportService {
                 User u = userRepo.findById(r.getTargetId())
                         .orElseThrow(() -> new RuntimeException("User not found: " + r.getTargetId()));
                 u.setStatus(UserStatus.BANNED);
+                eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, u.getId()));
             }
             case UNLOCK_USER -> {
                 ensureTarget(r, ReportTargetType.USER);
                 User u = userRepo.findById(r.getTargetId())
                         .orElseThrow(() -> new RuntimeException("User not found: " + r.getTargetId()));
                 u.setStatus(UserStatus.ACTIVE);
+                eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, u.getId()));
             }
 
             case LOCK_COMPANY, UNLOCK_COMPANY -> {
@@ -175,10 +181,12 @@ public class ViolationReportService {
 
                 // ✅ Ẩn job đúng nghĩa theo enum của bạn
                 job.setStatus(JobStatus.HIDDEN);
+                eventPublisher.publishEvent(new JobPostingChangedEvent(this, job.getId()));
             }
             case DELETE_JOB -> {
                 ensureTarget(r, ReportTargetType.JOB_POSTING);
                 jobPostingRepo.deleteById(r.getTargetId());
+                eventPublisher.publishEvent(new JobPostingChangedEvent(this, r.getTargetId()));
             }
 
             // APPLICATION
@@ -2,9 +2,11 @@ package app.admin.service;
 
 import app.recruitment.entity.JobPosting;
 import app.recruitment.entity.enums.JobStatus;
+import app.recruitment.event.JobPostingChangedEvent;
 import app.recruitment.repository.JobPostingRepository;
 import app.admin.dto.response.AdminJobPostingItemResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,6 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class AdminContentService {
 
     private final JobPostingRepository jobPostingRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Page<AdminJobPostingItemResponse> getPending(Pageable pageable) {
         return jobPostingRepository.findByStatus(JobStatus.PENDING, pageable).map(this::toDto);
@@ -34,6 +37,7 @@ public class AdminContentService {
                 .orElseThrow(() -> new IllegalArgumentException("Job not found: " + jobId));
 
         job.setStatus(JobStatus.PUBLISHED);
+        eventPublisher.publishEvent(new JobPostingChangedEvent(this, jobId));
     }
 
     @Transactional
@@ -42,6 +46,7 @@ public class AdminContentService {
                 .orElseThrow(() -> new IllegalArgumentException("Job not found: " + jobId));
 
         job.setStatus(JobStatus.REJECTED);
+        eventPublisher.publishEvent(new JobPostingChangedEvent(this, jobId));
     }
 
     private AdminJobPostingItemResponse toDto(JobPosting j) {
@@ -6,7 +6,9 @@ import app.auth.model.User;
 import app.auth.model.enums.UserRole;
 import app.auth.model.enums.UserStatus;
 import app.auth.repository.UserRepository;
+import app.candidate.event.CandidateProfileChangedEvent;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -29,13 +31,17 @@ public class AdminUserServiceImpl implements AdminUserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    // Khóa / mở khóa / đổi vai trò -> chỉ mục tìm kiếm ứng viên gỡ hoặc thêm lại hồ sơ
+    private final ApplicationEventPublisher eventPublisher;
     private static final String PW_CHARS = "ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz23456789!@#$%";
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
 
 
-    public AdminUserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public AdminUserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                                ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
     }
 
     private Long getCurrentAdminId() {
@@ -103,6 +109,7 @@ public class AdminUserServiceImpl implements AdminUserService {
 
         user.setStatus(UserStatus.BANNED);
         userRepository.save(user);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
     }
 
     @Override
@@ -121,6 +128,7 @@ public class AdminUserServiceImpl implements AdminUserService {
 
         user.setStatus(UserStatus.ACTIVE);
         userRepository.save(user);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
     }
 
     @Override
@@ -184,6 +192,7 @@ public class AdminUserServiceImpl implements AdminUserService {
 
         user.setUserRole(request.getUserRole());
         User saved = userRepository.save(user);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, saved.getId()));
 
         return AdminUserResponse.builder()
                 .id(saved.getId())
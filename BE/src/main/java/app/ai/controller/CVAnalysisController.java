@@ -3,7 +3,9 @@ package app.ai.controller;
 import app.ai.service.cv.extractortext.CVTextExtractor;
 import app.ai.service.cv.gemini.GeminiService;
 import app.ai.service.cv.gemini.dto.GeminiResponse;
+import app.exception.ExtractionOverloadedException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,6 +24,8 @@ public class CVAnalysisController {
             String rawText = cvTextExtractor.extractText(file);
             GeminiResponse analysisResult = geminiService.parseCV(rawText);
             return ResponseEntity.ok(analysisResult);
+        } catch (ExtractionOverloadedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body("Lỗi xử lý AI: " + e.getMessage());
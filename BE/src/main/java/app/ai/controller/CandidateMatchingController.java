@@ -7,9 +7,11 @@ import app.ai.service.cv.gemini.dto.FastMatchResult;
 import app.ai.service.cv.gemini.dto.MatchResult;
 import app.candidate.model.CandidateProfile;
 import app.candidate.service.CandidateService;
+import app.exception.ExtractionOverloadedException;
 import app.util.SecurityUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -67,6 +69,9 @@ public class CandidateMatchingController {
             MatchResult result = jobMatchingService.matchCandidateWithJobAI(userId, cvText, jobId, profile.getCvFilePath());
             
             return ResponseEntity.ok(result);
+        } catch (ExtractionOverloadedException e) {
+            log.warn("Preview match bị từ chối do pool trích xuất đầy: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
         } catch (Exception e) {
              log.error("Lỗi preview match: ", e);
              return ResponseEntity.internalServerError().build();
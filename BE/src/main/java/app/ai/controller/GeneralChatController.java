@@ -2,10 +2,13 @@ package app.ai.controller;
 
 import app.ai.dto.chat.ChatRequest;
 import app.ai.dto.chat.ChatResponse;
+import app.ai.service.AiSseStreamer;
 import app.ai.service.cv.gemini.GeminiService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -13,6 +16,7 @@ import org.springframework.web.bind.annotation.*;
 public class GeneralChatController {
 
     private final GeminiService geminiService;
+    private final AiSseStreamer sseStreamer;
 
     @PostMapping("/ask")
     public ResponseEntity<ChatResponse> askAI(@RequestBody ChatRequest request) {
@@ -32,4 +36,13 @@ public class GeneralChatController {
                     .body(new ChatResponse("Lỗi hệ thống AI: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    // [MỚI] Chat dạng streaming (SSE): trả từng đoạn câu trả lời ngay khi Gemini sinh ra
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter askAIStream(@RequestBody ChatRequest request) {
+        if (request.getMessage() == null || request.getMessage().trim().isEmpty()) {
+            return sseStreamer.error("Vui lòng nhập nội dung câu hỏi.");
+        }
+        return sseStreamer.stream(onToken -> geminiService.streamChatWithAI(request.getMessage(), onToken));
+    }
+}
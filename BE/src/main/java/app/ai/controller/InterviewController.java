@@ -3,16 +3,21 @@ package app.ai.controller;
 import app.ai.dto.InterviewChatRequest;
 import app.ai.dto.InterviewDTO;
 import app.ai.models.InterviewSession;
+import app.ai.service.AiSseStreamer;
 import app.ai.service.InterviewService;
+import app.ai.service.cv.gemini.GeminiService;
 import app.auth.dto.response.MessageResponse;
 import app.auth.model.User;
 import app.util.SecurityUtils;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
@@ -22,6 +27,8 @@ public class InterviewController {
 
     private final InterviewService interviewService;
     private final SecurityUtils securityUtils;
+    private final GeminiService geminiService;
+    private final AiSseStreamer sseStreamer;
 
     // 1. BẮT ĐẦU: Tạo Session + Trả về lời chào
     @PostMapping("/start")
@@ -57,6 +64,42 @@ public class InterviewController {
         }
     }
 
+    // 1b. [MỚI] BẮT ĐẦU dạng streaming: event "meta" chứa sessionId, sau đó lời chào được đẩy từng đoạn
+    @PostMapping(value = "/start/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter startInterviewStream(@RequestBody Map<String, Long> request) {
+        try {
+            Long jobId = request.get("jobId");
+            User user = securityUtils.getCurrentUser();
+
+            InterviewSession session = interviewService.startInterview(user.getId(), jobId);
+            // Đọc DB dựng prompt trên thread request, phần gọi AI chạy ngoài transaction
+            String prompt = interviewService.buildGreetingPrompt(user.getId(), jobId);
+
+            return sseStreamer.stream(Map.of("sessionId", session.getId()),
+                    onToken -> geminiService.streamAiChat(prompt, onToken));
+        } catch (Exception e) {
+            return sseStreamer.error(e.getMessage());
+        }
+    }
+
+    // 2b. [MỚI] CHAT dạng streaming (SSE)
+    @PostMapping(value = "/{sessionId}/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@PathVariable Long sessionId,
+                                 @RequestBody InterviewChatRequest request) {
+        try {
+            Optional<String> prompt = interviewService.buildChatTurnPrompt(sessionId, request.getMessage(), request.getHistory());
+            if (prompt.isEmpty()) {
+                return sseStreamer.stream(onToken -> {
+                    onToken.accept(InterviewService.SESSION_ENDED_MESSAGE);
+                    return InterviewService.SESSION_ENDED_MESSAGE;
+                });
+            }
+            return sseStreamer.stream(onToken -> geminiService.streamAiChat(prompt.get(), onToken));
+        } catch (Exception e) {
+            return sseStreamer.error(e.getMessage());
+        }
+    }
+
     // 3. KẾT THÚC: Nhận (Full History) -> Chấm điểm -> Lưu DB
     @PostMapping("/{sessionId}/end")
     public ResponseEntity<?> endInterview(@PathVariable Long sessionId, 
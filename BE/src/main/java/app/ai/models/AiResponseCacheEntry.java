@@ -0,0 +1,37 @@
+package app.ai.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tầng cache bền vững (Postgres) cho kết quả Gemini, khóa theo SHA-256 của (template, input, nhiệt độ, model).
+ */
+@Entity
+@Table(name = "ai_response_cache", indexes = {
+        @Index(name = "idx_ai_cache_expires_at", columnList = "expires_at")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiResponseCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(nullable = false, length = 40)
+    private String feature;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String response;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
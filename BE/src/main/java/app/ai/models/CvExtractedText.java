@@ -0,0 +1,38 @@
+package app.ai.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Văn bản đã trích xuất từ file CV, khóa theo SHA-256 của nội dung file.
+ * Lưu kèm phiên bản bộ trích xuất và nguồn OCR để biết khi nào cần trích xuất lại.
+ * URL trỏ tới nội dung này nằm ở CvTextUrlLink (1 nội dung có thể có nhiều URL).
+ */
+@Entity
+@Table(name = "cv_extracted_texts")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CvExtractedText {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String text;
+
+    @Column(name = "extractor_version", nullable = false)
+    private int extractorVersion;
+
+    // none / tesseract / gemini / gemini+tesseract
+    @Column(name = "ocr_provenance", nullable = false, length = 40)
+    private String ocrProvenance;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
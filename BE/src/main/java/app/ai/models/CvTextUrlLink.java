@@ -0,0 +1,32 @@
+package app.ai.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Liên kết URL file CV (Cloudinary) -> hash nội dung trong cv_extracted_texts.
+ * Nhiều URL có thể trỏ cùng 1 nội dung (upload lại cùng file), nên tách bảng thay vì 1 cột source_url.
+ */
+@Entity
+@Table(name = "cv_extracted_text_urls", indexes = {
+        @Index(name = "idx_cv_text_url_hash", columnList = "content_hash")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CvTextUrlLink {
+
+    @Id
+    @Column(name = "source_url", length = 1000)
+    private String sourceUrl;
+
+    @Column(name = "content_hash", length = 64, nullable = false)
+    private String contentHash;
+
+    @Column(name = "linked_at", nullable = false)
+    private LocalDateTime linkedAt;
+}
@@ -0,0 +1,19 @@
+package app.ai.repository;
+
+import app.ai.models.AiResponseCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IAiResponseCacheRepository extends JpaRepository<AiResponseCacheEntry, String> {
+
+    // Xóa hàng loạt các bản ghi đã hết hạn (không load entity lên RAM)
+    @Modifying
+    @Query("DELETE FROM AiResponseCacheEntry e WHERE e.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
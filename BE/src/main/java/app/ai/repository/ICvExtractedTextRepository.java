@@ -0,0 +1,10 @@
+package app.ai.repository;
+
+import app.ai.models.CvExtractedText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ICvExtractedTextRepository extends JpaRepository<CvExtractedText, String> {
+    // Tra theo URL đi qua ICvTextUrlLinkRepository (URL -> hash)
+}
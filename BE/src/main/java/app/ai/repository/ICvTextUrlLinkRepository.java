@@ -0,0 +1,17 @@
+package app.ai.repository;
+
+import app.ai.models.CvTextUrlLink;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ICvTextUrlLinkRepository extends JpaRepository<CvTextUrlLink, String> {
+
+    // Gỡ liên kết URL cũ (CV đã bị thay), giữ lại văn bản theo hash để dùng nếu file đó được upload lại
+    @Modifying
+    @Query("DELETE FROM CvTextUrlLink l WHERE l.sourceUrl = :url")
+    int detachUrl(@Param("url") String url);
+}
@@ -0,0 +1,104 @@
+package app.ai.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Đẩy câu trả lời AI về trình duyệt qua Server-Sent Events.
+ * Việc gọi Gemini chạy trên pool riêng (không giữ thread Tomcat), mỗi đoạn text là 1 event "token".
+ * Các event: "meta" (dữ liệu mở đầu, tùy chọn) -> nhiều "token" -> "done" hoặc "error".
+ */
+@Component
+@Slf4j
+public class AiSseStreamer {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    public AiSseStreamer(@Value("${ai.stream.pool-size:8}") int poolSize,
+                         @Value("${ai.stream.queue-capacity:50}") int queueCapacity,
+                         @Value("${ai.stream.timeout-ms:120000}") long timeoutMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ai-stream-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.timeoutMs = timeoutMs;
+    }
+
+    public SseEmitter stream(Function<Consumer<String>, String> producer) {
+        return stream(null, producer);
+    }
+
+    /**
+     * @param meta     Dữ liệu gửi ngay ở event đầu tiên (VD: sessionId), có thể null
+     * @param producer Hàm gọi AI, nhận callback onToken và trả về toàn bộ câu trả lời
+     */
+    public SseEmitter stream(Map<String, Object> meta, Function<Consumer<String>, String> producer) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        try {
+            executor.execute(() -> {
+                try {
+                    if (meta != null) {
+                        emitter.send(SseEmitter.event().name("meta").data(meta));
+                    }
+                    producer.apply(token -> send(emitter, "token", Map.of("text", token)));
+                    emitter.send(SseEmitter.event().name("done").data(Map.of()));
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.warn("Streaming AI bị gián đoạn: {}", e.getMessage());
+                    sendErrorAndComplete(emitter, "Lỗi hệ thống AI: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sendErrorAndComplete(emitter, "Hệ thống AI đang quá tải, vui lòng thử lại sau.");
+        }
+        return emitter;
+    }
+
+    public SseEmitter error(String message) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        sendErrorAndComplete(emitter, message);
+        return emitter;
+    }
+
+    private void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException e) {
+            // Client đã đóng kết nối -> dừng đọc tiếp từ Gemini
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sendErrorAndComplete(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(Map.of("message", message)));
+            emitter.complete();
+        } catch (Exception ignored) {
+            emitter.completeWithError(new IllegalStateException(message));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -27,6 +27,7 @@ import app.gamification.model.UserPointAction;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -46,6 +47,8 @@ public class InterviewService {
     // --- SỬA: Dùng EventPublisher thay vì LeaderboardService ---
     private final ApplicationEventPublisher eventPublisher;
 
+    public static final String SESSION_ENDED_MESSAGE = "Phiên phỏng vấn đã kết thúc.";
+
     // --- 1. KHỞI TẠO SESSION ---
     @Transactional
     public InterviewSession startInterview(Long userId, Long jobId) {
@@ -64,22 +67,41 @@ public class InterviewService {
     
     @Transactional(readOnly = true)
     public String getInitialGreeting(Long userId, Long jobId) {
+        return geminiService.callAiChat(buildGreetingPrompt(userId, jobId));
+    }
+
+    /**
+     * [MỚI] Chỉ dựng prompt lời chào. Dùng cho streaming: đọc DB xong trả connection ngay, phần gọi AI chạy ngoài transaction.
+     */
+    @Transactional(readOnly = true)
+    public String buildGreetingPrompt(Long userId, Long jobId) {
         JobPosting job = jobRepository.findById(jobId).orElseThrow();
         String candidateName = getCandidateName(userId);
         String companyName = (job.getCompany() != null) ? job.getCompany().getName() : "Công ty";
 
-        String prompt = promptBuilder.buildStartPrompt(companyName, job.getTitle(), candidateName);
-        return geminiService.callAiChat(prompt);
+        return promptBuilder.buildStartPrompt(companyName, job.getTitle(), candidateName);
     }
 
     // --- 2. XỬ LÝ CHAT (STATELESS) ---
     @Transactional(readOnly = true)
     public String chat(Long sessionId, String newMessage, List<InterviewChatRequest.MessageItem> historyDtos) {
+        Optional<String> prompt = buildChatTurnPrompt(sessionId, newMessage, historyDtos);
+        if (prompt.isEmpty()) {
+            return SESSION_ENDED_MESSAGE;
+        }
+        return geminiService.callAiChat(prompt.get());
+    }
+
+    /**
+     * [MỚI] Dựng prompt cho 1 lượt chat. Trả về Optional.empty() nếu phiên đã kết thúc.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> buildChatTurnPrompt(Long sessionId, String newMessage, List<InterviewChatRequest.MessageItem> historyDtos) {
         InterviewSession session = sessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
 
         if ("COMPLETED".equalsIgnoreCase(session.getStatus())) {
-            return "Phiên phỏng vấn đã kết thúc.";
+            return Optional.empty();
         }
 
         List<InterviewMessage> context = new ArrayList<>();
@@ -91,8 +113,7 @@ public class InterviewService {
         
         context.add(new InterviewMessage("USER", newMessage));
 
-        String prompt = promptBuilder.buildChatPrompt(session.getJobPosting(), context);
-        return geminiService.callAiChat(prompt);
+        return Optional.of(promptBuilder.buildChatPrompt(session.getJobPosting(), context));
     }
 
     // --- 3. KẾT THÚC & CHẤM ĐIỂM ---
@@ -1,7 +1,10 @@
 package app.ai.service;
 
 import app.ai.service.cv.gemini.dto.FastMatchResult;
+import app.ai.service.matching.JobSkillIndex;
+import app.ai.service.matching.SkillLexicon;
 import app.recruitment.entity.JobPosting;
+import app.recruitment.entity.enums.JobStatus;
 import app.recruitment.repository.JobPostingRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +19,8 @@ import java.util.stream.Collectors;
 public class JobFastMatchingService {
 
     private final JobPostingRepository jobPostingRepository;
+    private final JobSkillIndex jobSkillIndex;
+    private final SkillLexicon skillLexicon;
 
     /**
      * TÍNH ĐIỂM NHANH (Jaccard)
@@ -31,49 +36,130 @@ public class JobFastMatchingService {
             return scores;
         }
 
-        // 2. Chuẩn hóa skill ứng viên (Lower case + Trim + Set để tìm nhanh O(1))
-        Set<String> userSkillSet = candidateSkills.stream()
-                .map(s -> s.toLowerCase().trim())
-                .collect(Collectors.toSet());
-
-        // 3. Query DB lấy Job (Đã tối ưu)
-        List<JobPosting> jobs = jobPostingRepository.findAllByIdsWhithSkills(jobIds); // Đảm bảo tên hàm đúng với Repo của bạn
-
-        for (JobPosting job : jobs) {
-            // Lấy list skill từ DB (Có thể null hoặc rỗng)
-            List<String> jobSkillsRaw = job.getExtractedSkills();
-            
-            // XỬ LÝ TRƯỜNG HỢP JOB KHÔNG YÊU CẦU SKILL
-            if (jobSkillsRaw == null || jobSkillsRaw.isEmpty()) {
-                // Job dễ tính, không yêu cầu gì -> Match 100% hoặc 0% tùy policy (thường là 0 để không gây nhiễu)
-                scores.put(job.getId(), new FastMatchResult(0, Collections.emptyList(), Collections.emptyList()));
-                continue;
+        // 2. Job đang PUBLISHED lấy thẳng từ chỉ mục skill trong RAM (so khớp theo id trong từ điển kỹ năng)
+        List<Long> notIndexed = jobIds;
+        if (jobSkillIndex.isReady()) {
+            scores.putAll(jobSkillIndex.score(candidateSkills, jobIds));
+            notIndexed = jobIds.stream().filter(id -> !scores.containsKey(id)).collect(Collectors.toList());
+        }
+
+        // 3. Job ngoài chỉ mục (chưa duyệt, đã ẩn...) hoặc chỉ mục chưa nạp xong -> Query DB,
+        //    skill ứng viên chuẩn hóa qua từ điển kỹ năng -> tập id (JS = JavaScript, ReactJS = React.js...)
+        if (!notIndexed.isEmpty()) {
+            BitSet userSkillSet = skillLexicon.idSet(candidateSkills);
+            List<JobPosting> jobs = jobPostingRepository.findAllByIdsWhithSkills(notIndexed);
+            for (JobPosting job : jobs) {
+                scores.put(job.getId(), compare(userSkillSet, job.getExtractedSkills()));
             }
+        }
 
-            // --- TÍNH TOÁN LOGIC (MATCHED vs MISSING) ---
+        return scores;
+    }
 
-            // A. Tìm Matched (Màu Xanh): Có trong Job VÀ User cũng có
-            List<String> matched = jobSkillsRaw.stream()
-                    .filter(skill -> userSkillSet.contains(skill.toLowerCase().trim()))
-                    .collect(Collectors.toList());
+    /**
+     * Chấm điểm ứng viên với mọi job đang PUBLISHED, chỉ giữ job có điểm >= minScore.
+     * Dùng chỉ mục skill (1 lượt, không chạm DB); chỉ mục chưa sẵn sàng thì quay về query DB.
+     */
+    public Map<Long, FastMatchResult> scoreOpenJobs(List<String> candidateSkills, int minScore) {
+        if (candidateSkills == null || candidateSkills.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (jobSkillIndex.isReady()) {
+            return jobSkillIndex.scoreOpenJobs(candidateSkills, minScore);
+        }
+
+        List<Long> openJobIds = jobPostingRepository.findByStatus(JobStatus.PUBLISHED).stream()
+                .map(JobPosting::getId)
+                .collect(Collectors.toList());
+        if (openJobIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, FastMatchResult> scores = calculateBatchCompatibility(candidateSkills, openJobIds);
+        scores.values().removeIf(r -> r.getMatchScore() < minScore);
+        return scores;
+    }
+
+    /**
+     * Tính điểm nhanh cho 1 cặp (skill ứng viên, skill Job).
+     * Dùng làm phương án dự phòng khi AI không khả dụng.
+     */
+    public FastMatchResult calculateCompatibility(List<String> candidateSkills, List<String> jobSkills) {
+        if (candidateSkills == null || candidateSkills.isEmpty()) {
+            return new FastMatchResult(0, Collections.emptyList(),
+                    jobSkills != null ? new ArrayList<>(jobSkills) : Collections.emptyList());
+        }
+        return compare(skillLexicon.idSet(candidateSkills), jobSkills);
+    }
 
-            // B. Tìm Missing (Màu Đỏ): Có trong Job NHƯNG User không có
-            List<String> missing = jobSkillsRaw.stream()
-                    .filter(skill -> !userSkillSet.contains(skill.toLowerCase().trim()))
-                    .collect(Collectors.toList());
+    private FastMatchResult compare(BitSet userSkillSet, List<String> jobSkillsRaw) {
+        // Bỏ skill trùng (sau chuẩn hóa) giống JobSkillIndex, để cùng 1 job chấm qua chỉ mục hay qua DB đều ra cùng kết quả
+        List<String> jobSkills = distinctSkills(jobSkillsRaw);
 
-            // C. Tính điểm số (0 - 100)
-            // Công thức: (Số skill trùng / Tổng skill Job) * 100
-            int score = 0;
-            if (!jobSkillsRaw.isEmpty()) {
-                score = (int) Math.round(((double) matched.size() / jobSkillsRaw.size()) * 100);
+        // XỬ LÝ TRƯỜNG HỢP JOB KHÔNG YÊU CẦU SKILL
+        if (jobSkills.isEmpty()) {
+            // Job dễ tính, không yêu cầu gì -> Match 100% hoặc 0% tùy policy (thường là 0 để không gây nhiễu)
+            return new FastMatchResult(0, Collections.emptyList(), Collections.emptyList());
+        }
+
+        // --- TÍNH TOÁN LOGIC (MATCHED vs MISSING) ---
+
+        // A. Tìm Matched (Màu Xanh): Có trong Job VÀ User cũng có
+        List<String> matched = jobSkills.stream()
+                .filter(skill -> hasSkill(userSkillSet, skill))
+                .collect(Collectors.toList());
+
+        // B. Tìm Missing (Màu Đỏ): Có trong Job NHƯNG User không có
+        List<String> missing = jobSkills.stream()
+                .filter(skill -> !hasSkill(userSkillSet, skill))
+                .collect(Collectors.toList());
+
+        // C. Tính điểm số (0 - 100)
+        // Công thức: (Số skill trùng / Tổng skill Job) * 100
+        int score = (int) Math.round(((double) matched.size() / jobSkills.size()) * 100);
+        return new FastMatchResult(score, matched, missing);
+    }
+
+    // Giữ tên gốc đầu tiên của mỗi skill (theo id từ điển; skill lạ theo khóa chuẩn hóa), bỏ chuỗi rỗng
+    private List<String> distinctSkills(List<String> jobSkillsRaw) {
+        List<String> result = new ArrayList<>();
+        if (jobSkillsRaw == null) return result;
+        Set<Integer> seenIds = new HashSet<>();
+        Set<String> seenKeys = new HashSet<>();
+        for (String raw : jobSkillsRaw) {
+            if (raw == null) continue;
+            String key = SkillLexicon.key(raw);
+            if (key.isEmpty()) continue;
+            int id = skillLexicon.find(raw);
+            if (id >= 0 ? seenIds.add(id) : seenKeys.add(key)) {
+                result.add(raw.trim());
             }
+        }
+        return result;
+    }
 
-            // 4. Lưu vào Map
-            scores.put(job.getId(), new FastMatchResult(score, matched, missing));
+    /**
+     * Top-K job đang PUBLISHED (điểm >= minScore) đứng sau con trỏ afterRankKey, xem {@link JobSkillIndex#topOpenJobs}.
+     * Chỉ mục chưa sẵn sàng (vừa khởi động) thì chấm điểm qua DB rồi sắp xếp.
+     */
+    public JobSkillIndex.TopJobs topOpenJobs(List<String> candidateSkills, int minScore, int limit, long afterRankKey) {
+        if (candidateSkills == null || candidateSkills.isEmpty()) {
+            return new JobSkillIndex.TopJobs(Collections.emptyList(), 0);
         }
-        
-        return scores;
+        if (jobSkillIndex.isReady()) {
+            return jobSkillIndex.topOpenJobs(candidateSkills, minScore, limit, afterRankKey);
+        }
+
+        Map<Long, FastMatchResult> scores = scoreOpenJobs(candidateSkills, minScore);
+        List<JobSkillIndex.RankedJob> ranked = scores.entrySet().stream()
+                .map(e -> new JobSkillIndex.RankedJob(
+                        JobSkillIndex.rankKey(e.getValue().getMatchScore(), e.getKey()), e.getKey(), e.getValue()))
+                .filter(r -> r.rankKey() < afterRankKey)
+                .sorted(Comparator.comparingLong(JobSkillIndex.RankedJob::rankKey).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+        return new JobSkillIndex.TopJobs(ranked, scores.size());
+    }
+
+    private boolean hasSkill(BitSet userSkillSet, String jobSkill) {
+        int id = skillLexicon.find(jobSkill);
+        return id >= 0 && userSkillSet.get(id);
     }
-    
 }
\ No newline at end of file
@@ -1,12 +1,18 @@
 package app.ai.service;
 
+import app.ai.models.Experience;
 import app.ai.service.cv.CVAnalysisService;
 import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.cv.gemini.cache.SingleFlight;
+import app.ai.service.cv.gemini.dto.FastMatchResult;
 import app.ai.service.cv.gemini.dto.MatchResult;
+import app.ai.service.cv.gemini.prompt.PromptCompactor;
 import app.auth.model.User;
 import app.auth.repository.UserRepository;
 import app.candidate.model.CandidateProfile;
 import app.candidate.repository.CandidateProfileRepository;
+import app.exception.AiUnavailableException;
+import app.exception.ExtractionOverloadedException;
 import app.recruitment.entity.CVAnalysisResult;
 import app.recruitment.entity.JobApplication;
 import app.recruitment.entity.JobPosting;
@@ -16,6 +22,7 @@ import app.recruitment.repository.JobPostingRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -36,6 +43,33 @@ public class JobMatchingService {
     private final ObjectMapper objectMapper;
     private final UserRepository userRepository;
     private final CVAnalysisResultRepository analysisRepository;
+    private final SingleFlight singleFlight;
+    private final JobFastMatchingService fastMatchingService;
+    private final PromptCompactor promptCompactor;
+
+    // Đánh dấu kết quả chấm nhanh (không qua AI) để lần sàng lọc sau chấm lại bằng AI
+    public static final String FALLBACK_EVALUATION_PREFIX = "[Tạm tính]";
+
+    // Phần cố định của prompt batch và phần output dự trữ cho mỗi ứng viên (ước lượng token)
+    private static final int BATCH_PROMPT_OVERHEAD_TOKENS = 600;
+    private static final int BATCH_OUTPUT_TOKENS_PER_ITEM = 250;
+
+    @Value("${gemini.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    // K tối đa mỗi batch; K thực tế còn bị giới hạn bởi ngân sách token
+    @Value("${gemini.batch.max-candidates:10}")
+    private int batchMaxCandidates;
+
+    @Value("${gemini.batch.prompt-token-budget:24000}")
+    private int batchTokenBudget;
+
+    // Chỉ gửi N kinh nghiệm gần nhất, mỗi mô tả tối đa M token
+    @Value("${gemini.prompt.max-experiences:5}")
+    private int maxExperiences;
+
+    @Value("${gemini.prompt.experience-description-tokens:300}")
+    private int experienceDescriptionTokens;
 
     /**
      * LUỒNG 1: Preview cho ứng viên (Giữ nguyên logic dùng Cache CVAnalysisResult)
@@ -73,36 +107,79 @@ public class JobMatchingService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
 
-        // 3. Gọi AI
-        MatchResult result = geminiService.matchCVWithJob(
-            cvContent,
-            StringUtils.hasText(job.getDescription()) ? job.getDescription() : "",
-            StringUtils.hasText(job.getRequirements()) ? job.getRequirements() : ""
-        );
+        // 3. Gọi AI + 4. Lưu Cache vào CVAnalysisResult (Vẫn lưu Full JSON để ứng viên xem chi tiết)
+        // Request trùng (user, job) đang chạy song song (double-click, nhiều tab) chỉ gọi AI và ghi DB 1 lần
+        try {
+            return analyzeAndSave(userId, jobId, cvContent, cvUrl, job, user, existing, cName);
+        } catch (AiUnavailableException e) {
+            // AI quá tải -> trả điểm tạm tính theo skill, không lưu vào cache phân tích
+            log.warn("AI không khả dụng, dùng điểm tạm tính cho user {} - job {}", userId, jobId);
+            MatchResult fallback = buildFallbackMatch(userId, job);
+            fallback.setJobTitle(job.getTitle());
+            if (job.getCompany() != null) {
+                fallback.setCompany(job.getCompany().getName());
+            }
+            fallback.setCandidateName(cName);
+            return fallback;
+        }
+    }
+
+    private MatchResult analyzeAndSave(Long userId, Long jobId, String cvContent, String cvUrl, JobPosting job, User user,
+                                       Optional<CVAnalysisResult> existing, String cName) {
+        return singleFlight.execute(analysisKey(userId, jobId), () -> {
+            // Đọc lại trong loader: request trước cùng khóa có thể đã chạy xong và lưu kết quả sau lần đọc cache ở trên
+            Optional<CVAnalysisResult> current = existing.isPresent()
+                    ? existing
+                    : analysisRepository.findByUserIdAndJobPostingId(userId, jobId);
+            MatchResult result = existing.isEmpty() ? readSavedAnalysis(current) : null;
+            if (result == null) {
+                result = geminiService.matchCVWithJob(
+                    cvContent,
+                    StringUtils.hasText(job.getDescription()) ? job.getDescription() : "",
+                    StringUtils.hasText(job.getRequirements()) ? job.getRequirements() : ""
+                );
+                saveAnalysis(current, user, job, result, cvUrl);
+            }
 
-        // Gán thông tin bổ sung cho Result trả về
-        result.setJobTitle(job.getTitle());
-        if (job.getCompany() != null) {
-            result.setCompany(job.getCompany().getName());
+            // Gán thông tin bổ sung cho Result trả về
+            result.setJobTitle(job.getTitle());
+            if (job.getCompany() != null) {
+                result.setCompany(job.getCompany().getName());
+            }
+            result.setCandidateName(cName);
+            return result;
+        });
+    }
+
+    // Kết quả đã được request khác lưu trong lúc chờ (null nếu chưa có hoặc JSON hỏng)
+    private MatchResult readSavedAnalysis(Optional<CVAnalysisResult> saved) {
+        if (saved.isEmpty()) return null;
+        try {
+            log.info("Dùng kết quả phân tích vừa được request khác lưu cho user {} - job {}",
+                    saved.get().getUser().getId(), saved.get().getJobPosting().getId());
+            return objectMapper.readValue(saved.get().getAnalysisDetails(), MatchResult.class);
+        } catch (Exception e) {
+            return null;
         }
-        result.setCandidateName(cName);
+    }
 
-        // 4. Lưu Cache vào CVAnalysisResult (Vẫn lưu Full JSON để ứng viên xem chi tiết)
+    // Upsert theo (user, job): luôn cập nhật bản ghi đang có, bảng có unique (user_id, job_posting_id) nên không sinh dòng trùng
+    private void saveAnalysis(Optional<CVAnalysisResult> current, User user, JobPosting job, MatchResult result, String cvUrl) {
         try {
-            CVAnalysisResult entity = existing.orElse(new CVAnalysisResult());
+            CVAnalysisResult entity = current.orElseGet(CVAnalysisResult::new);
             entity.setUser(user);
             entity.setJobPosting(job);
             entity.setMatchPercentage(result.getMatchPercentage());
             entity.setCvUrlUsed(cvUrl);
+            // Lưu toàn bộ object Result xuống dạng JSON
             entity.setAnalysisDetails(objectMapper.writeValueAsString(result));
             entity.setAnalyzedAt(java.time.LocalDateTime.now());
 
             analysisRepository.save(entity);
+            log.info("Đã lưu kết quả chi tiết vào bảng CVAnalysisResult");
         } catch (Exception e) {
             log.error("Không lưu được kết quả AI vào Cache: {}", e.getMessage());
         }
-
-        return result;
     }
 
     /**
@@ -121,44 +198,116 @@ public class JobMatchingService {
         String jobDesc = StringUtils.hasText(job.getDescription()) ? job.getDescription() : "";
         String jobReq = StringUtils.hasText(job.getRequirements()) ? job.getRequirements() : "";
 
+        // 1. Gom các đơn cần chấm: chưa có điểm hoặc đang là điểm tạm tính
+        List<JobApplication> pending = new ArrayList<>();
+        Map<Long, String> candidateDataByApp = new HashMap<>();
         for (JobApplication app : applications) {
-            // Chỉ chạy nếu chưa có điểm
-            if (app.getMatchScore() == null || app.getMatchScore() == 0) {
+            if (app.getMatchScore() == null || app.getMatchScore() == 0 || isFallbackEvaluation(app.getAiEvaluation())) {
                 try {
                     CandidateProfile profile = profileRepository.findByUserId(app.getCandidate().getId()).orElse(null);
-
                     if (profile != null) {
-                        String candidateData = buildCandidateDataForAI(profile);
-
-                        // Gọi AI
-                        MatchResult result = geminiService.matchCVWithJob(candidateData, jobDesc, jobReq);
-
-                        // --- [FIX] MAP DỮ LIỆU VÀO ENTITY MỚI ---
-                        app.setMatchScore(result.getMatchPercentage());
-                        app.setAiEvaluation(result.getEvaluation()); // Nhận xét ngắn gọn
-                        app.setMatchedSkillsCount(result.getMatchedSkillsCount());
-                        app.setMissingSkillsCount(result.getMissingSkillsCount());
-
-                        // Lưu danh sách skill thiếu dạng chuỗi "A, B, C"
-                        if (result.getMissingSkillsList() != null && !result.getMissingSkillsList().isEmpty()) {
-                            app.setMissingSkillsList(String.join(", ", result.getMissingSkillsList()));
-                        } else {
-                            app.setMissingSkillsList("");
-                        }
-                        
-                        // [ĐÃ BỎ] Không setLearningPath, ExtraSkillsCount nữa
-                        
-                        applicationRepository.save(app);
-                        log.info("Đã chấm điểm xong đơn ID: {}", app.getId());
+                        candidateDataByApp.put(app.getId(), buildCandidateDataForAI(profile));
+                        pending.add(app);
                     }
                 } catch (Exception e) {
-                    log.error("Lỗi chấm điểm đơn ID {}: {}", app.getId(), e.getMessage());
+                    log.error("Lỗi chuẩn bị dữ liệu đơn ID {}: {}", app.getId(), e.getMessage());
+                }
+            }
+        }
+        if (pending.isEmpty()) return;
+
+        // 2. Chấm theo batch (JD gửi 1 lần cho K ứng viên), ứng viên nào batch trả về lỗi thì chấm lẻ
+        if (!batchEnabled) {
+            pending.forEach(app -> scoreSingle(app, candidateDataByApp.get(app.getId()), job, jobDesc, jobReq));
+        } else {
+            for (List<JobApplication> batch : planBatches(pending, candidateDataByApp, jobDesc, jobReq)) {
+                Map<String, String> batchInput = new LinkedHashMap<>();
+                batch.forEach(app -> batchInput.put(String.valueOf(app.getId()), candidateDataByApp.get(app.getId())));
+
+                Map<String, MatchResult> batchResults = Collections.emptyMap();
+                if (batch.size() > 1) {
+                    try {
+                        batchResults = geminiService.matchCandidatesBatch(batchInput, jobDesc, jobReq);
+                        log.info("Batch {} ứng viên: {} kết quả hợp lệ", batch.size(), batchResults.size());
+                    } catch (Exception e) {
+                        log.warn("Lỗi chấm batch {} ứng viên, chuyển sang chấm lẻ: {}", batch.size(), e.getMessage());
+                    }
+                }
+
+                for (JobApplication app : batch) {
+                    MatchResult result = batchResults.get(String.valueOf(app.getId()));
+                    if (result != null) {
+                        applyScreeningResult(app, result);
+                    } else {
+                        scoreSingle(app, candidateDataByApp.get(app.getId()), job, jobDesc, jobReq);
+                    }
                 }
             }
         }
         log.info("Hoàn tất sàng lọc Job ID: {}", jobId);
     }
 
+    /**
+     * Chia danh sách đơn thành các batch: tối đa batchMaxCandidates ứng viên và tổng token ước lượng
+     * (JD + dữ liệu ứng viên + phần output dự trữ) không vượt batchTokenBudget. Mỗi batch có ít nhất 1 ứng viên.
+     */
+    private List<List<JobApplication>> planBatches(List<JobApplication> pending, Map<Long, String> candidateDataByApp,
+                                                   String jobDesc, String jobReq) {
+        int baseTokens = BATCH_PROMPT_OVERHEAD_TOKENS + geminiService.estimateTokens(jobDesc) + geminiService.estimateTokens(jobReq);
+        List<List<JobApplication>> batches = new ArrayList<>();
+        List<JobApplication> current = new ArrayList<>();
+        int currentTokens = baseTokens;
+
+        for (JobApplication app : pending) {
+            int itemTokens = geminiService.estimateTokens(candidateDataByApp.get(app.getId())) + BATCH_OUTPUT_TOKENS_PER_ITEM;
+            boolean full = current.size() >= batchMaxCandidates || currentTokens + itemTokens > batchTokenBudget;
+            if (!current.isEmpty() && full) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = baseTokens;
+            }
+            current.add(app);
+            currentTokens += itemTokens;
+        }
+        if (!current.isEmpty()) batches.add(current);
+        return batches;
+    }
+
+    private void scoreSingle(JobApplication app, String candidateData, JobPosting job, String jobDesc, String jobReq) {
+        try {
+            // Gọi AI (AI quá tải -> chấm tạm theo skill, lần sàng lọc sau sẽ chấm lại)
+            MatchResult result;
+            try {
+                result = geminiService.matchCVWithJob(candidateData, jobDesc, jobReq);
+            } catch (AiUnavailableException e) {
+                result = buildFallbackMatch(app.getCandidate().getId(), job);
+            }
+            applyScreeningResult(app, result);
+        } catch (Exception e) {
+            log.error("Lỗi chấm điểm đơn ID {}: {}", app.getId(), e.getMessage());
+        }
+    }
+
+    private void applyScreeningResult(JobApplication app, MatchResult result) {
+        // --- [FIX] MAP DỮ LIỆU VÀO ENTITY MỚI ---
+        app.setMatchScore(result.getMatchPercentage());
+        app.setAiEvaluation(result.getEvaluation()); // Nhận xét ngắn gọn
+        app.setMatchedSkillsCount(result.getMatchedSkillsCount());
+        app.setMissingSkillsCount(result.getMissingSkillsCount());
+
+        // Lưu danh sách skill thiếu dạng chuỗi "A, B, C"
+        if (result.getMissingSkillsList() != null && !result.getMissingSkillsList().isEmpty()) {
+            app.setMissingSkillsList(String.join(", ", result.getMissingSkillsList()));
+        } else {
+            app.setMissingSkillsList("");
+        }
+
+        // [ĐÃ BỎ] Không setLearningPath, ExtraSkillsCount nữa
+
+        applicationRepository.save(app);
+        log.info("Đã chấm điểm xong đơn ID: {}", app.getId());
+    }
+
     /**
      * LUỒNG 3: Lấy danh sách xếp hạng
      */
@@ -243,6 +392,9 @@ public class JobMatchingService {
         if (!StringUtils.hasText(cvText) || cvText.length() < 50) {
              try {
                 cvText = cvAnalysisService.getTextFromUrl(app.getCvUrl());
+            } catch (ExtractionOverloadedException e) {
+                // Giữ nguyên để trả 429 cho client thay vì 500
+                throw e;
             } catch (Exception e) {
                 throw new RuntimeException("Không thể đọc nội dung CV: " + e.getMessage());
             }
@@ -256,24 +408,27 @@ public class JobMatchingService {
         String jobDesc = StringUtils.hasText(job.getDescription()) ? job.getDescription() : "";
         String jobReq = StringUtils.hasText(job.getRequirements()) ? job.getRequirements() : "";
 
-        // C. Gọi Gemini AI
-        MatchResult result = geminiService.matchCVWithJob(cvText, jobDesc, jobReq);
-
-        // D. [QUAN TRỌNG] LƯU KẾT QUẢ VÀO CV_ANALYSIS_RESULT (Bảng chứa JSON chi tiết)
+        // C. Gọi Gemini AI + D. [QUAN TRỌNG] LƯU KẾT QUẢ VÀO CV_ANALYSIS_RESULT (Bảng chứa JSON chi tiết)
+        // Dùng chung khóa (user, job) với luồng Preview -> chỉ 1 request gọi AI và ghi vào cv_analysis_results
+        String finalCvText = cvText;
+        MatchResult result;
         try {
-            CVAnalysisResult analysis = existingAnalysis.orElse(new CVAnalysisResult());
-            analysis.setUser(candidate);
-            analysis.setJobPosting(job);
-            analysis.setMatchPercentage(result.getMatchPercentage());
-            analysis.setCvUrlUsed(app.getCvUrl());
-            // Lưu toàn bộ object Result xuống dạng JSON
-            analysis.setAnalysisDetails(objectMapper.writeValueAsString(result)); 
-            analysis.setAnalyzedAt(java.time.LocalDateTime.now());
-            
-            analysisRepository.save(analysis);
-            log.info("Đã lưu kết quả chi tiết vào bảng CVAnalysisResult");
-        } catch (Exception e) {
-            log.error("Lỗi lưu CVAnalysisResult: {}", e.getMessage());
+            result = singleFlight.execute(analysisKey(candidate.getId(), job.getId()), () -> {
+                // Đọc lại trong loader: luồng Preview có thể đã lưu kết quả sau lần đọc cache ở trên
+                Optional<CVAnalysisResult> current = existingAnalysis.isPresent()
+                        ? existingAnalysis
+                        : analysisRepository.findByUserIdAndJobPostingId(candidate.getId(), job.getId());
+                MatchResult saved = existingAnalysis.isEmpty() ? readSavedAnalysis(current) : null;
+                if (saved != null) return saved;
+
+                MatchResult r = geminiService.matchCVWithJob(finalCvText, jobDesc, jobReq);
+                saveAnalysis(current, candidate, job, r, app.getCvUrl());
+                return r;
+            });
+        } catch (AiUnavailableException e) {
+            // Không lưu CVAnalysisResult để lần phân tích sau gọi lại AI
+            log.warn("AI không khả dụng, dùng điểm tạm tính cho Application ID: {}", applicationId);
+            result = buildFallbackMatch(candidate.getId(), job);
         }
 
         // E. ĐỒNG BỘ SANG JOB_APPLICATION (Bảng danh sách)
@@ -297,6 +452,36 @@ public class JobMatchingService {
     }
 
     // --- PRIVATE HELPER (Giữ nguyên) ---
+    private boolean isFallbackEvaluation(String evaluation) {
+        return evaluation != null && evaluation.startsWith(FALLBACK_EVALUATION_PREFIX);
+    }
+
+    /**
+     * Kết quả dự phòng khi AI không khả dụng: so khớp skill hồ sơ với skill đã tách của Job (không tốn AI).
+     */
+    private MatchResult buildFallbackMatch(Long userId, JobPosting job) {
+        List<String> candidateSkills = profileRepository.findByUserId(userId)
+                .map(CandidateProfile::getSkills)
+                .orElse(Collections.emptyList());
+        List<String> jobSkills = job.getExtractedSkills();
+        FastMatchResult fast = fastMatchingService.calculateCompatibility(candidateSkills, jobSkills);
+
+        return MatchResult.builder()
+                .matchPercentage(fast.getMatchScore())
+                .totalRequiredSkills(jobSkills != null ? jobSkills.size() : 0)
+                .matchedSkillsCount(fast.getMatchedSkills().size())
+                .matchedSkillsList(new ArrayList<>(fast.getMatchedSkills()))
+                .missingSkillsCount(fast.getMissingSkills().size())
+                .missingSkillsList(new ArrayList<>(fast.getMissingSkills()))
+                .evaluation(FALLBACK_EVALUATION_PREFIX + " Hệ thống AI đang bận, điểm được tính nhanh theo mức trùng khớp kỹ năng. "
+                        + "Phân tích chi tiết sẽ có khi AI hoạt động trở lại.")
+                .build();
+    }
+
+    private String analysisKey(Long userId, Long jobId) {
+        return "cv-analysis:" + userId + ":" + jobId;
+    }
+
     private String buildCandidateDataForAI(CandidateProfile profile) throws Exception {
         Map<String, Object> aiInputMap = new HashMap<>();
         aiInputMap.put("fullName", profile.getFullName());
@@ -313,11 +498,11 @@ public class JobMatchingService {
         if (profile.getSkills() != null) aiInputMap.put("skills", profile.getSkills());
 
         if (profile.getExperiences() != null) {
-            var expList = profile.getExperiences().stream().map(exp -> {
+            var expList = promptCompactor.mostRecent(profile.getExperiences(), Experience::getStartDate, maxExperiences).stream().map(exp -> {
                 Map<String, Object> eMap = new HashMap<>();
                 eMap.put("company", exp.getCompany());
                 eMap.put("role", exp.getRole());
-                eMap.put("description", exp.getDescription());
+                eMap.put("description", promptCompactor.truncate(exp.getDescription(), experienceDescriptionTokens));
                 eMap.put("startDate", exp.getStartDate() != null ? exp.getStartDate().toString() : "");
                 eMap.put("endDate", exp.getEndDate() != null ? exp.getEndDate().toString() : "Present");
                 return eMap;
@@ -1,18 +1,15 @@
 package app.ai.service.cv;
 
 import app.ai.service.cv.extractortext.CVTextExtractor;
+import app.ai.service.cv.extractortext.CvFileContent;
+import app.ai.service.cv.fetch.CvFileFetcher;
 import app.ai.service.cv.gemini.GeminiService; // Import lại Gemini
 import app.ai.service.cv.gemini.dto.GeminiResponse;
+import app.exception.ExtractionOverloadedException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-
-import java.io.File;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.Optional;
 
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -24,10 +21,16 @@ public class CVAnalysisService {
 
     private final CVTextExtractor textExtractor;
     private final GeminiService geminiService; // Dùng lại Gemini
+    private final CvFileFetcher cvFileFetcher;
 
     public GeminiResponse analyzeCV(MultipartFile file) {
+        return analyzeCV(file, null);
+    }
+
+    // cvUrl: link đã upload của chính file này -> văn bản được ghi nhớ theo URL cho các lần preview/chấm điểm sau
+    public GeminiResponse analyzeCV(MultipartFile file, String cvUrl) {
         // 1. Lấy chữ
-        String rawText = textExtractor.extractText(file);
+        String rawText = textExtractor.extractText(file, cvUrl);
 
         // 2. Gọi Gemini (Miễn phí)
         return geminiService.parseCV(rawText);
@@ -36,34 +39,24 @@ public class CVAnalysisService {
     public String getTextFromUrl(String fileUrl) throws Exception {
         if (fileUrl == null || fileUrl.isEmpty()) return "";
 
-        // 1. Xác định đuôi file để tạo file tạm đúng định dạng
-        String extension = ".pdf"; // Mặc định
-        String lowerUrl = fileUrl.toLowerCase();
-        if (lowerUrl.contains(".docx")) extension = ".docx";
-        else if (lowerUrl.contains(".doc")) extension = ".doc";
-
-        // 2. Tải file về thư mục tạm
-        File tempFile = File.createTempFile("cv_download_", extension);
-        
-        try {
-            // [FIX LỖI DEPRECATED] Dùng URI.create().toURL() thay vì new URL()
-            URL url = URI.create(fileUrl).toURL();
-            
-            try (InputStream in = url.openStream()) {
-                Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            }
-
-            // 3. Gọi TextExtractor để lấy chữ (Đã sửa lỗi "extractors cannot be resolved")
-            return textExtractor.extractText(tempFile);
+        // 0. Đã trích xuất file ở URL này rồi -> không tải, không đọc lại
+        Optional<String> stored = textExtractor.findByUrl(fileUrl);
+        if (stored.isPresent()) return stored.get();
 
+        // 1. Tải file thẳng vào bộ nhớ (có giới hạn dung lượng + thời gian, dùng lại bản cũ nếu file không đổi)
+        try (CvFileContent content = cvFileFetcher.fetch(fileUrl)) {
+            // 2. Loại file nhận diện theo magic bytes -> gọi extractor tương ứng
+            return textExtractor.extractText(content, fileUrl);
+        } catch (ExtractionOverloadedException e) {
+            throw e; // Pool trích xuất đầy -> để caller trả 429 thay vì coi như CV rỗng
         } catch (Exception e) {
             log.error("Lỗi tải/đọc CV từ URL: {}", fileUrl, e);
             return ""; // Trả về rỗng để không làm sập luồng chính
-        } finally {
-            // Dọn dẹp file rác
-            if (tempFile.exists()) {
-                tempFile.delete();
-            }
         }
     }
+
+    // CV cũ bị thay thế -> bỏ văn bản đã ghi nhớ theo URL cũ
+    public void invalidateCvText(String oldCvUrl) {
+        textExtractor.invalidateUrl(oldCvUrl);
+    }
 }
\ No newline at end of file
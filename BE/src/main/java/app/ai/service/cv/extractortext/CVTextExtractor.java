@@ -1,12 +1,17 @@
 package app.ai.service.cv.extractortext;
 
 import app.ai.service.cv.extractortext.Interface.IFileTextExtractor;
+import app.ai.service.cv.extractortext.store.ExtractedTextStore;
+import app.exception.ExtractionOverloadedException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -14,26 +19,47 @@ public class CVTextExtractor {
 
     // Spring sẽ tự động tìm tất cả các Bean implement IFileTextExtractor (PDF, DOCX) và nhét vào List này
     private final List<IFileTextExtractor> extractors;
+    // Văn bản đã trích xuất theo hash file -> cùng 1 CV không phải đọc PDF / OCR lại
+    private final ExtractedTextStore textStore;
+    // Việc parse/OCR nặng chạy trên pool riêng có giới hạn, không chạy trên luồng Tomcat
+    private final ExtractionExecutor extractionExecutor;
 
     public String extractText(MultipartFile file) {
+        return extractText(file, null);
+    }
+
+    /**
+     * Trích xuất text từ file upload; sourceUrl (link Cloudinary của chính file này, có thể null)
+     * được ghi nhớ để lần sau đọc lại theo URL không cần tải file.
+     */
+    public String extractText(MultipartFile file, String sourceUrl) {
         for (IFileTextExtractor extractor : extractors) {
             if (extractor.supports(file)) {
+                byte[] content;
                 try {
-                    // Gọi hàm tách chữ của component tương ứng
-                    return extractor.extractText(file);
-                } catch (Exception e) {
+                    content = file.getBytes();
+                } catch (IOException e) {
                     throw new RuntimeException("Lỗi trích xuất nội dung file: " + e.getMessage(), e);
                 }
+                // Gọi hàm tách chữ của component tương ứng (chỉ khi chưa có trong kho)
+                return textStore.getOrExtract(content, sourceUrl, () -> extractionExecutor.run(() -> extractor.extractText(file)));
             }
         }
         throw new IllegalArgumentException("Định dạng file không hỗ trợ: " + file.getOriginalFilename());
     }
 
     public String extractText(File file) {
+        return extractText(file, null);
+    }
+
+    public String extractText(File file, String sourceUrl) {
         for (IFileTextExtractor extractor : extractors) {
             if (extractor.supports(file)) {
                 try {
-                    return extractor.extractText(file);
+                    byte[] content = Files.readAllBytes(file.toPath());
+                    return textStore.getOrExtract(content, sourceUrl, () -> extractionExecutor.run(() -> extractor.extractText(file)));
+                } catch (ExtractionOverloadedException e) {
+                    throw e;
                 } catch (Exception e) {
                     throw new RuntimeException("Lỗi đọc file tải về: " + e.getMessage(), e);
                 }
@@ -42,4 +68,37 @@ public class CVTextExtractor {
         // Nếu không tìm thấy extractor phù hợp
         return "Không tìm thấy extractor phù hợp"; 
     }
-}
\ No newline at end of file
+
+    /**
+     * Trích xuất text từ file đã tải về bộ nhớ (loại file theo magic bytes).
+     */
+    public String extractText(CvFileContent content, String sourceUrl) {
+        for (IFileTextExtractor extractor : extractors) {
+            if (extractor.supports(content)) {
+                return textStore.getOrExtract(content.sha256Hex(), sourceUrl, () -> extractionExecutor.run(() -> extractor.extractText(content)));
+            }
+        }
+        throw new IllegalArgumentException("Định dạng file không hỗ trợ (" + content.type() + "): " + sourceUrl);
+    }
+
+    /**
+     * Văn bản đã trích xuất trước đó của file ở URL này (nếu có).
+     */
+    public Optional<String> findByUrl(String sourceUrl) {
+        return textStore.findByUrl(sourceUrl).map(ExtractedTextStore.StoredText::text);
+    }
+
+    /**
+     * Gắn URL cho văn bản đã trích xuất theo hash nội dung (không đọc file lại).
+     */
+    public void linkUrl(String contentHash, String sourceUrl) {
+        textStore.linkUrl(contentHash, sourceUrl);
+    }
+
+    /**
+     * Gọi khi ứng viên thay CV: URL cũ không còn đại diện cho CV hiện tại.
+     */
+    public void invalidateUrl(String sourceUrl) {
+        textStore.invalidateUrl(sourceUrl);
+    }
+}
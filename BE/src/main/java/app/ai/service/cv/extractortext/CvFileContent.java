@@ -0,0 +1,176 @@
+package app.ai.service.cv.extractortext;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Nội dung 1 file CV đã nằm sẵn trong bộ nhớ (mảng byte) hoặc trong file tạm đã memory-map (file lớn).
+ * Loại file xác định bằng "magic bytes" ở đầu file, không đoán theo đuôi URL.
+ * Dùng xong phải close() để xóa file tạm (nếu có).
+ * <p>
+ * Không chủ động unmap file tạm khi close(): tác vụ trích xuất bị hết giờ (ExtractionExecutor) vẫn có thể đang đọc
+ * buffer, unmap lúc đó làm JVM crash. Thay vào đó file tạm được xóa ngay nếu hệ điều hành cho phép (Linux/macOS),
+ * còn không (Windows không xóa được file đang map) thì xóa khi vùng map được giải phóng, cuối cùng là khi JVM tắt.
+ */
+@Slf4j
+public final class CvFileContent implements AutoCloseable {
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum FileType {
+        PDF("application/pdf"),
+        DOCX("application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+        DOC("application/msword"),
+        JPEG("image/jpeg"),
+        PNG("image/png"),
+        WEBP("image/webp"),
+        UNKNOWN("application/octet-stream");
+
+        private final String mimeType;
+    }
+
+    // Xóa file tạm sau khi vùng map của nó bị GC giải phóng (khi close() không xóa được ngay)
+    private static final Cleaner SPILL_CLEANER = Cleaner.create();
+
+    private final ByteBuffer buffer;
+    private final FileType type;
+    private final Path spillFile;
+    private final ByteBuffer mappedBuffer;
+    private volatile boolean closed;
+
+    private CvFileContent(ByteBuffer buffer, Path spillFile) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.type = sniff(this.buffer.duplicate());
+        this.spillFile = spillFile;
+        this.mappedBuffer = spillFile != null ? buffer : null;
+    }
+
+    public static CvFileContent of(byte[] data, int length) {
+        return new CvFileContent(ByteBuffer.wrap(data, 0, length).slice(), null);
+    }
+
+    /**
+     * File lớn đã ghi ra file tạm và map vào bộ nhớ; file tạm bị xóa khi close().
+     */
+    public static CvFileContent mapped(ByteBuffer mappedBuffer, Path spillFile) {
+        return new CvFileContent(mappedBuffer, spillFile);
+    }
+
+    public FileType type() {
+        return type;
+    }
+
+    public long size() {
+        return buffer.capacity();
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    // Mỗi lần gọi trả 1 view độc lập (position riêng), dùng được từ nhiều chỗ
+    public ByteBuffer buffer() {
+        return buffer.duplicate();
+    }
+
+    public InputStream openStream() {
+        ByteBuffer view = buffer();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) return 0;
+                if (!view.hasRemaining()) return -1;
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    /**
+     * Luôn trả bản sao: mảng gốc có thể đang nằm trong cache của CvFileFetcher, bên gọi sửa mảng không được làm hỏng cache.
+     */
+    public byte[] toByteArray() {
+        ByteBuffer view = buffer();
+        byte[] copy = new byte[view.remaining()];
+        view.get(copy);
+        return copy;
+    }
+
+    public String sha256Hex() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (spillFile == null || closed) return;
+        closed = true;
+        try {
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            // Windows: file đang được map -> xóa khi vùng map được giải phóng (mappedBuffer không còn ai tham chiếu)
+            log.debug("Chưa xóa được file tạm {} (đang map), hoãn tới khi giải phóng: {}", spillFile, e.getMessage());
+            Path file = spillFile;
+            file.toFile().deleteOnExit();
+            SPILL_CLEANER.register(mappedBuffer, () -> deleteSpill(file));
+        }
+    }
+
+    // Chạy trên luồng của Cleaner, không được tham chiếu tới CvFileContent / buffer
+    private static void deleteSpill(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Không xóa được file tạm {} (sẽ xóa khi tắt ứng dụng): {}", file, e.getMessage());
+        }
+    }
+
+    private static FileType sniff(ByteBuffer head) {
+        int n = Math.min(head.remaining(), 12);
+        byte[] b = new byte[n];
+        head.get(b);
+        if (startsWith(b, 0x25, 0x50, 0x44, 0x46)) return FileType.PDF;             // %PDF
+        if (startsWith(b, 0x50, 0x4B, 0x03, 0x04)) return FileType.DOCX;            // ZIP (Office Open XML)
+        if (startsWith(b, 0xD0, 0xCF, 0x11, 0xE0)) return FileType.DOC;             // OLE2 (Word 97-2003)
+        if (startsWith(b, 0xFF, 0xD8, 0xFF)) return FileType.JPEG;
+        if (startsWith(b, 0x89, 0x50, 0x4E, 0x47)) return FileType.PNG;
+        if (n >= 12 && startsWith(b, 0x52, 0x49, 0x46, 0x46)                          // RIFF....WEBP
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') return FileType.WEBP;
+        return FileType.UNKNOWN;
+    }
+
+    private static boolean startsWith(byte[] data, int... magic) {
+        if (data.length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package app.ai.service.cv.extractortext;
+
+/**
+ * Làm sạch text trích xuất từ CV trước khi đưa cho AI, trong 1 lượt duyệt char[] (không regex, không chuỗi trung gian):
+ * - Chuỗi tab / NBSP liên tiếp -> 1 dấu cách.
+ * - Bỏ khoảng trắng đầu và cuối mỗi dòng; \r\n và \r -> \n.
+ * - Nhiều dòng trống liên tiếp -> giữ đúng 1 dòng trống; bỏ dòng trống ở đầu/cuối văn bản.
+ */
+public final class CvTextNormalizer {
+
+    private CvTextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) return "";
+        char[] in = text.toCharArray();
+        char[] out = new char[in.length];
+        int pos = 0;
+        int lineEnd = 0;          // Vị trí ngay sau ký tự không phải khoảng trắng cuối cùng của dòng hiện tại
+        boolean lineHasContent = false;
+        int newlines = 0;         // Số ký tự xuống dòng gặp được từ sau dòng có nội dung gần nhất
+        boolean inFoldRun = false;
+
+        for (int i = 0; i < in.length; i++) {
+            char c = in[i];
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < in.length && in[i + 1] == '\n') i++;
+                if (lineHasContent) {
+                    pos = lineEnd; // Cắt khoảng trắng cuối dòng
+                    lineHasContent = false;
+                    newlines = 1;
+                } else if (pos > 0) {
+                    newlines++;
+                }
+                inFoldRun = false;
+                continue;
+            }
+
+            boolean fold = c == '\t' || c == '\u00A0';
+            boolean whitespace = fold || Character.isWhitespace(c);
+            if (!lineHasContent) {
+                if (whitespace) continue; // Bỏ khoảng trắng đầu dòng
+                if (pos > 0) {
+                    out[pos++] = '\n';
+                    if (newlines >= 2) out[pos++] = '\n';
+                }
+                lineHasContent = true;
+            }
+
+            if (fold) {
+                if (!inFoldRun) out[pos++] = ' ';
+                inFoldRun = true;
+                continue;
+            }
+            inFoldRun = false;
+            out[pos++] = c;
+            if (!whitespace) lineEnd = pos;
+        }
+        if (lineHasContent) pos = lineEnd;
+        return new String(out, 0, pos);
+    }
+}
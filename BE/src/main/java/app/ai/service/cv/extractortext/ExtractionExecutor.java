@@ -0,0 +1,115 @@
+package app.ai.service.cv.extractortext;
+
+import app.ai.service.cv.extractortext.ocr.OcrTrace;
+import app.exception.ExtractionOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool riêng cho việc trích xuất CV (parse PDF/DOCX, render trang, OCR), tách khỏi luồng Tomcat.
+ * - Số luồng và hàng đợi đều có giới hạn: hết chỗ thì từ chối ngay (429) thay vì để request xếp hàng vô hạn.
+ * - Luồng ưu tiên thấp hơn luồng API để việc render ảnh nặng CPU không làm chậm các API khác.
+ * - Metrics: cv.extraction.queue.depth, cv.extraction.active, cv.extraction.wait, cv.extraction.service, cv.extraction.rejected.
+ */
+@Component
+@Slf4j
+public class ExtractionExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final Timer waitTimer;
+    private final Timer serviceTimer;
+    private final Counter rejectedCounter;
+
+    public ExtractionExecutor(MeterRegistry meterRegistry,
+                              @Value("${cv.extraction.threads:0}") int threads,
+                              @Value("${cv.extraction.queue-capacity:20}") int queueCapacity,
+                              @Value("${cv.extraction.timeout-ms:180000}") long timeoutMs) {
+        // 0 = tự chọn theo số CPU (nửa số core, tối thiểu 2)
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "cv-extract-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMs = timeoutMs;
+
+        Gauge.builder("cv.extraction.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("cv.extraction.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        this.waitTimer = Timer.builder("cv.extraction.wait").register(meterRegistry);
+        this.serviceTimer = Timer.builder("cv.extraction.service").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("cv.extraction.rejected").register(meterRegistry);
+        log.info("Pool trích xuất CV: {} luồng, hàng đợi {}", poolSize, queueCapacity);
+    }
+
+    /**
+     * Chạy 1 lần trích xuất trên pool riêng và chờ kết quả (luồng gọi không làm việc nặng).
+     * Pool đầy -> ExtractionOverloadedException (429).
+     */
+    public String run(Callable<String> extraction) throws Exception {
+        long queuedAt = System.nanoTime();
+        Callable<String> task = OcrTrace.propagate(extraction);
+        Future<String> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    serviceTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new ExtractionOverloadedException("Hệ thống đang xử lý quá nhiều CV, vui lòng thử lại sau ít phút");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RuntimeException("Trích xuất CV quá thời gian " + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Pool đang kín luồng và hàng đợi -> nên từ chối sớm từ đầu vào (VD: upload CV mới).
+     */
+    public boolean isSaturated() {
+        return executor.getQueue().remainingCapacity() == 0 && executor.getActiveCount() >= executor.getMaximumPoolSize();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,12 +1,15 @@
 package app.ai.service.cv.extractortext.Interface;
+import app.ai.service.cv.extractortext.CvFileContent;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.File;
 
 public interface IFileTextExtractor {
     boolean supports(MultipartFile file);
     boolean supports(File file); // [MỚI] Hỗ trợ file tải từ URL
+    boolean supports(CvFileContent file); // Nội dung tải về trong bộ nhớ, nhận diện bằng magic bytes
     
     String extractText(MultipartFile file) throws Exception;
     String extractText(File file) throws Exception; // [MỚI]
+    String extractText(CvFileContent file) throws Exception;
 
 }
\ No newline at end of file
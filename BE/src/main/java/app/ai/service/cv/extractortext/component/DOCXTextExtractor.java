@@ -1,25 +1,59 @@
 package app.ai.service.cv.extractortext.component;
 
+import app.ai.service.cv.extractortext.CvFileContent;
+import app.ai.service.cv.extractortext.CvTextNormalizer;
 import app.ai.service.cv.extractortext.Interface.IFileTextExtractor;
-import app.ai.service.cv.gemini.GeminiService;
-import lombok.RequiredArgsConstructor;
+import app.ai.service.cv.extractortext.docx.DocxPackageReader;
+import app.ai.service.cv.extractortext.image.OcrImageOptimizer;
+import app.ai.service.cv.extractortext.ocr.OcrDocumentResult;
+import app.ai.service.cv.extractortext.ocr.ParallelOcrExecutor;
+import app.ai.service.cv.extractortext.ocr.TieredOcrService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class DOCXTextExtractor implements IFileTextExtractor {
 
-    private final GeminiService geminiService; // Inject Gemini
+    private final TieredOcrService ocrService; // Tesseract trước, Gemini Vision khi cần cứu viện
+    private final OcrImageOptimizer imageOptimizer;
+    private final ParallelOcrExecutor ocrExecutor;
+    private final DistributionSummary peakMemory;
+    private final Counter domFallbackCounter;
+
+    // Giới hạn bộ nhớ mỗi lần trích xuất: text tối đa maxTextChars ký tự, mỗi ảnh tối đa maxImageBytes
+    // (cùng lúc chỉ ocr.parallel.per-document-max-concurrency ảnh được giữ trong RAM)
+    @Value("${docx.stream.max-text-chars:500000}")
+    private int maxTextChars;
+
+    @Value("${docx.stream.max-image-bytes:15728640}")
+    private long maxImageBytes;
+
+    public DOCXTextExtractor(TieredOcrService ocrService, OcrImageOptimizer imageOptimizer,
+                             ParallelOcrExecutor ocrExecutor, MeterRegistry meterRegistry) {
+        this.ocrService = ocrService;
+        this.imageOptimizer = imageOptimizer;
+        this.ocrExecutor = ocrExecutor;
+        this.peakMemory = DistributionSummary.builder("docx.extract.peak.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.domFallbackCounter = Counter.builder("docx.extract.dom.fallback").register(meterRegistry);
+    }
 
     // --- HỖ TRỢ MULTIPART FILE (Upload Form) ---
     @Override
@@ -31,9 +65,7 @@ public class DOCXTextExtractor implements IFileTextExtractor {
 
     @Override
     public String extractText(MultipartFile file) throws Exception {
-        try (XWPFDocument document = new XWPFDocument(file.getInputStream())) {
-            return processDocument(document);
-        }
+        return extract(() -> DocxPackageReader.open(file.getBytes()), () -> new XWPFDocument(file.getInputStream()));
     }
 
     // --- HỖ TRỢ FILE (Tải từ URL) ---
@@ -46,13 +78,89 @@ public class DOCXTextExtractor implements IFileTextExtractor {
 
     @Override
     public String extractText(File file) throws Exception {
-        try (FileInputStream fis = new FileInputStream(file);
-             XWPFDocument document = new XWPFDocument(fis)) {
+        return extract(() -> DocxPackageReader.open(file), () -> {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                return new XWPFDocument(fis);
+            }
+        });
+    }
+
+    // --- HỖ TRỢ NỘI DUNG TẢI VỀ TRONG BỘ NHỚ ---
+    @Override
+    public boolean supports(CvFileContent file) {
+        return file.type() == CvFileContent.FileType.DOCX || file.type() == CvFileContent.FileType.DOC;
+    }
+
+    @Override
+    public String extractText(CvFileContent file) throws Exception {
+        return extract(() -> DocxPackageReader.open(file.buffer()), () -> new XWPFDocument(file.openStream()));
+    }
+
+    // --- LOGIC XỬ LÝ CHÍNH: STREAMING (SAX), LỖI THÌ QUAY VỀ DOM ---
+    private String extract(Callable<DocxPackageReader> streamingOpener, Callable<XWPFDocument> domOpener) throws Exception {
+        DocxPackageReader reader;
+        DocxPackageReader.DocxText docText;
+        try {
+            reader = streamingOpener.call();
+        } catch (IOException e) {
+            return fallbackToDom(domOpener, e);
+        }
+        try (reader) {
+            try {
+                docText = reader.readText(maxTextChars);
+            } catch (IOException e) {
+                return fallbackToDom(domOpener, e);
+            }
+            if (docText.truncated()) {
+                log.warn("DOCX quá dài, chỉ lấy {} ký tự đầu", maxTextChars);
+            }
+            return processPackage(reader, docText.text());
+        } finally {
+            peakMemory.record(reader.getPeakBytes());
+            log.debug("Trích xuất DOCX (streaming): bộ nhớ đỉnh {} KB", reader.getPeakBytes() / 1024);
+        }
+    }
+
+    private String fallbackToDom(Callable<XWPFDocument> domOpener, Exception cause) throws Exception {
+        log.warn("Không đọc được DOCX dạng streaming ({}), chuyển sang XWPFDocument", cause.getMessage());
+        domFallbackCounter.increment();
+        try (XWPFDocument document = domOpener.call()) {
             return processDocument(document);
         }
     }
 
-    // --- LOGIC XỬ LÝ CHÍNH ---
+    private String processPackage(DocxPackageReader reader, String text) {
+        String cleanText = CvTextNormalizer.normalize(text);
+        if (cleanText.length() > 50) {
+            return cleanText; // Text ngon -> Trả về luôn
+        }
+
+        // Ít chữ -> CV dạng ảnh dán trong Word. Ảnh chỉ được đọc ra khi tới lượt OCR, xong là nhả
+        log.warn("DOCX ít chữ, chuyển sang chế độ quét ảnh (OCR)...");
+        List<DocxPackageReader.ImagePart> images = reader.listImages();
+        if (images.isEmpty()) {
+            return "File không chứa văn bản và cũng không chứa ảnh nào.";
+        }
+        log.info("Tìm thấy {} ảnh trong file DOCX. Đang OCR...", images.size());
+
+        List<Callable<String>> imageTasks = new ArrayList<>();
+        for (DocxPackageReader.ImagePart part : images) {
+            int imageNo = imageTasks.size() + 1;
+            imageTasks.add(() -> {
+                log.info("OCR ảnh thứ {}/{} ({}, {} KB)", imageNo, images.size(), part.mimeType(), part.size() / 1024);
+                byte[] imageBytes = reader.readImage(part, maxImageBytes);
+                try {
+                    OcrImageOptimizer.PreparedImage image = imageOptimizer.prepare(imageBytes, part.mimeType());
+                    return ocrService.convertImageToText(image.data(), image.mimeType());
+                } finally {
+                    reader.releaseImage(imageBytes.length);
+                }
+            });
+        }
+        return ocrImages(imageTasks);
+    }
+
+    // --- DỰ PHÒNG: DOM (XWPFDocument) ---
     private String processDocument(XWPFDocument document) {
         StringBuilder text = new StringBuilder();
         
@@ -65,21 +173,19 @@ public class DOCXTextExtractor implements IFileTextExtractor {
             }
         }
         
-        String cleanText = cleanForAI(text.toString());
+        String cleanText = CvTextNormalizer.normalize(text.toString());
 
         // 2. Kiểm tra độ dài Text
         if (cleanText.length() > 50) {
             return cleanText; // Text ngon -> Trả về luôn
         }
 
-        // 3. Nếu Text quá ngắn -> Khả năng cao là ảnh dán trong Word -> Lấy ảnh ra gửi Gemini
+        // 3. Nếu Text quá ngắn -> Khả năng cao là ảnh dán trong Word -> Lấy ảnh ra OCR
         log.warn("DOCX ít chữ, chuyển sang chế độ quét ảnh (OCR)...");
         return extractImagesAndOCR(document);
     }
 
     private String extractImagesAndOCR(XWPFDocument document) {
-        StringBuilder ocrResult = new StringBuilder();
-        
         // Lấy tất cả ảnh nhúng trong file Word
         List<XWPFPictureData> pictures = document.getAllPictures();
         
@@ -87,34 +193,31 @@ public class DOCXTextExtractor implements IFileTextExtractor {
             return "File không chứa văn bản và cũng không chứa ảnh nào.";
         }
 
-        log.info("Tìm thấy {} ảnh trong file DOCX. Đang gửi sang Gemini...", pictures.size());
+        log.info("Tìm thấy {} ảnh trong file DOCX. Đang OCR...", pictures.size());
 
-        for (int i = 0; i < pictures.size(); i++) {
-            XWPFPictureData picture = pictures.get(i);
+        // Chỉ xử lý các định dạng ảnh phổ biến để tránh lỗi
+        List<Callable<String>> imageTasks = new ArrayList<>();
+        for (XWPFPictureData picture : pictures) {
             byte[] imageBytes = picture.getData();
             String mimeType = picture.getPackagePart().getContentType(); // Ví dụ: image/png, image/jpeg
-
-            try {
-                // Chỉ xử lý các định dạng ảnh phổ biến để tránh lỗi
-                if (mimeType.startsWith("image/")) {
-                    log.info("OCR ảnh thứ {}/{} ({})", i + 1, pictures.size(), mimeType);
-                    String extracted = geminiService.convertImageToText(imageBytes, mimeType);
-                    ocrResult.append(extracted).append("\n\n");
-                }
-            } catch (Exception e) {
-                log.error("Lỗi OCR ảnh trong DOCX: " + e.getMessage());
-            }
+            if (!mimeType.startsWith("image/")) continue;
+
+            int imageNo = imageTasks.size() + 1;
+            imageTasks.add(() -> {
+                log.info("OCR ảnh thứ {}/{} ({})", imageNo, pictures.size(), mimeType);
+                OcrImageOptimizer.PreparedImage image = imageOptimizer.prepare(imageBytes, mimeType);
+                return ocrService.convertImageToText(image.data(), image.mimeType());
+            });
         }
-        
-        return ocrResult.toString();
+
+        return ocrImages(imageTasks);
     }
 
-    // Hàm làm sạch dữ liệu
-    private String cleanForAI(String text) {
-        if (text == null) return "";
-        return text.replaceAll("[\\t\\u00A0]+", " ")
-                   .replaceAll("\\n\\s*\\n", "\n\n")
-                   .replaceAll("(?m)^\\s+|\\s+$", "")
-                   .trim();
+    private String ocrImages(List<Callable<String>> imageTasks) {
+        OcrDocumentResult result = ocrExecutor.run("DOCX " + imageTasks.size() + " ảnh", imageTasks);
+        if (result.allFailed()) {
+            throw new RuntimeException("Không OCR được ảnh nào trong DOCX: " + result.failedPages().get(0).error());
+        }
+        return result.joinedText("Ảnh");
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package app.ai.service.cv.extractortext.component;
 
+import app.ai.service.cv.extractortext.CvFileContent;
 import app.ai.service.cv.extractortext.Interface.IFileTextExtractor;
-import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.cv.extractortext.image.OcrImageOptimizer;
+import app.ai.service.cv.extractortext.ocr.TieredOcrService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
@@ -13,7 +15,8 @@ import java.nio.file.Files;
 @RequiredArgsConstructor
 public class ImageTextExtractor implements IFileTextExtractor {
 
-    private final GeminiService geminiService;
+    private final TieredOcrService ocrService; // Tesseract trước, Gemini Vision khi cần cứu viện
+    private final OcrImageOptimizer imageOptimizer;
 
     @Override
     public boolean supports(MultipartFile file) {
@@ -28,15 +31,31 @@ public class ImageTextExtractor implements IFileTextExtractor {
         return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".webp");
     }
 
+    @Override
+    public boolean supports(CvFileContent file) {
+        CvFileContent.FileType type = file.type();
+        return type == CvFileContent.FileType.JPEG || type == CvFileContent.FileType.PNG || type == CvFileContent.FileType.WEBP;
+    }
+
     @Override
     public String extractText(MultipartFile file) throws Exception {
-        return geminiService.convertImageToText(file.getBytes(), file.getContentType());
+        return ocr(file.getBytes(), file.getContentType());
     }
 
     @Override
     public String extractText(File file) throws Exception {
         byte[] fileContent = Files.readAllBytes(file.toPath());
         String mimeType = Files.probeContentType(file.toPath());
-        return geminiService.convertImageToText(fileContent, mimeType != null ? mimeType : "image/jpeg");
+        return ocr(fileContent, mimeType != null ? mimeType : "image/jpeg");
+    }
+
+    @Override
+    public String extractText(CvFileContent file) throws Exception {
+        return ocr(file.toByteArray(), file.type().getMimeType());
+    }
+
+    private String ocr(byte[] imageBytes, String mimeType) {
+        OcrImageOptimizer.PreparedImage image = imageOptimizer.prepare(imageBytes, mimeType);
+        return ocrService.convertImageToText(image.data(), image.mimeType());
     }
 }
\ No newline at end of file
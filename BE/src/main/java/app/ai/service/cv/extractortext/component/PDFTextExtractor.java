@@ -1,29 +1,43 @@
 package app.ai.service.cv.extractortext.component;
 
+import app.ai.service.cv.extractortext.CvFileContent;
+import app.ai.service.cv.extractortext.CvTextNormalizer;
 import app.ai.service.cv.extractortext.Interface.IFileTextExtractor;
-import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.cv.extractortext.image.OcrImageOptimizer;
+import app.ai.service.cv.extractortext.ocr.OcrDocumentResult;
+import app.ai.service.cv.extractortext.ocr.OcrPageResult;
+import app.ai.service.cv.extractortext.ocr.ParallelOcrExecutor;
+import app.ai.service.cv.extractortext.ocr.TieredOcrService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class PDFTextExtractor implements IFileTextExtractor {
 
-    private final GeminiService geminiService; // Inject Gemini để dùng khi cần cứu viện
+    private final TieredOcrService ocrService; // Tesseract trước, Gemini Vision khi cần cứu viện
+    private final OcrImageOptimizer imageOptimizer;
+    private final ParallelOcrExecutor ocrExecutor;
+
+    // Số ký tự chữ/số tối thiểu để coi 1 trang là có text layer (ít hơn -> trang scan, cần OCR)
+    @Value("${ocr.pdf.min-page-text-chars:30}")
+    private int minPageTextChars;
 
     @Override
     public boolean supports(MultipartFile file) {
@@ -35,6 +49,11 @@ public class PDFTextExtractor implements IFileTextExtractor {
         return file.getName().toLowerCase().endsWith(".pdf");
     }
 
+    @Override
+    public boolean supports(CvFileContent file) {
+        return file.type() == CvFileContent.FileType.PDF;
+    }
+
     @Override
     public String extractText(MultipartFile file) throws Exception {
         try (PDDocument document = Loader.loadPDF(file.getBytes())) {
@@ -49,53 +68,106 @@ public class PDFTextExtractor implements IFileTextExtractor {
         }
     }
 
+    @Override
+    public String extractText(CvFileContent file) throws Exception {
+        // Đọc thẳng từ buffer (mảng byte hoặc file đã memory-map), không copy thêm
+        try (PDDocument document = Loader.loadPDF(new RandomAccessReadBuffer(file.buffer()))) {
+            return processDoc(document);
+        }
+    }
+
     // --- LOGIC XỬ LÝ CHÍNH ---
     private String processDoc(PDDocument document) throws IOException {
-        // CÁCH 1: Thử đọc text thuần túy (Nhanh nhất)
+        int totalPages = document.getNumberOfPages();
+
+        // CÁCH 1: Đọc text layer TỪNG TRANG (nhanh nhất), chấm điểm xem trang có chữ thật hay là ảnh scan
         PDFTextStripper stripper = new PDFTextStripper();
         stripper.setSortByPosition(true);
-        String text = cleanForAI(stripper.getText(document));
+        String[] pageTexts = new String[totalPages];
+        List<Integer> scannedPages = new ArrayList<>();
+        for (int page = 0; page < totalPages; page++) {
+            stripper.setStartPage(page + 1);
+            stripper.setEndPage(page + 1);
+            String pageText = stripper.getText(document);
+            if (hasRealTextLayer(pageText)) {
+                pageTexts[page] = pageText;
+            } else {
+                scannedPages.add(page);
+            }
+        }
 
-        // Kiểm tra xem có lấy được nội dung ra hồn không?
-        if (text.length() > 50) { 
-            return text; // Ngon, PDF xịn -> Trả về luôn
+        if (scannedPages.isEmpty()) {
+            return CvTextNormalizer.normalize(String.join("\n\n", pageTexts)); // Ngon, PDF xịn -> Trả về luôn
         }
 
-        // CÁCH 2: Nếu text quá ngắn hoặc rỗng -> Đây là PDF Scan (Ảnh) -> Dùng Gemini OCR
-        log.warn("PDF không chứa text (hoặc rất ít). Chuyển sang chế độ OCR bằng Gemini...");
-        return performOcrOnPdf(document);
+        // CÁCH 2: Chỉ các trang không có text layer (trang scan, ảnh chứng chỉ...) mới gửi OCR, rồi ghép lại đúng thứ tự
+        log.warn("PDF có {}/{} trang không chứa text (trang scan). Chuyển các trang này sang OCR...",
+                scannedPages.size(), totalPages);
+        OcrDocumentResult ocr = performOcrOnPages(document, scannedPages);
+        if (ocr.allFailed() && scannedPages.size() == totalPages) {
+            throw new RuntimeException("Không OCR được trang nào của PDF: " + ocr.failedPages().get(0).error());
+        }
+        for (int i = 0; i < scannedPages.size(); i++) {
+            int page = scannedPages.get(i);
+            OcrPageResult pageResult = ocr.pages().get(i);
+            pageTexts[page] = pageResult.isSuccess()
+                    ? pageResult.text()
+                    : "[Trang " + (page + 1) + ": không đọc được nội dung]";
+        }
+        return CvTextNormalizer.normalize(String.join("\n\n", pageTexts));
     }
 
-    private String performOcrOnPdf(PDDocument document) throws IOException {
-        PDFRenderer pdfRenderer = new PDFRenderer(document);
-        StringBuilder fullText = new StringBuilder();
-
-        // Duyệt qua từng trang của PDF (Thường CV chỉ 1-2 trang)
-        for (int page = 0; page < document.getNumberOfPages(); page++) {
-            try {
-                // 1. Render trang PDF thành Ảnh (300 DPI để rõ nét)
-                BufferedImage bim = pdfRenderer.renderImageWithDPI(page, 300, ImageType.RGB);
-
-                // 2. Chuyển BufferedImage thành byte[]
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ImageIO.write(bim, "jpg", baos);
-                byte[] imageBytes = baos.toByteArray();
-
-                // 3. Gọi Gemini đọc ảnh này
-                log.info("Đang gửi trang {}/{} lên Gemini OCR...", (page + 1), document.getNumberOfPages());
-                String pageText = geminiService.convertImageToText(imageBytes, "image/jpeg");
-                
-                fullText.append(pageText).append("\n\n");
-
-            } catch (Exception e) {
-                log.error("Lỗi OCR trang " + page, e);
+    /**
+     * Trang có text layer "thật" khi đủ số ký tự chữ/số và không phải rác do font thiếu bảng mã Unicode
+     * (ký tự thay thế U+FFFD, vùng Private Use).
+     */
+    private boolean hasRealTextLayer(String pageText) {
+        if (pageText == null) return false;
+        int alnum = 0;
+        int garbage = 0;
+        for (int i = 0; i < pageText.length(); i++) {
+            char c = pageText.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                alnum++;
+            } else if (c == '\uFFFD' || Character.getType(c) == Character.PRIVATE_USE) {
+                garbage++;
             }
         }
-        return fullText.toString();
+        return alnum >= minPageTextChars && garbage * 4 < alnum;
     }
 
-    private String cleanForAI(String text) {
-        if (text == null) return "";
-        return text.replaceAll("[\\t\\u00A0]+", " ").replaceAll("\\n\\s*\\n", "\n\n").trim();
+    private OcrDocumentResult performOcrOnPages(PDDocument document, List<Integer> pages) {
+        PDFRenderer pdfRenderer = new PDFRenderer(document);
+        int totalPages = document.getNumberOfPages();
+
+        // Mỗi trang là 1 tác vụ: render (tuần tự, PDDocument không thread-safe) rồi OCR (song song)
+        // Cờ finished (khóa bằng document): sau khi run() trả về, tác vụ bị hủy còn sót không được render nữa
+        boolean[] finished = {false};
+        List<Callable<String>> pageTasks = new ArrayList<>(pages.size());
+        for (int pageIndex : pages) {
+            pageTasks.add(() -> {
+                // 1. Render trang PDF thành ảnh xám, DPI tự chọn theo ngân sách pixel + nén JPEG
+                OcrImageOptimizer.PreparedImage image;
+                synchronized (document) {
+                    if (finished[0] || Thread.currentThread().isInterrupted() || document.getDocument().isClosed()) {
+                        throw new CancellationException("Trang " + (pageIndex + 1) + " bị hủy trước khi render");
+                    }
+                    image = imageOptimizer.renderPdfPage(document, pdfRenderer, pageIndex);
+                }
+
+                // 2. OCR ảnh này (Tesseract, độ tin cậy thấp thì Gemini)
+                log.info("Đang gửi trang {}/{} đi OCR ({} KB)...", (pageIndex + 1), totalPages, image.data().length / 1024);
+                return ocrService.convertImageToText(image.data(), image.mimeType());
+            });
+        }
+
+        try {
+            return ocrExecutor.run("PDF " + pages.size() + "/" + totalPages + " trang", pageTasks);
+        } finally {
+            // Chờ trang đang render (nếu có) xong rồi mới để caller đóng PDDocument
+            synchronized (document) {
+                finished[0] = true;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package app.ai.service.cv.extractortext.docx;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đọc DOCX theo kiểu streaming, không dựng DOM XMLBeans của XWPFDocument:
+ * - word/document.xml được parse bằng SAX, chỉ giữ text của đoạn văn và bảng (có giới hạn số ký tự).
+ * - Ảnh trong word/media/ chỉ được liệt kê (tên, loại, kích thước); bytes chỉ đọc khi thực sự cần OCR, từng ảnh một.
+ * - Theo dõi bộ nhớ đang giữ (text + ảnh đang đọc) để báo cáo mức đỉnh của mỗi lần trích xuất.
+ */
+public final class DocxPackageReader implements AutoCloseable {
+
+    private static final String DOCUMENT_PART = "word/document.xml";
+    private static final String MEDIA_PREFIX = "word/media/";
+    // Transitional (phổ biến) và Strict OOXML
+    private static final String WORD_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String WORD_STRICT_NS = "http://purl.oclc.org/ooxml/wordprocessingml/main";
+
+    private static final Map<String, String> IMAGE_TYPES = Map.of(
+            "png", "image/png", "jpg", "image/jpeg", "jpeg", "image/jpeg", "gif", "image/gif",
+            "bmp", "image/bmp", "tif", "image/tiff", "tiff", "image/tiff", "webp", "image/webp",
+            "emf", "image/x-emf", "wmf", "image/x-wmf");
+
+    private static final SAXParserFactory SAX_FACTORY = createSaxFactory();
+
+    private final ZipFile zip;
+    private final AtomicLong heldBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+
+    private DocxPackageReader(ZipFile zip) {
+        this.zip = zip;
+    }
+
+    public static DocxPackageReader open(File file) throws IOException {
+        return new DocxPackageReader(new ZipFile(file));
+    }
+
+    public static DocxPackageReader open(byte[] content) throws IOException {
+        return new DocxPackageReader(new ZipFile(new SeekableInMemoryByteChannel(content)));
+    }
+
+    // Buffer có thể là file đã memory-map -> đọc trực tiếp, không copy ra heap
+    public static DocxPackageReader open(ByteBuffer content) throws IOException {
+        return new DocxPackageReader(new ZipFile(new ByteBufferChannel(content)));
+    }
+
+    /**
+     * Lấy text của document.xml: mỗi đoạn văn (kể cả đoạn trong ô bảng) 1 dòng, bỏ đoạn rỗng.
+     * Quá maxChars thì dừng parse sớm và đánh dấu truncated.
+     */
+    public DocxText readText(int maxChars) throws IOException {
+        ZipArchiveEntry entry = zip.getEntry(DOCUMENT_PART);
+        if (entry == null) {
+            throw new IOException("DOCX không có " + DOCUMENT_PART);
+        }
+        DocumentHandler handler = new DocumentHandler(maxChars);
+        try (InputStream in = zip.getInputStream(entry)) {
+            SAXParser parser = SAX_FACTORY.newSAXParser();
+            parser.parse(in, handler);
+        } catch (LimitReachedException e) {
+            // Đủ ký tự -> dừng, không đọc phần còn lại
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Không parse được " + DOCUMENT_PART + ": " + e.getMessage(), e);
+        }
+        track(handler.text.capacity() * 2L);
+        return new DocxText(handler.text.toString(), handler.truncated);
+    }
+
+    /**
+     * Liệt kê ảnh nhúng (không đọc bytes).
+     */
+    public List<ImagePart> listImages() {
+        List<ImagePart> images = new ArrayList<>();
+        for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.startsWith(MEDIA_PREFIX)) continue;
+            int dot = name.lastIndexOf('.');
+            String mimeType = dot < 0 ? null : IMAGE_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+            if (mimeType != null) {
+                images.add(new ImagePart(name, mimeType, entry.getSize()));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Đọc bytes của 1 ảnh; gọi releaseImage(bytes.length) khi dùng xong để cập nhật bộ nhớ đang giữ.
+     */
+    public byte[] readImage(ImagePart image, long maxBytes) throws IOException {
+        if (image.size() > maxBytes) {
+            throw new IOException("Ảnh " + image.name() + " quá lớn (" + image.size() + " bytes)");
+        }
+        byte[] data;
+        synchronized (zip) {
+            ZipArchiveEntry entry = zip.getEntry(image.name());
+            if (entry == null) throw new IOException("Không tìm thấy " + image.name());
+            try (InputStream in = zip.getInputStream(entry)) {
+                // Kích thước khai báo trong zip có thể sai -> vẫn chặn khi đọc
+                data = in.readNBytes((int) Math.min(maxBytes + 1, Integer.MAX_VALUE - 8));
+            }
+        }
+        if (data.length > maxBytes) {
+            throw new IOException("Ảnh " + image.name() + " quá lớn (> " + maxBytes + " bytes)");
+        }
+        track(data.length);
+        return data;
+    }
+
+    public void releaseImage(long bytes) {
+        heldBytes.addAndGet(-bytes);
+    }
+
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    private void track(long bytes) {
+        long held = heldBytes.addAndGet(bytes);
+        peakBytes.accumulateAndGet(held, Math::max);
+    }
+
+    private static SAXParserFactory createSaxFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            // Chặn DOCTYPE / entity ngoài (XXE) trong file do người dùng upload
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("Không cấu hình được SAX parser an toàn", e);
+        }
+        return factory;
+    }
+
+    public record DocxText(String text, boolean truncated) {
+    }
+
+    public record ImagePart(String name, String mimeType, long size) {
+    }
+
+    private static final class LimitReachedException extends SAXException {
+        LimitReachedException() {
+            super("Đạt giới hạn ký tự");
+        }
+    }
+
+    /**
+     * w:t -> text, w:tab -> tab, w:br / w:cr -> xuống dòng, hết w:p -> xuống dòng (nếu đoạn có chữ).
+     * Bỏ qua w:delText (đoạn đã xóa khi track changes), w:instrText (mã field) và w:tab trong w:pPr (định nghĩa tab stop).
+     */
+    private static final class DocumentHandler extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder(8192);
+        private final int maxChars;
+        private boolean truncated;
+        private boolean inText;
+        private int propertiesDepth;
+        private int paragraphStart;
+
+        DocumentHandler(int maxChars) {
+            this.maxChars = maxChars;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (!isWord(uri)) return;
+            switch (localName) {
+                case "p" -> paragraphStart = text.length();
+                case "pPr" -> propertiesDepth++;
+                case "t" -> inText = propertiesDepth == 0;
+                case "tab" -> append(propertiesDepth == 0 ? "\t" : "");
+                case "br", "cr" -> append("\n");
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!isWord(uri)) return;
+            switch (localName) {
+                case "t" -> inText = false;
+                case "pPr" -> propertiesDepth--;
+                case "p" -> {
+                    if (isBlankSince(paragraphStart)) {
+                        text.setLength(paragraphStart);
+                    } else {
+                        append("\n");
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (!inText) return;
+            int room = maxChars - text.length();
+            if (length > room) {
+                text.append(ch, start, Math.max(0, room));
+                truncated = true;
+                throw new LimitReachedException();
+            }
+            text.append(ch, start, length);
+        }
+
+        private void append(String s) throws SAXException {
+            if (s.isEmpty()) return;
+            if (text.length() + s.length() > maxChars) {
+                truncated = true;
+                throw new LimitReachedException();
+            }
+            text.append(s);
+        }
+
+        private boolean isBlankSince(int from) {
+            for (int i = from; i < text.length(); i++) {
+                if (!Character.isWhitespace(text.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        private static boolean isWord(String uri) {
+            return WORD_NS.equals(uri) || WORD_STRICT_NS.equals(uri);
+        }
+    }
+
+    /**
+     * SeekableByteChannel chỉ đọc trên 1 ByteBuffer (để ZipFile đọc thẳng từ buffer tải về).
+     */
+    private static final class ByteBufferChannel implements SeekableByteChannel {
+        private final ByteBuffer buffer;
+        private boolean open = true;
+
+        ByteBufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+            this.buffer.position(0);
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(dst.remaining(), buffer.remaining());
+            ByteBuffer slice = buffer.slice();
+            slice.limit(n);
+            dst.put(slice);
+            buffer.position(buffer.position() + n);
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return buffer.position();
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            buffer.position((int) Math.min(newPosition, buffer.limit()));
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return buffer.limit();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) throw new ClosedChannelException();
+        }
+    }
+}
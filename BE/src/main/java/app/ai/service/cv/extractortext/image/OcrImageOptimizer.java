@@ -0,0 +1,136 @@
+package app.ai.service.cv.extractortext.image;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Chuẩn bị ảnh trước khi gửi Gemini Vision OCR, giảm dung lượng upload và RAM:
+ * - Trang PDF: chọn DPI theo khổ giấy sao cho số pixel không vượt ngân sách (thay cho 300 DPI cố định), render thẳng ảnh xám.
+ * - Ảnh nhúng / ảnh upload: thu nhỏ nếu vượt ngân sách pixel, chuyển xám.
+ * - Nén JPEG với chất lượng cấu hình được (chữ đen trắng vẫn đọc tốt ở ~0.75).
+ */
+@Component
+@Slf4j
+public class OcrImageOptimizer {
+
+    private static final String JPEG = "image/jpeg";
+
+    @Value("${ocr.image.max-pixels:4000000}")
+    private long maxPixels;
+
+    @Value("${ocr.image.max-dpi:300}")
+    private int maxDpi;
+
+    @Value("${ocr.image.min-dpi:120}")
+    private int minDpi;
+
+    @Value("${ocr.image.jpeg-quality:0.75}")
+    private float jpegQuality;
+
+    @Value("${ocr.image.grayscale:true}")
+    private boolean grayscale;
+
+    /**
+     * Render 1 trang PDF thành ảnh đã tối ưu cho OCR.
+     */
+    public PreparedImage renderPdfPage(PDDocument document, PDFRenderer renderer, int pageIndex) throws IOException {
+        PDRectangle box = document.getPage(pageIndex).getCropBox();
+        float dpi = adaptiveDpi(box.getWidth() / 72f, box.getHeight() / 72f);
+        BufferedImage image = renderer.renderImageWithDPI(pageIndex, dpi, grayscale ? ImageType.GRAY : ImageType.RGB);
+        byte[] data = encodeJpeg(image);
+        log.debug("Trang {} render ở {} DPI ({}x{}), JPEG {} KB", pageIndex + 1, Math.round(dpi),
+                image.getWidth(), image.getHeight(), data.length / 1024);
+        return new PreparedImage(data, JPEG, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Tối ưu ảnh có sẵn (ảnh trong DOCX, ảnh CV upload). Định dạng ImageIO không đọc được (EMF, WMF, WebP...)
+     * thì gửi nguyên bản để Gemini tự xử lý.
+     */
+    public PreparedImage prepare(byte[] original, String mimeType) {
+        BufferedImage source;
+        try {
+            source = ImageIO.read(new ByteArrayInputStream(original));
+        } catch (IOException e) {
+            source = null;
+        }
+        if (source == null) {
+            return new PreparedImage(original, mimeType, 0, 0);
+        }
+
+        long pixels = (long) source.getWidth() * source.getHeight();
+        double scale = pixels > maxPixels ? Math.sqrt((double) maxPixels / pixels) : 1.0;
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height,
+                grayscale ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            // Nền trắng cho ảnh PNG trong suốt, tránh chữ đen trên nền đen sau khi bỏ kênh alpha
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        try {
+            byte[] data = encodeJpeg(target);
+            // Ảnh gốc đã nhỏ gọn hơn (VD: PNG chữ đen trắng) và không cần thu nhỏ -> giữ nguyên
+            if (scale == 1.0 && data.length >= original.length) {
+                return new PreparedImage(original, mimeType, source.getWidth(), source.getHeight());
+            }
+            log.debug("Ảnh OCR {}x{} ({} KB) -> {}x{} JPEG ({} KB)", source.getWidth(), source.getHeight(),
+                    original.length / 1024, width, height, data.length / 1024);
+            return new PreparedImage(data, JPEG, width, height);
+        } catch (IOException e) {
+            log.warn("Không nén được ảnh OCR, gửi ảnh gốc: {}", e.getMessage());
+            return new PreparedImage(original, mimeType, source.getWidth(), source.getHeight());
+        }
+    }
+
+    // DPI lớn nhất (trong [minDpi, maxDpi]) mà số pixel của trang không vượt maxPixels
+    private float adaptiveDpi(float widthInch, float heightInch) {
+        double areaInch = Math.max(0.01, (double) widthInch * heightInch);
+        double dpi = Math.sqrt(maxPixels / areaInch);
+        return (float) Math.max(minDpi, Math.min(maxDpi, Math.floor(dpi)));
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(8192, image.getWidth() * image.getHeight() / 8));
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    public record PreparedImage(byte[] data, String mimeType, int width, int height) {
+    }
+}
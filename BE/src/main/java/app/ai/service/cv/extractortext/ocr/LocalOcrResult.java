@@ -0,0 +1,13 @@
+package app.ai.service.cv.extractortext.ocr;
+
+/**
+ * Kết quả OCR cục bộ kèm độ tin cậy trung bình (0-100, tính theo số ký tự của từng dòng).
+ */
+public record LocalOcrResult(String text, float confidence) {
+
+    public static final LocalOcrResult EMPTY = new LocalOcrResult("", 0f);
+
+    public boolean isEmpty() {
+        return text == null || text.isBlank();
+    }
+}
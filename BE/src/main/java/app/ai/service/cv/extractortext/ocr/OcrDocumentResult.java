@@ -0,0 +1,34 @@
+package app.ai.service.cv.extractortext.ocr;
+
+import java.util.List;
+
+/**
+ * Kết quả OCR của cả tài liệu, các trang đã theo đúng thứ tự.
+ */
+public record OcrDocumentResult(List<OcrPageResult> pages) {
+
+    public List<OcrPageResult> failedPages() {
+        return pages.stream().filter(p -> !p.isSuccess()).toList();
+    }
+
+    public boolean allFailed() {
+        return !pages.isEmpty() && failedPages().size() == pages.size();
+    }
+
+    /**
+     * Ghép text theo thứ tự trang. Trang lỗi được giữ chỗ bằng 1 dòng ghi chú để người đọc / AI biết thiếu nội dung.
+     * @param unitLabel "Trang" hoặc "Ảnh"
+     */
+    public String joinedText(String unitLabel) {
+        StringBuilder sb = new StringBuilder();
+        for (OcrPageResult page : pages) {
+            if (page.isSuccess()) {
+                sb.append(page.text()).append("\n\n");
+            } else {
+                sb.append("[").append(unitLabel).append(" ").append(page.index() + 1)
+                  .append(": không đọc được nội dung]\n\n");
+            }
+        }
+        return sb.toString();
+    }
+}
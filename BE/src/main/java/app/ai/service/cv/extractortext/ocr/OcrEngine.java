@@ -0,0 +1,10 @@
+package app.ai.service.cv.extractortext.ocr;
+
+/**
+ * Hợp đồng chung của các engine OCR: nhận ảnh (bytes + mime type), trả về văn bản thô.
+ * Cùng chữ ký với GeminiService.convertImageToText để các extractor đổi engine không phải sửa logic.
+ */
+public interface OcrEngine {
+
+    String convertImageToText(byte[] imageBytes, String mimeType);
+}
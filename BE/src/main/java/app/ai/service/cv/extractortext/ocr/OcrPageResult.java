@@ -0,0 +1,19 @@
+package app.ai.service.cv.extractortext.ocr;
+
+/**
+ * Kết quả OCR của 1 trang / 1 ảnh. index bắt đầu từ 0.
+ */
+public record OcrPageResult(int index, String text, String error) {
+
+    public static OcrPageResult success(int index, String text) {
+        return new OcrPageResult(index, text != null ? text : "", null);
+    }
+
+    public static OcrPageResult failed(int index, String error) {
+        return new OcrPageResult(index, "", error != null ? error : "Lỗi không xác định");
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,81 @@
+package app.ai.service.cv.extractortext.ocr;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ghi lại các engine OCR đã dùng trong 1 lần trích xuất file (để lưu "nguồn gốc" của văn bản), và việc văn bản có
+ * bị thiếu do lỗi tạm thời hay không (trang OCR lỗi, Gemini lỗi phải dùng tạm Tesseract) -> không lưu lâu dài.
+ * Gắn vào luồng gọi bằng ThreadLocal; ParallelOcrExecutor chuyển trace sang luồng OCR khi chạy từng trang.
+ */
+public final class OcrTrace implements AutoCloseable {
+
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<OcrTrace> CURRENT = new ThreadLocal<>();
+
+    private final Set<String> engines = ConcurrentHashMap.newKeySet();
+    private final OcrTrace previous;
+    private volatile String incompleteReason;
+
+    private OcrTrace(OcrTrace previous) {
+        this.previous = previous;
+    }
+
+    public static OcrTrace start() {
+        OcrTrace trace = new OcrTrace(CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void record(String engine) {
+        OcrTrace trace = CURRENT.get();
+        if (trace != null) trace.engines.add(engine);
+    }
+
+    /**
+     * Đánh dấu văn bản của lần trích xuất hiện tại là chưa trọn vẹn (giữ lý do đầu tiên).
+     */
+    public static void markIncomplete(String reason) {
+        OcrTrace trace = CURRENT.get();
+        if (trace != null && trace.incompleteReason == null) trace.incompleteReason = reason;
+    }
+
+    /**
+     * Bọc tác vụ để engine dùng trong tác vụ (chạy ở luồng khác) vẫn được ghi vào trace của luồng gọi.
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        OcrTrace trace = CURRENT.get();
+        if (trace == null) return task;
+        return () -> {
+            OcrTrace saved = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.call();
+            } finally {
+                if (saved != null) CURRENT.set(saved);
+                else CURRENT.remove();
+            }
+        };
+    }
+
+    public String provenance() {
+        return engines.isEmpty() ? NONE : String.join("+", new TreeSet<>(engines));
+    }
+
+    public boolean isComplete() {
+        return incompleteReason == null;
+    }
+
+    public String incompleteReason() {
+        return incompleteReason;
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) CURRENT.set(previous);
+        else CURRENT.remove();
+    }
+}
@@ -0,0 +1,155 @@
+package app.ai.service.cv.extractortext.ocr;
+
+import app.exception.ExtractionOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OCR song song các trang / ảnh của 1 tài liệu (thay cho gọi Gemini Vision lần lượt từng trang).
+ * - Giới hạn toàn cục: pool dùng chung ocr.parallel.global-max-concurrency luồng cho mọi tài liệu.
+ * - Giới hạn mỗi tài liệu: tối đa ocr.parallel.per-document-max-concurrency trang chạy cùng lúc,
+ *   trang tiếp theo chỉ được gửi khi có trang xong (tránh 1 CV nhiều trang chiếm hết pool).
+ * - Pool đầy: không chạy trên luồng gọi (sẽ vượt hạn chót của tài liệu), trang chờ tới khi 1 trang của tài liệu xong
+ *   rồi gửi lại; tài liệu không còn trang nào đang chạy mà vẫn bị từ chối -> ExtractionOverloadedException (429).
+ * - Kết quả ghép lại đúng thứ tự trang; trang lỗi được báo riêng, không bị bỏ qua im lặng.
+ */
+@Component
+@Slf4j
+public class ParallelOcrExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int perDocumentMaxConcurrency;
+    private final long documentTimeoutMs;
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final Counter rejectedCounter;
+
+    public ParallelOcrExecutor(MeterRegistry meterRegistry,
+                               @Value("${ocr.parallel.global-max-concurrency:8}") int globalMaxConcurrency,
+                               @Value("${ocr.parallel.per-document-max-concurrency:3}") int perDocumentMaxConcurrency,
+                               @Value("${ocr.parallel.queue-capacity:100}") int queueCapacity,
+                               @Value("${ocr.parallel.document-timeout-ms:180000}") long documentTimeoutMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(globalMaxConcurrency, globalMaxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ocr-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.perDocumentMaxConcurrency = Math.max(1, perDocumentMaxConcurrency);
+        this.documentTimeoutMs = documentTimeoutMs;
+
+        Gauge.builder("ocr.pool.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("ocr.pool.queued", executor, e -> e.getQueue().size()).register(meterRegistry);
+        this.successCounter = Counter.builder("ocr.pages").tag("outcome", "success").register(meterRegistry);
+        this.failureCounter = Counter.builder("ocr.pages").tag("outcome", "failed").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("ocr.documents.rejected").register(meterRegistry);
+    }
+
+    /**
+     * Chạy các tác vụ OCR (mỗi tác vụ = 1 trang/ảnh, trả về text) và trả kết quả theo đúng thứ tự đầu vào.
+     */
+    public OcrDocumentResult run(String documentLabel, List<Callable<String>> pageTasks) {
+        int total = pageTasks.size();
+        OcrPageResult[] results = new OcrPageResult[total];
+        ExecutorCompletionService<IndexedText> completion = new ExecutorCompletionService<>(executor);
+        List<Future<IndexedText>> futures = new ArrayList<>(total);
+        long deadline = System.currentTimeMillis() + documentTimeoutMs;
+
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (completed < total) {
+                // Gửi thêm trang tới khi đủ giới hạn của tài liệu hoặc pool hết chỗ
+                while (submitted < total && submitted - completed < perDocumentMaxConcurrency) {
+                    Future<IndexedText> future = trySubmit(completion, pageTasks, submitted);
+                    if (future == null) break;
+                    futures.add(future);
+                    submitted++;
+                }
+                if (submitted == completed) {
+                    // Không có trang nào đang chạy để chờ -> từ chối sớm thay vì chờ pool vô thời hạn
+                    rejectedCounter.increment();
+                    log.warn("OCR {} bị từ chối: pool OCR đầy, {}/{} trang chưa xử lý", documentLabel, total - completed, total);
+                    throw new ExtractionOverloadedException("Hệ thống OCR đang quá tải, vui lòng thử lại sau ít phút");
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                Future<IndexedText> done = remaining > 0 ? completion.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (done == null) {
+                    log.error("OCR {} quá thời gian {}ms, {}/{} trang chưa xong", documentLabel, documentTimeoutMs, total - completed, total);
+                    break;
+                }
+                completed++;
+                IndexedText page = done.get();
+                results[page.index()] = page.result();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Không xảy ra: lỗi của từng trang đã được bọc trong OcrPageResult
+            log.error("Lỗi không mong đợi khi OCR {}: {}", documentLabel, e.getMessage());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        for (int i = 0; i < total; i++) {
+            if (results[i] == null) {
+                results[i] = OcrPageResult.failed(i, "Hết thời gian hoặc bị hủy");
+                failureCounter.increment();
+            }
+        }
+        OcrDocumentResult result = new OcrDocumentResult(List.of(results));
+        if (!result.failedPages().isEmpty()) {
+            OcrTrace.markIncomplete(result.failedPages().size() + "/" + total + " trang OCR lỗi");
+            log.warn("OCR {}: {}/{} trang lỗi {}", documentLabel, result.failedPages().size(), total,
+                    result.failedPages().stream().map(p -> (p.index() + 1) + ": " + p.error()).toList());
+        }
+        return result;
+    }
+
+    // Pool đầy -> null (trang được gửi lại sau khi 1 trang khác của tài liệu xong)
+    private Future<IndexedText> trySubmit(ExecutorCompletionService<IndexedText> completion, List<Callable<String>> tasks, int index) {
+        Callable<String> task = OcrTrace.propagate(tasks.get(index));
+        try {
+            return completion.submit(() -> {
+                try {
+                    String text = task.call();
+                    successCounter.increment();
+                    return new IndexedText(index, OcrPageResult.success(index, text));
+                } catch (Exception e) {
+                    failureCounter.increment();
+                    return new IndexedText(index, OcrPageResult.failed(index, e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record IndexedText(int index, OcrPageResult result) {
+    }
+}
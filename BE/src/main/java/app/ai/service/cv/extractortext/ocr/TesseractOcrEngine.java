@@ -0,0 +1,198 @@
+package app.ai.service.cv.extractortext.ocr;
+
+import com.sun.jna.Pointer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OCR cục bộ bằng Tesseract (tess4j), chạy offline, không tốn quota Gemini.
+ * - Mỗi luồng giữ 1 handle TessBaseAPI riêng, nạp traineddata 1 lần rồi dùng lại cho mọi ảnh (lớp Tesseract của tess4j
+ *   init/dispose mỗi lần gọi nên nạp lại dữ liệu ngôn ngữ từng trang). Số handle bị chặn bởi số luồng của pool OCR;
+ *   handle của luồng đã chết được giải phóng khi tạo handle mới, còn lại giải phóng khi tắt ứng dụng.
+ * - Cần traineddata tiếng Việt + tiếng Anh trong ocr.tesseract.datapath và thư viện native libtesseract.
+ *   Thiếu 1 trong 2 thì engine tự tắt, mọi ảnh đi thẳng Gemini Vision như trước.
+ */
+@Component
+@Slf4j
+public class TesseractOcrEngine implements OcrEngine {
+
+    @Value("${ocr.tesseract.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.tesseract.datapath:${TESSDATA_PREFIX:/usr/share/tesseract-ocr/5/tessdata}}")
+    private String datapath;
+
+    @Value("${ocr.tesseract.language:vie+eng}")
+    private String language;
+
+    // 1 = tự nhận diện bố cục trang + hướng chữ (CV thường có nhiều cột)
+    @Value("${ocr.tesseract.page-seg-mode:1}")
+    private int pageSegMode;
+
+    private volatile boolean available;
+
+    private final Map<Thread, NativeHandle> handles = new ConcurrentHashMap<>();
+    private final ThreadLocal<NativeHandle> localHandle = new ThreadLocal<>();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            log.info("Tesseract OCR đang tắt (ocr.tesseract.enabled=false)");
+            return;
+        }
+        for (String lang : language.split("\\+")) {
+            if (!Files.isRegularFile(Path.of(datapath, lang + ".traineddata"))) {
+                log.warn("Không tìm thấy {}.traineddata trong {}. Tắt Tesseract, OCR dùng Gemini Vision", lang, datapath);
+                return;
+            }
+        }
+        available = true;
+        log.info("Tesseract OCR sẵn sàng (ngôn ngữ: {}, datapath: {})", language, datapath);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * OCR ảnh và trả kèm độ tin cậy. Ảnh không giải mã được (WebP...) hoặc engine không dùng được -> EMPTY.
+     */
+    public LocalOcrResult recognize(byte[] imageBytes) {
+        if (!available) return LocalOcrResult.EMPTY;
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        } catch (IOException e) {
+            image = null;
+        }
+        if (image == null) return LocalOcrResult.EMPTY;
+
+        try {
+            NativeHandle handle = handle();
+            return handle != null ? handle.recognize(image) : LocalOcrResult.EMPTY;
+        } catch (LinkageError e) {
+            // Thiếu libtesseract/leptonica trên máy chủ -> tắt hẳn, không thử lại mỗi ảnh
+            available = false;
+            log.warn("Không nạp được thư viện native Tesseract, chuyển toàn bộ OCR sang Gemini Vision: {}", e.getMessage());
+            return LocalOcrResult.EMPTY;
+        } catch (IOException e) {
+            log.warn("Không chuyển được ảnh cho Tesseract: {}", e.getMessage());
+            return LocalOcrResult.EMPTY;
+        }
+    }
+
+    @Override
+    public String convertImageToText(byte[] imageBytes, String mimeType) {
+        return recognize(imageBytes).text();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        handles.values().forEach(NativeHandle::end);
+        handles.clear();
+    }
+
+    // Handle của luồng hiện tại, lần đầu thì tạo + nạp traineddata (null nếu nạp lỗi -> engine tự tắt)
+    private NativeHandle handle() {
+        NativeHandle handle = localHandle.get();
+        if (handle != null) return handle;
+
+        handles.entrySet().removeIf(e -> {
+            if (e.getKey().isAlive()) return false;
+            e.getValue().end();
+            return true;
+        });
+        TessAPI api = TessAPI.INSTANCE;
+        ITessAPI.TessBaseAPI raw = api.TessBaseAPICreate();
+        if (api.TessBaseAPIInit2(raw, datapath, language, ITessAPI.TessOcrEngineMode.OEM_LSTM_ONLY) != 0) {
+            api.TessBaseAPIDelete(raw);
+            available = false;
+            log.warn("Tesseract không khởi tạo được với ngôn ngữ {} ({}), chuyển OCR sang Gemini Vision", language, datapath);
+            return null;
+        }
+        api.TessBaseAPISetPageSegMode(raw, pageSegMode);
+        handle = new NativeHandle(api, raw);
+        localHandle.set(handle);
+        handles.put(Thread.currentThread(), handle);
+        return handle;
+    }
+
+    /** 1 TessBaseAPI đã nạp ngôn ngữ, chỉ luồng sở hữu dùng; khóa để end() không chạy chen lúc đang nhận dạng. */
+    private static final class NativeHandle {
+        private final TessAPI api;
+        private final ITessAPI.TessBaseAPI raw;
+        private boolean ended;
+
+        NativeHandle(TessAPI api, ITessAPI.TessBaseAPI raw) {
+            this.api = api;
+            this.raw = raw;
+        }
+
+        synchronized LocalOcrResult recognize(BufferedImage image) throws IOException {
+            if (ended) return LocalOcrResult.EMPTY;
+            ByteBuffer pixels = ImageIOHelper.getImageByteBuffer(image);
+            int bpp = image.getData(new Rectangle(1, 1)).getDataBuffer() instanceof DataBufferByte
+                    ? image.getColorModel().getPixelSize() : 8;
+            int bytesPerLine = (int) Math.ceil(image.getWidth() * bpp / 8.0);
+            api.TessBaseAPISetImage(raw, pixels, image.getWidth(), image.getHeight(), bpp / 8, bytesPerLine);
+            try {
+                if (api.TessBaseAPIRecognize(raw, null) != 0) return LocalOcrResult.EMPTY;
+                return readLines();
+            } finally {
+                // Chỉ bỏ ảnh + kết quả, giữ dữ liệu ngôn ngữ cho ảnh sau
+                api.TessBaseAPIClear(raw);
+            }
+        }
+
+        private LocalOcrResult readLines() {
+            int level = ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE;
+            ITessAPI.TessResultIterator it = api.TessBaseAPIGetIterator(raw);
+            if (it == null) return LocalOcrResult.EMPTY;
+            StringBuilder text = new StringBuilder();
+            double weightedConfidence = 0;
+            int chars = 0;
+            try {
+                api.TessPageIteratorBegin(api.TessResultIteratorGetPageIterator(it));
+                do {
+                    Pointer ptr = api.TessResultIteratorGetUTF8Text(it, level);
+                    if (ptr == null) continue;
+                    String lineText = ptr.getString(0, "UTF-8").strip();
+                    api.TessDeleteText(ptr);
+                    if (lineText.isEmpty()) continue;
+                    text.append(lineText).append('\n');
+                    weightedConfidence += (double) api.TessResultIteratorConfidence(it, level) * lineText.length();
+                    chars += lineText.length();
+                } while (api.TessResultIteratorNext(it, level) == ITessAPI.TRUE);
+            } finally {
+                api.TessResultIteratorDelete(it);
+            }
+            if (chars == 0) return LocalOcrResult.EMPTY;
+            return new LocalOcrResult(text.toString().trim(), (float) (weightedConfidence / chars));
+        }
+
+        synchronized void end() {
+            if (ended) return;
+            ended = true;
+            api.TessBaseAPIEnd(raw);
+            api.TessBaseAPIDelete(raw);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package app.ai.service.cv.extractortext.ocr;
+
+import app.ai.service.cv.gemini.GeminiService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * OCR 2 tầng: thử Tesseract cục bộ trước, chỉ gọi Gemini Vision khi độ tin cậy thấp hơn ngưỡng
+ * (ảnh mờ, chữ nghệ thuật, bố cục phức tạp). Phần lớn ảnh scan sạch không tốn mạng và quota.
+ * Gemini lỗi / mất kết nối mà Tesseract đã đọc được chữ thì dùng tạm kết quả cục bộ (chạy được offline).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TieredOcrService implements OcrEngine {
+
+    private final TesseractOcrEngine tesseractOcrEngine;
+    private final GeminiService geminiService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ocr.tesseract.min-confidence:80}")
+    private float minConfidence;
+
+    // Ít chữ quá thì độ tin cậy không có ý nghĩa (ảnh chân dung, logo...) -> để Gemini xem
+    @Value("${ocr.tesseract.min-text-chars:20}")
+    private int minTextChars;
+
+    @Override
+    public String convertImageToText(byte[] imageBytes, String mimeType) {
+        LocalOcrResult local = tesseractOcrEngine.recognize(imageBytes);
+        if (!local.isEmpty() && local.text().length() >= minTextChars && local.confidence() >= minConfidence) {
+            count("tesseract", "accepted");
+            OcrTrace.record("tesseract");
+            log.debug("Tesseract OCR đạt {}% (>= {}%), bỏ qua Gemini", Math.round(local.confidence()), minConfidence);
+            return local.text();
+        }
+        if (tesseractOcrEngine.isAvailable()) {
+            count("tesseract", "low-confidence");
+            log.debug("Tesseract OCR chỉ đạt {}%, chuyển sang Gemini Vision", Math.round(local.confidence()));
+        }
+
+        try {
+            String text = geminiService.convertImageToText(imageBytes, mimeType);
+            count("gemini", "success");
+            OcrTrace.record("gemini");
+            return text;
+        } catch (RuntimeException e) {
+            if (local.isEmpty()) {
+                count("gemini", "failed");
+                throw e;
+            }
+            count("tesseract", "fallback");
+            OcrTrace.record("tesseract");
+            // Kết quả tạm thời (Gemini lỗi có thể chỉ là nhất thời) -> không lưu vĩnh viễn vào kho văn bản
+            OcrTrace.markIncomplete("Gemini OCR lỗi, dùng tạm Tesseract");
+            log.warn("Gemini OCR lỗi ({}), dùng kết quả Tesseract ({}%)", e.getMessage(), Math.round(local.confidence()));
+            return local.text();
+        }
+    }
+
+    private void count(String engine, String outcome) {
+        Counter.builder("ocr.engine")
+                .tag("engine", engine).tag("outcome", outcome)
+                .register(meterRegistry).increment();
+    }
+}
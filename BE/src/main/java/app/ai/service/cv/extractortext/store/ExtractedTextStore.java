@@ -0,0 +1,327 @@
+package app.ai.service.cv.extractortext.store;
+
+import app.ai.models.CvExtractedText;
+import app.ai.models.CvTextUrlLink;
+import app.ai.repository.ICvExtractedTextRepository;
+import app.ai.repository.ICvTextUrlLinkRepository;
+import app.ai.service.cv.extractortext.ocr.OcrTrace;
+import app.ai.service.cv.gemini.cache.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Kho văn bản đã trích xuất từ file CV, để cùng 1 file không phải qua PDFBox / OCR lại lần nữa.
+ * - Khóa chính: SHA-256 nội dung file -> CV đổi (file khác) thì tự ra khóa khác.
+ * - Khóa phụ: URL Cloudinary -> hash (bảng cv_extracted_text_urls, nhiều URL có thể cùng 1 hash)
+ *   -> preview / chấm điểm lại không cần tải file.
+ * - Entry có extractorVersion cũ hơn phiên bản hiện tại bị bỏ qua (trích xuất lại khi sửa bộ trích xuất).
+ * - Văn bản chưa trọn vẹn (trang OCR lỗi, Gemini lỗi phải dùng tạm Tesseract - xem OcrTrace) KHÔNG được lưu,
+ *   để lỗi nhất thời không thành kết quả vĩnh viễn của file đó.
+ * - Tầng 1: LRU trong RAM. Tầng 2: bảng cv_extracted_texts (cv.text-store.persistent.enabled).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExtractedTextStore {
+
+    /**
+     * Tăng khi thay đổi logic trích xuất (PDF/DOCX/OCR/làm sạch text) để văn bản cũ được trích xuất lại.
+     */
+    public static final int EXTRACTOR_VERSION = 3;
+
+    private final ICvExtractedTextRepository repository;
+    private final ICvTextUrlLinkRepository urlLinkRepository;
+    private final SingleFlight singleFlight;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${cv.text-store.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cv.text-store.memory.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${cv.text-store.persistent.enabled:true}")
+    private boolean persistentEnabled;
+
+    private Map<String, StoredText> byHash;
+    private final Map<String, String> hashByUrl = new ConcurrentHashMap<>();
+    private TransactionTemplate requiresNewTx;
+
+    @PostConstruct
+    void init() {
+        byHash = new LinkedHashMap<>(128, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredText> eldest) {
+                if (size() > maxEntries) {
+                    hashByUrl.values().removeIf(eldest.getKey()::equals);
+                    return true;
+                }
+                return false;
+            }
+        };
+        // Lỗi đọc/ghi kho không được làm rollback transaction nghiệp vụ
+        requiresNewTx = new TransactionTemplate(transactionManager);
+        requiresNewTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Gauge.builder("cv.text-store.memory.size", this, s -> s.memorySize()).register(meterRegistry);
+    }
+
+    /**
+     * Tìm văn bản theo URL file CV (không cần tải file).
+     */
+    public Optional<StoredText> findByUrl(String sourceUrl) {
+        if (!enabled || sourceUrl == null || sourceUrl.isBlank()) return Optional.empty();
+
+        String hash = hashByUrl.get(sourceUrl);
+        if (hash != null) {
+            StoredText cached = memoryGet(hash);
+            if (cached != null) {
+                count("url", "hit_memory");
+                return Optional.of(cached);
+            }
+        }
+
+        if (persistentEnabled) {
+            Optional<StoredText> stored = loadFromDb(() -> urlLinkRepository.findById(sourceUrl)
+                    .flatMap(link -> repository.findById(link.getContentHash())));
+            if (stored.isPresent()) {
+                remember(stored.get(), sourceUrl);
+                count("url", "hit_db");
+                return stored;
+            }
+        }
+        count("url", "miss");
+        return Optional.empty();
+    }
+
+    /**
+     * Lấy văn bản của file theo hash nội dung, chưa có thì chạy extraction (1 lần cho mỗi hash dù nhiều request cùng lúc)
+     * và lưu lại kèm nguồn OCR. sourceUrl (có thể null) được gắn với nội dung để lần sau tra theo URL.
+     */
+    public String getOrExtract(byte[] content, String sourceUrl, Callable<String> extraction) {
+        if (!enabled) return call(extraction);
+        return getOrExtract(sha256Hex(content), sourceUrl, extraction);
+    }
+
+    /**
+     * Như trên, khi hash nội dung đã được tính sẵn (VD: file tải về dạng buffer).
+     */
+    public String getOrExtract(String hash, String sourceUrl, Callable<String> extraction) {
+        if (!enabled) return call(extraction);
+
+        StoredText cached = memoryGet(hash);
+        if (cached != null) {
+            count("hash", "hit_memory");
+            linkUrl(cached, sourceUrl);
+            return cached.text();
+        }
+
+        StoredText stored = singleFlight.execute("cv-text:" + hash, () -> {
+            if (persistentEnabled) {
+                Optional<StoredText> fromDb = loadFromDb(() -> repository.findById(hash));
+                if (fromDb.isPresent()) {
+                    count("hash", "hit_db");
+                    remember(fromDb.get(), null);
+                    return fromDb.get();
+                }
+            }
+            count("hash", "miss");
+            long start = System.currentTimeMillis();
+            String text;
+            String provenance;
+            String incompleteReason;
+            try (OcrTrace trace = OcrTrace.start()) {
+                text = call(extraction);
+                provenance = trace.provenance();
+                incompleteReason = trace.incompleteReason();
+            }
+            StoredText extracted = new StoredText(hash, text, EXTRACTOR_VERSION, provenance);
+            log.info("Trích xuất CV {} mất {}ms ({} ký tự, OCR: {})", hash.substring(0, 12),
+                    System.currentTimeMillis() - start, text.length(), provenance);
+            if (incompleteReason != null) {
+                // Lần sau trích xuất lại, biết đâu OCR / Gemini đã ổn
+                count("hash", "incomplete");
+                log.warn("Không lưu văn bản CV {} vì chưa trọn vẹn: {}", hash.substring(0, 12), incompleteReason);
+                return new StoredText(hash, text, EXTRACTOR_VERSION, provenance, false);
+            }
+            save(extracted, sourceUrl);
+            return extracted;
+        });
+        if (stored.complete()) {
+            linkUrl(stored, sourceUrl);
+        }
+        return stored.text();
+    }
+
+    /**
+     * CV của ứng viên đã được thay: bỏ liên kết URL cũ để không trả nhầm văn bản của file cũ.
+     */
+    public void invalidateUrl(String sourceUrl) {
+        if (sourceUrl == null || sourceUrl.isBlank()) return;
+        hashByUrl.remove(sourceUrl);
+        if (persistentEnabled) {
+            try {
+                requiresNewTx.executeWithoutResult(status -> urlLinkRepository.detachUrl(sourceUrl));
+            } catch (Exception e) {
+                log.warn("Lỗi gỡ URL khỏi kho văn bản CV: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Chỉ gắn URL với văn bản đã lưu theo hash (không trích xuất). Hash chưa có trong kho
+     * (văn bản chưa trọn vẹn nên không được lưu) thì bỏ qua.
+     */
+    public void linkUrl(String contentHash, String sourceUrl) {
+        if (!enabled || contentHash == null || sourceUrl == null || sourceUrl.isBlank()) return;
+        StoredText cached = memoryGet(contentHash);
+        if (cached != null) {
+            linkUrl(cached, sourceUrl);
+            return;
+        }
+        if (!persistentEnabled) return;
+        try {
+            requiresNewTx.executeWithoutResult(status -> {
+                if (repository.existsById(contentHash)) {
+                    saveLink(sourceUrl, contentHash);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Lỗi gắn URL vào kho văn bản CV: {}", e.getMessage());
+        }
+    }
+
+    public static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private void linkUrl(StoredText stored, String sourceUrl) {
+        if (sourceUrl == null || sourceUrl.isBlank() || stored.contentHash().equals(hashByUrl.get(sourceUrl))) return;
+        hashByUrl.put(sourceUrl, stored.contentHash());
+        if (persistentEnabled) {
+            try {
+                requiresNewTx.executeWithoutResult(status -> saveLink(sourceUrl, stored.contentHash()));
+            } catch (Exception e) {
+                log.warn("Lỗi gắn URL vào kho văn bản CV: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Ghi đè nếu URL đã trỏ tới hash khác; các URL khác cùng hash không bị ảnh hưởng
+    private void saveLink(String sourceUrl, String contentHash) {
+        urlLinkRepository.save(CvTextUrlLink.builder()
+                .sourceUrl(sourceUrl)
+                .contentHash(contentHash)
+                .linkedAt(LocalDateTime.now())
+                .build());
+    }
+
+    private void save(StoredText extracted, String sourceUrl) {
+        remember(extracted, sourceUrl);
+        if (!persistentEnabled) return;
+        try {
+            requiresNewTx.executeWithoutResult(status -> {
+                repository.save(CvExtractedText.builder()
+                        .contentHash(extracted.contentHash())
+                        .text(extracted.text())
+                        .extractorVersion(extracted.extractorVersion())
+                        .ocrProvenance(extracted.ocrProvenance())
+                        .createdAt(LocalDateTime.now())
+                        .build());
+                if (sourceUrl != null && !sourceUrl.isBlank()) {
+                    saveLink(sourceUrl, extracted.contentHash());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Lỗi lưu văn bản CV xuống DB: {}", e.getMessage());
+        }
+    }
+
+    private Optional<StoredText> loadFromDb(Supplier<Optional<CvExtractedText>> query) {
+        try {
+            Optional<CvExtractedText> entity = requiresNewTx.execute(status -> query.get());
+            if (entity == null || entity.isEmpty() || entity.get().getExtractorVersion() < EXTRACTOR_VERSION) {
+                return Optional.empty();
+            }
+            CvExtractedText e = entity.get();
+            return Optional.of(new StoredText(e.getContentHash(), e.getText(), e.getExtractorVersion(), e.getOcrProvenance()));
+        } catch (Exception e) {
+            log.warn("Lỗi đọc kho văn bản CV từ DB: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void remember(StoredText stored, String sourceUrl) {
+        synchronized (byHash) {
+            byHash.put(stored.contentHash(), stored);
+        }
+        if (sourceUrl != null && !sourceUrl.isBlank()) {
+            hashByUrl.put(sourceUrl, stored.contentHash());
+        }
+    }
+
+    private StoredText memoryGet(String hash) {
+        synchronized (byHash) {
+            return byHash.get(hash);
+        }
+    }
+
+    private int memorySize() {
+        synchronized (byHash) {
+            return byHash.size();
+        }
+    }
+
+    private void count(String lookup, String result) {
+        Counter.builder("cv.text-store.requests")
+                .tag("lookup", lookup)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String call(Callable<String> extraction) {
+        try {
+            return extraction.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Lỗi trích xuất nội dung file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param complete false = văn bản chưa trọn vẹn, chỉ trả cho lần gọi hiện tại, không nằm trong kho
+     */
+    public record StoredText(String contentHash, String text, int extractorVersion, String ocrProvenance,
+                             boolean complete) {
+        public StoredText(String contentHash, String text, int extractorVersion, String ocrProvenance) {
+            this(contentHash, text, extractorVersion, ocrProvenance, true);
+        }
+    }
+}
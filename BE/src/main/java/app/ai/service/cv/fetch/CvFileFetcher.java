@@ -0,0 +1,219 @@
+package app.ai.service.cv.fetch;
+
+import app.ai.service.cv.extractortext.CvFileContent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tải file CV từ URL (Cloudinary) thẳng vào bộ nhớ, không ghi file tạm cho CV thông thường.
+ * - CV nhỏ hơn cv.fetch.memory-threshold-bytes: giữ trong mảng byte.
+ * - CV lớn hơn: ghi tràn ra 1 file tạm rồi memory-map (không chiếm heap).
+ * - Giới hạn cứng cv.fetch.max-bytes, connect/read timeout và hạn chót tổng cho cả lần tải.
+ * - Cache byte theo URL kèm ETag / Last-Modified: lần sau gửi request có điều kiện, 304 -> dùng lại bản cũ.
+ */
+@Component
+@Slf4j
+public class CvFileFetcher {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long maxBytes;
+    private final int memoryThresholdBytes;
+    private final long deadlineMs;
+    private final long cacheMaxBytes;
+
+    private final LinkedHashMap<String, CachedFile> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    public CvFileFetcher(MeterRegistry meterRegistry,
+                         @Value("${cv.fetch.max-bytes:10485760}") long maxBytes,
+                         @Value("${cv.fetch.memory-threshold-bytes:4194304}") int memoryThresholdBytes,
+                         @Value("${cv.fetch.connect-timeout-ms:5000}") long connectTimeoutMs,
+                         @Value("${cv.fetch.read-timeout-ms:10000}") long readTimeoutMs,
+                         @Value("${cv.fetch.deadline-ms:30000}") long deadlineMs,
+                         @Value("${cv.fetch.cache.max-bytes:67108864}") long cacheMaxBytes) {
+        this.meterRegistry = meterRegistry;
+        this.maxBytes = maxBytes;
+        this.memoryThresholdBytes = memoryThresholdBytes;
+        this.deadlineMs = deadlineMs;
+        this.cacheMaxBytes = cacheMaxBytes;
+
+        // Client riêng cho việc tải file, không dùng chung pool / timeout với Gemini
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(20)
+                        .setMaxConnPerRoute(10)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                                .build())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    /**
+     * Tải file về; kết quả phải được close() sau khi dùng (xóa file tạm nếu có).
+     */
+    public CvFileContent fetch(String url) {
+        CachedFile cached = cacheGet(url);
+        long deadline = System.currentTimeMillis() + deadlineMs;
+
+        CvFileContent content = restTemplate.execute(URI.create(url), HttpMethod.GET,
+                request -> {
+                    if (cached == null) return;
+                    if (cached.etag() != null) request.getHeaders().setIfNoneMatch(cached.etag());
+                    if (cached.lastModified() > 0) request.getHeaders().setIfModifiedSince(cached.lastModified());
+                },
+                response -> {
+                    if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+                        count("not_modified");
+                        return CvFileContent.of(cached.data(), cached.data().length);
+                    }
+                    return read(url, response, deadline);
+                });
+
+        if (content == null) {
+            throw new IllegalStateException("Không tải được CV: " + url);
+        }
+        return content;
+    }
+
+    private CvFileContent read(String url, ClientHttpResponse response, long deadline) throws IOException {
+        HttpHeaders headers = response.getHeaders();
+        long declared = headers.getContentLength();
+        if (declared > maxBytes) {
+            count("too_large");
+            throw new IOException("CV vượt dung lượng cho phép (" + declared + " > " + maxBytes + " bytes)");
+        }
+
+        int initial = declared > 0 && declared <= memoryThresholdBytes ? (int) declared : CHUNK_SIZE;
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(initial);
+        Path spill = null;
+        FileChannel spillChannel = null;
+        long total = 0;
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try (InputStream in = response.getBody()) {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                total += n;
+                if (total > maxBytes) {
+                    count("too_large");
+                    throw new IOException("CV vượt dung lượng cho phép (> " + maxBytes + " bytes)");
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    count("timeout");
+                    throw new IOException("Tải CV quá thời gian " + deadlineMs + "ms");
+                }
+                if (spillChannel == null && total > memoryThresholdBytes) {
+                    // Vượt ngưỡng RAM -> chuyển phần đã đọc sang file tạm, phần còn lại ghi thẳng xuống file
+                    spill = Files.createTempFile("cv_fetch_", ".bin");
+                    spillChannel = FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    spillChannel.write(ByteBuffer.wrap(memory.toByteArray()));
+                    memory = null;
+                }
+                if (spillChannel != null) {
+                    spillChannel.write(ByteBuffer.wrap(chunk, 0, n));
+                } else {
+                    memory.write(chunk, 0, n);
+                }
+            }
+
+            if (spillChannel != null) {
+                MappedByteBuffer mapped = spillChannel.map(FileChannel.MapMode.READ_ONLY, 0, total);
+                count("spilled");
+                log.info("CV {} lớn ({} KB), đọc qua file tạm memory-map", url, total / 1024);
+                return CvFileContent.mapped(mapped, spill);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(spill);
+            throw e;
+        } finally {
+            if (spillChannel != null) spillChannel.close();
+        }
+
+        byte[] data = memory.toByteArray();
+        count("downloaded");
+        cachePut(url, new CachedFile(data, headers.getETag(), headers.getLastModified()));
+        return CvFileContent.of(data, data.length);
+    }
+
+    private CachedFile cacheGet(String url) {
+        synchronized (cache) {
+            return cache.get(url);
+        }
+    }
+
+    // Chỉ cache file có ETag hoặc Last-Modified (mới xác thực lại được), tổng dung lượng không vượt cacheMaxBytes
+    private void cachePut(String url, CachedFile file) {
+        if (file.etag() == null && file.lastModified() <= 0) return;
+        if (file.data().length > cacheMaxBytes) return;
+        synchronized (cache) {
+            CachedFile old = cache.put(url, file);
+            if (old != null) cachedBytes -= old.data().length;
+            cachedBytes += file.data().length;
+            var it = cache.entrySet().iterator();
+            while (cachedBytes > cacheMaxBytes && it.hasNext()) {
+                Map.Entry<String, CachedFile> eldest = it.next();
+                cachedBytes -= eldest.getValue().data().length;
+                it.remove();
+            }
+        }
+    }
+
+    private void count(String result) {
+        Counter.builder("cv.fetch.requests").tag("result", result).register(meterRegistry).increment();
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Không xóa được file tạm {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        httpClient.close();
+    }
+
+    private record CachedFile(byte[] data, String etag, long lastModified) {
+    }
+}
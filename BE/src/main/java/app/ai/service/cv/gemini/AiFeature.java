@@ -0,0 +1,24 @@
+package app.ai.service.cv.gemini;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Các loại thao tác gọi Gemini. Dùng làm "template id" cho cache và để cấu hình riêng theo từng chức năng.
+ * Khi sửa nội dung prompt của chức năng nào thì tăng templateVersion của chức năng đó để cache cũ tự vô hiệu.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum AiFeature {
+    PARSE_CV("parse-cv", 2, 7 * 24 * 60),
+    EXTRACT_JOB_SKILLS("extract-job-skills", 2, 30 * 24 * 60),
+    MATCH_CV_JOB("match-cv-job", 2, 24 * 60),
+    MATCH_CV_JOB_BATCH("match-cv-job-batch", 1, 0), // Kết quả lưu thẳng vào JobApplication -> không cache
+    CHAT("chat", 1, 60),
+    OCR_IMAGE("ocr-image", 1, 30 * 24 * 60),
+    INTERVIEW("interview", 1, 0); // Hội thoại phụ thuộc ngữ cảnh -> không cache
+
+    private final String id;
+    private final int templateVersion;
+    private final long defaultTtlMinutes;
+}
@@ -6,75 +6,133 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class GeminiApiClient {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate geminiRestTemplate;
     private final ObjectMapper objectMapper;
+    private final GeminiKeyScheduler keyScheduler;
 
-    @Value("#{'${gemini.api.keys}'.split(',')}")
-    private List<String> apiKeys;
+    @Value("${gemini.retry.max-attempts:3}")
+    private int maxRetries;
 
-    private final AtomicInteger keyIndex = new AtomicInteger(0);
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-flash-latest:generateContent?key=";
+    @Value("${gemini.retry.base-backoff-ms:500}")
+    private long baseBackoffMs;
 
-    private String getRotatedKey() {
-        if (apiKeys == null || apiKeys.isEmpty()) {
-            throw new RuntimeException("Không tìm thấy API Key nào trong cấu hình!");
-        }
-        int index = keyIndex.getAndIncrement() % apiKeys.size();
-        if (index < 0) index = Math.abs(index);
-        
-        String selectedKey = apiKeys.get(index);
-        // Log ẩn bớt key để bảo mật
-        log.info("Đang sử dụng Key thứ {}/{} : ...{}", (index + 1), apiKeys.size(), selectedKey.substring(Math.max(0, selectedKey.length() - 4)));
-        return selectedKey;
+    @Value("${gemini.retry.max-backoff-ms:8000}")
+    private long maxBackoffMs;
+
+    // Profile gemini-sim trỏ địa chỉ này về GeminiSimulatorServer chạy local
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com/v1beta}")
+    private String apiBaseUrl;
+
+    private static final String GEMINI_MODEL = "gemini-flash-latest";
+
+    public String getModel() {
+        return GEMINI_MODEL;
+    }
+
+    private String generateUrl(String apiKey) {
+        return apiBaseUrl + "/models/" + GEMINI_MODEL + ":generateContent?key=" + apiKey;
+    }
+
+    private String streamUrl(String apiKey) {
+        return apiBaseUrl + "/models/" + GEMINI_MODEL + ":streamGenerateContent?alt=sse&key=" + apiKey;
     }
 
     /**
      * Gửi Prompt lên Google Gemini với cấu hình nhiệt độ (temperature) tùy chỉnh.
      */
     public String generateContent(String promptText, float temperature) {
-        int maxRetries = 3; 
-        int attempt = 0;
+        return executeWithRetry("Text", key -> callGeminiApi(key, promptText, temperature));
+    }
 
-        while (attempt < maxRetries) {
+    /**
+     * Thử lại với exponential backoff + jitter (thay cho sleep cố định 2s).
+     * Mỗi lần thử lấy key có nhiều headroom nhất từ GeminiKeyScheduler, lỗi 400 (prompt sai) thì không thử lại vì đổi key cũng vô ích.
+     * Lỗi 429 không cần backoff: key đó đã vào cooldown, lần sau scheduler tự chọn key khác.
+     */
+    private String executeWithRetry(String label, GeminiCall call) {
+        int attempt = 0;
+        while (true) {
+            GeminiKeyScheduler.KeyLease lease = keyScheduler.acquire();
             try {
-                return callGeminiApi(promptText, temperature);
+                String result = call.execute(lease.key());
+                keyScheduler.onSuccess(lease);
+                return result;
             } catch (Exception e) {
+                keyScheduler.onFailure(lease, e);
                 attempt++;
-                log.warn("Lần thử {} thất bại: {}. Đang thử key khác...", attempt, e.getMessage());
-                try {
-                Thread.sleep(2000); // Đợi 2000ms (2 giây) để quota hạ nhiệt
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-            }
-                if (attempt >= maxRetries) {
-                    throw new RuntimeException("Đã thử " + maxRetries + " key khác nhau nhưng vẫn thất bại. Lỗi: " + e.getMessage());
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    log.error("Gọi Gemini {} thất bại sau {} lần thử: {}", label, attempt, e.getMessage());
+                    throw new RuntimeException("Đã thử " + attempt + " lần gọi Gemini " + label + " nhưng vẫn thất bại. Lỗi: " + e.getMessage());
                 }
+                sleepBeforeRetry(label, attempt, e);
             }
         }
-        return null;
     }
 
-    private String callGeminiApi(String promptText, float temperature) throws Exception {
-        // 1. Lấy Key
-        String currentKey = getRotatedKey();
-        
-        // 2. Tạo Body Request
+    private void sleepBeforeRetry(String label, int attempt, Exception e) {
+        long delay = isRateLimited(e) ? 0 : computeBackoff(attempt);
+        log.warn("Lần thử {} {} thất bại: {}. Đợi {}ms rồi thử key khác...", label, attempt, e.getMessage(), delay);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bị ngắt khi chờ gọi lại Gemini", ie);
+        }
+    }
+
+    // Jitter: random trong [cap/2, cap] với cap = min(maxDelay, base * 2^(attempt-1)) để các request không dồn cùng lúc
+    private long computeBackoff(int attempt) {
+        long exp = baseBackoffMs << Math.min(attempt - 1, 16);
+        long cap = Math.min(maxBackoffMs, exp);
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    private boolean isRetryable(Exception e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode() != HttpStatus.BAD_REQUEST;
+        }
+        return true;
+    }
+
+    private boolean isRateLimited(Exception e) {
+        return e instanceof HttpClientErrorException clientError
+                && clientError.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    @FunctionalInterface
+    private interface GeminiCall {
+        String execute(String apiKey) throws Exception;
+    }
+
+    private HttpEntity<Map<String, Object>> buildTextRequest(String promptText, float temperature) {
         Map<String, Object> contentPart = new HashMap<>();
         contentPart.put("text", promptText);
         
@@ -92,17 +150,22 @@ public class GeminiApiClient {
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        return new HttpEntity<>(requestBody, headers);
+    }
 
-        // 3. Gọi API
-        String url = GEMINI_API_URL + currentKey;
-        ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
+    private String callGeminiApi(String currentKey, String promptText, float temperature) throws Exception {
+        // 1. Tạo Body Request
+        HttpEntity<Map<String, Object>> entity = buildTextRequest(promptText, temperature);
+
+        // 2. Gọi API
+        String url = generateUrl(currentKey);
+        ResponseEntity<String> response = geminiRestTemplate.postForEntity(url, entity, String.class);
         
         if (response.getBody() == null || response.getBody().isEmpty()) {
             throw new RuntimeException("Gemini API trả về response rỗng");
         }
 
-        // 4. Parse JSON
+        // 3. Parse JSON
         var jsonNode = objectMapper.readTree(response.getBody());
         
         if (jsonNode.path("candidates").isEmpty() || !jsonNode.path("candidates").has(0)) {
@@ -122,77 +185,129 @@ public class GeminiApiClient {
     }
 
     /**
-     * [MỚI] Gửi ảnh + Prompt lên Gemini (Multimodal)
+     * [MỚI] Streaming: gọi streamGenerateContent (SSE) và đẩy từng đoạn text về onChunk ngay khi nhận được.
+     * Chỉ thử lại key khác nếu lỗi xảy ra TRƯỚC khi có chunk đầu tiên (đã gửi cho client thì không gửi lại được).
+     * @return Toàn bộ text đã nhận
      */
-    public String generateContentWithImage(String promptText, byte[] imageBytes, String mimeType, float temperature) {
-        try {
-           int maxRetries = 3; // Thêm số lần thử lại
-    int attempt = 0;
-
-    while (attempt < maxRetries) {
-        try {
-            return callGeminiApiWithImage(promptText, imageBytes, mimeType, temperature);
-        } catch (Exception e) {
-            attempt++;
-            log.warn("Lần thử Vision {} thất bại: {}. Đang thử key khác...", attempt, e.getMessage());
-            
-            // Nếu đã thử hết số lần cho phép thì mới ném lỗi
-            if (attempt >= maxRetries) {
-                log.error("Lỗi gọi Gemini Vision sau {} lần thử: ", maxRetries, e);
-                throw new RuntimeException("Gemini Vision Error: " + e.getMessage());
+    public String streamContent(String promptText, float temperature, Consumer<String> onChunk) {
+        int attempt = 0;
+        while (true) {
+            GeminiKeyScheduler.KeyLease lease = keyScheduler.acquire();
+            StringBuilder fullText = new StringBuilder();
+            try {
+                callGeminiStream(lease.key(), promptText, temperature, onChunk, fullText);
+                keyScheduler.onSuccess(lease);
+                return fullText.toString();
+            } catch (ChunkConsumerException e) {
+                // Client ngắt kết nối giữa chừng -> không phải lỗi của key
+                keyScheduler.onSuccess(lease);
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            } catch (Exception e) {
+                keyScheduler.onFailure(lease, e);
+                attempt++;
+                if (fullText.length() > 0 || attempt >= maxRetries || !isRetryable(e)) {
+                    log.error("Gọi Gemini Stream thất bại sau {} lần thử: {}", attempt, e.getMessage());
+                    throw new RuntimeException("Gemini Stream Error: " + e.getMessage());
+                }
+                sleepBeforeRetry("Stream", attempt, e);
             }
         }
     }
-    return null;
-        } catch (Exception e) {
-            log.error("Lỗi gọi Gemini Vision: ", e);
-            throw new RuntimeException("Gemini Vision Error: " + e.getMessage());
+
+    private void callGeminiStream(String currentKey, String promptText, float temperature,
+                                  Consumer<String> onChunk, StringBuilder fullText) {
+        HttpEntity<Map<String, Object>> entity = buildTextRequest(promptText, temperature);
+        RequestCallback requestCallback = geminiRestTemplate.httpEntityCallback(entity);
+
+        // Đọc từng dòng "data: {...}" của SSE, mỗi dòng là 1 GenerateContentResponse
+        geminiRestTemplate.execute(streamUrl(currentKey), HttpMethod.POST, requestCallback, response -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("data:")) continue;
+                    var jsonNode = objectMapper.readTree(line.substring(5).trim());
+                    var candidate = jsonNode.path("candidates").path(0);
+                    for (var part : candidate.path("content").path("parts")) {
+                        String chunk = part.path("text").asText("");
+                        if (chunk.isEmpty()) continue;
+                        fullText.append(chunk);
+                        try {
+                            onChunk.accept(chunk);
+                        } catch (RuntimeException e) {
+                            throw new ChunkConsumerException(e);
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+
+        if (fullText.length() == 0) {
+            throw new RuntimeException("Gemini không trả về nội dung (có thể do safety settings)");
         }
     }
 
-    private String callGeminiApiWithImage(String promptText, byte[] imageBytes, String mimeType, float temperature) throws Exception {
-        String currentKey = getRotatedKey();
+    // Lỗi phát sinh từ phía nhận chunk (VD: client đóng kết nối SSE), phân biệt với lỗi từ Gemini
+    private static class ChunkConsumerException extends RuntimeException {
+        ChunkConsumerException(RuntimeException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
 
-        // 1. Tạo phần Text
-        Map<String, Object> textPart = new HashMap<>();
-        textPart.put("text", promptText);
+    /**
+     * [MỚI] Gửi ảnh + Prompt lên Gemini (Multimodal)
+     */
+    public String generateContentWithImage(String promptText, byte[] imageBytes, String mimeType, float temperature) {
+        return executeWithRetry("Vision", key -> callGeminiApiWithImage(key, promptText, imageBytes, mimeType, temperature));
+    }
 
-        // 2. Tạo phần Ảnh (Inline Data)
-        Map<String, Object> inlineData = new HashMap<>();
-        inlineData.put("mime_type", mimeType);
-        inlineData.put("data", Base64.getEncoder().encodeToString(imageBytes));
+    private String callGeminiApiWithImage(String currentKey, String promptText, byte[] imageBytes, String mimeType, float temperature) throws Exception {
+        // Ghi body trực tiếp vào kết nối: Base64 được mã hóa dần trong lúc gửi,
+        // không tạo thêm chuỗi Base64 và bản sao JSON của cả ảnh trong heap
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (request instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(out -> writeImageRequestBody(out, promptText, imageBytes, mimeType, temperature));
+            } else {
+                writeImageRequestBody(request.getBody(), promptText, imageBytes, mimeType, temperature);
+            }
+        };
 
-        Map<String, Object> imagePart = new HashMap<>();
-        imagePart.put("inline_data", inlineData);
+        String body = geminiRestTemplate.execute(generateUrl(currentKey), HttpMethod.POST, requestCallback,
+                response -> new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
 
-        // 3. Gộp Text và Ảnh vào parts
-        Map<String, Object> parts = new HashMap<>();
-        parts.put("parts", List.of(textPart, imagePart)); // Gửi cả 2
+        // Parse kết quả (tương tự hàm cũ)
+        if (body == null || body.isEmpty()) throw new RuntimeException("Empty Response");
+        var jsonNode = objectMapper.readTree(body);
+        var candidate = jsonNode.path("candidates").path(0);
 
-        // 4. Body request
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("contents", List.of(parts));
+        if (!candidate.has("content")) throw new RuntimeException("No content from Gemini");
 
-        // Config nhiệt độ
-        Map<String, Object> generationConfig = new HashMap<>();
-        generationConfig.put("temperature", temperature);
-        requestBody.put("generationConfig", generationConfig);
+        return candidate.path("content").path("parts").path(0).path("text").asText().trim();
+    }
 
-        // 5. Gọi API
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+    // {"contents":[{"parts":[{"text":...},{"inline_data":{"mime_type":...,"data":"<base64>"}}]}],"generationConfig":{...}}
+    private void writeImageRequestBody(OutputStream out, String promptText, byte[] imageBytes, String mimeType, float temperature) throws IOException {
+        String prefix = "{\"contents\":[{\"parts\":[{\"text\":" + objectMapper.writeValueAsString(promptText)
+                + "},{\"inline_data\":{\"mime_type\":" + objectMapper.writeValueAsString(mimeType) + ",\"data\":\"";
+        String suffix = "\"}}]}],\"generationConfig\":{\"temperature\":" + temperature + "}}";
 
-        String url = GEMINI_API_URL + currentKey;
-        ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
+        out.write(prefix.getBytes(StandardCharsets.UTF_8));
+        // Không đóng stream gốc khi đóng bộ mã hóa Base64 (close() cần thiết để ghi phần padding cuối)
+        try (OutputStream base64 = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
 
-        // 6. Parse kết quả (tương tự hàm cũ)
-        if (response.getBody() == null) throw new RuntimeException("Empty Response");
-        var jsonNode = objectMapper.readTree(response.getBody());
-        var candidate = jsonNode.path("candidates").get(0);
-        
-        if (!candidate.has("content")) throw new RuntimeException("No content from Gemini");
-        
-        return candidate.path("content").path("parts").get(0).path("text").asText().trim();
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        })) {
+            base64.write(imageBytes);
+        }
+        out.write(suffix.getBytes(StandardCharsets.UTF_8));
+        out.flush();
     }
 }
\ No newline at end of file
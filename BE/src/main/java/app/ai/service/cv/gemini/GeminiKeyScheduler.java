@@ -0,0 +1,274 @@
+package app.ai.service.cv.gemini;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bộ điều phối API Key cho Gemini (thay cho round-robin mù).
+ * - Mỗi key có 1 token bucket theo RPM, mỗi request lấy 1 token.
+ * - Key bị 429 / hết quota sẽ vào trạng thái cooldown theo Retry-After (hoặc retryDelay trong body).
+ * - Luôn chọn key còn nhiều "headroom" nhất: còn token, không cooldown, health score cao.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class GeminiKeyScheduler {
+
+    private static final Pattern RETRY_DELAY_PATTERN = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+)(?:\\.\\d+)?s\"");
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("#{'${gemini.api.keys}'.split(',')}")
+    private List<String> apiKeys;
+
+    @Value("${gemini.keys.requests-per-minute:15}")
+    private double requestsPerMinute;
+
+    @Value("${gemini.keys.default-cooldown-seconds:60}")
+    private long defaultCooldownSeconds;
+
+    // Key bị từ chối (401/403) thường là key sai/bị thu hồi -> nghỉ lâu
+    @Value("${gemini.keys.invalid-key-cooldown-seconds:600}")
+    private long invalidKeyCooldownSeconds;
+
+    @Value("${gemini.keys.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    private final List<KeyState> keys = new ArrayList<>();
+
+    @PostConstruct
+    void init() {
+        // Tốc độ nạp token chia theo RPM -> RPM <= 0 thì key không bao giờ có token (chờ vô hạn)
+        if (!(requestsPerMinute > 0)) {
+            throw new IllegalStateException("gemini.keys.requests-per-minute phải > 0, đang là " + requestsPerMinute);
+        }
+        if (apiKeys == null) return;
+        for (String raw : apiKeys) {
+            String key = raw.trim();
+            if (key.isEmpty()) continue;
+            KeyState state = new KeyState(key, keys.size() + 1, requestsPerMinute);
+            keys.add(state);
+            registerMetrics(state);
+        }
+        log.info("Đã nạp {} Gemini API key (RPM mỗi key: {})", keys.size(), requestsPerMinute);
+    }
+
+    /**
+     * Lấy key tốt nhất hiện tại. Nếu tất cả đều hết token/cooldown thì chờ tối đa maxWaitMs,
+     * quá thời gian đó thì ném lỗi thay vì gọi vào key đã biết là hết quota.
+     */
+    public KeyLease acquire() {
+        if (keys.isEmpty()) {
+            throw new RuntimeException("Không tìm thấy API Key nào trong cấu hình!");
+        }
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        while (true) {
+            long waitMs;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                KeyState best = null;
+                for (KeyState state : keys) {
+                    state.refill(now);
+                    if (!state.isAvailable(now)) continue;
+                    if (best == null || state.headroom() > best.headroom()) best = state;
+                }
+                if (best != null) {
+                    best.tokens -= 1;
+                    best.inFlight++;
+                    log.info("Đang sử dụng Key thứ {}/{} : ...{} (health={})",
+                            best.index, keys.size(), best.maskedKey(), String.format("%.2f", best.health));
+                    return new KeyLease(best);
+                }
+                waitMs = keys.stream().mapToLong(s -> s.millisUntilAvailable(now)).min().orElse(maxWaitMs);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (waitMs > remaining) {
+                throw new RuntimeException("Tất cả Gemini API key đang hết quota, vui lòng thử lại sau " + (waitMs / 1000 + 1) + "s");
+            }
+            try {
+                Thread.sleep(Math.max(waitMs, 10));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Bị ngắt khi chờ Gemini API key", ie);
+            }
+        }
+    }
+
+    public synchronized void onSuccess(KeyLease lease) {
+        KeyState state = lease.state;
+        state.inFlight--;
+        state.consecutiveFailures = 0;
+        state.health = state.health * 0.8 + 0.2;
+        state.successCounter.increment();
+    }
+
+    /**
+     * Ghi nhận lỗi: 429 -> cooldown theo Retry-After, 401/403 -> cooldown dài, 5xx/timeout -> chỉ giảm health.
+     * Lỗi do chính request (400, 404, response bị chặn/parse lỗi...) không liên quan tới key -> chỉ trả lease, không phạt key.
+     */
+    public synchronized void onFailure(KeyLease lease, Exception e) {
+        KeyState state = lease.state;
+        state.inFlight--;
+        if (!isKeyFault(e)) {
+            state.requestErrorCounter.increment();
+            return;
+        }
+        state.consecutiveFailures++;
+        state.health = state.health * 0.8;
+        long now = System.currentTimeMillis();
+
+        if (e instanceof HttpStatusCodeException httpError) {
+            int status = httpError.getStatusCode().value();
+            if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                long cooldownMs = parseRetryAfterMs(httpError);
+                state.cooldownUntil = now + cooldownMs;
+                state.tokens = 0;
+                state.rateLimitedCounter.increment();
+                log.warn("Key ...{} bị giới hạn quota, tạm nghỉ {}s", state.maskedKey(), cooldownMs / 1000);
+                return;
+            }
+            if (status == HttpStatus.UNAUTHORIZED.value() || status == HttpStatus.FORBIDDEN.value()) {
+                state.cooldownUntil = now + invalidKeyCooldownSeconds * 1000;
+                state.failureCounter.increment();
+                log.error("Key ...{} bị từ chối ({}), tạm nghỉ {}s", state.maskedKey(), status, invalidKeyCooldownSeconds);
+                return;
+            }
+        }
+        state.failureCounter.increment();
+        // Lỗi liên tiếp (5xx, timeout) -> nghỉ ngắn tăng dần để nhường key khác
+        if (state.consecutiveFailures >= 3) {
+            state.cooldownUntil = now + Math.min(defaultCooldownSeconds * 1000, 5000L * state.consecutiveFailures);
+        }
+    }
+
+    // Chỉ các lỗi phản ánh tình trạng key / phía Gemini: 429, 401/403, 5xx, timeout / lỗi mạng
+    private static boolean isKeyFault(Exception e) {
+        if (e instanceof HttpStatusCodeException httpError) {
+            int status = httpError.getStatusCode().value();
+            return status == HttpStatus.TOO_MANY_REQUESTS.value()
+                    || status == HttpStatus.UNAUTHORIZED.value()
+                    || status == HttpStatus.FORBIDDEN.value()
+                    || httpError.getStatusCode().is5xxServerError();
+        }
+        return e instanceof ResourceAccessException || e instanceof IOException;
+    }
+
+    private long parseRetryAfterMs(HttpStatusCodeException e) {
+        HttpHeaders headers = e.getResponseHeaders();
+        if (headers != null) {
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter != null) {
+                try {
+                    return Long.parseLong(retryAfter.trim()) * 1000;
+                } catch (NumberFormatException ignored) {
+                    // Retry-After dạng HTTP-date -> dùng mặc định
+                }
+            }
+        }
+        Matcher m = RETRY_DELAY_PATTERN.matcher(e.getResponseBodyAsString());
+        if (m.find()) {
+            return Long.parseLong(m.group(1)) * 1000;
+        }
+        return defaultCooldownSeconds * 1000;
+    }
+
+    private void registerMetrics(KeyState state) {
+        String tag = "key-" + state.index;
+        Gauge.builder("gemini.key.tokens", state, s -> s.tokens).tag("key", tag).register(meterRegistry);
+        Gauge.builder("gemini.key.health", state, s -> s.health).tag("key", tag).register(meterRegistry);
+        Gauge.builder("gemini.key.in_flight", state, s -> s.inFlight).tag("key", tag).register(meterRegistry);
+        Gauge.builder("gemini.key.cooldown", state, s -> s.isCoolingDown(System.currentTimeMillis()) ? 1 : 0)
+                .tag("key", tag).register(meterRegistry);
+        state.successCounter = Counter.builder("gemini.key.requests").tag("key", tag).tag("outcome", "success").register(meterRegistry);
+        state.failureCounter = Counter.builder("gemini.key.requests").tag("key", tag).tag("outcome", "error").register(meterRegistry);
+        state.rateLimitedCounter = Counter.builder("gemini.key.requests").tag("key", tag).tag("outcome", "rate_limited").register(meterRegistry);
+        state.requestErrorCounter = Counter.builder("gemini.key.requests").tag("key", tag).tag("outcome", "request_error").register(meterRegistry);
+    }
+
+    /**
+     * Key đang được 1 request sử dụng. Phải gọi onSuccess/onFailure đúng 1 lần.
+     */
+    public static final class KeyLease {
+        private final KeyState state;
+
+        private KeyLease(KeyState state) {
+            this.state = state;
+        }
+
+        public String key() {
+            return state.key;
+        }
+    }
+
+    private static final class KeyState {
+        private final String key;
+        private final int index;
+        private final double capacity;
+        private final double refillPerMs;
+
+        private double tokens;
+        private long lastRefill;
+        private long cooldownUntil;
+        private int inFlight;
+        private int consecutiveFailures;
+        private double health = 1.0;
+
+        private Counter successCounter;
+        private Counter failureCounter;
+        private Counter rateLimitedCounter;
+        private Counter requestErrorCounter;
+
+        private KeyState(String key, int index, double requestsPerMinute) {
+            this.key = key;
+            this.index = index;
+            this.capacity = Math.max(1, requestsPerMinute);
+            this.refillPerMs = requestsPerMinute / 60_000.0;
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMs);
+            lastRefill = now;
+        }
+
+        private boolean isCoolingDown(long now) {
+            return now < cooldownUntil;
+        }
+
+        private boolean isAvailable(long now) {
+            return !isCoolingDown(now) && tokens >= 1;
+        }
+
+        private long millisUntilAvailable(long now) {
+            long cooldownWait = Math.max(0, cooldownUntil - now);
+            long tokenWait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / refillPerMs);
+            return Math.max(cooldownWait, tokenWait);
+        }
+
+        // Headroom = tỉ lệ token còn lại * health, trừ nhẹ theo số request đang chạy
+        private double headroom() {
+            return (tokens / capacity) * health - inFlight * 0.01;
+        }
+
+        private String maskedKey() {
+            return key.substring(Math.max(0, key.length() - 4));
+        }
+    }
+}
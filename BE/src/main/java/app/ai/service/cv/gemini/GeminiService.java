@@ -1,16 +1,28 @@
 package app.ai.service.cv.gemini;
 
+import app.ai.service.cv.gemini.cache.AiResponseCache;
+import app.ai.service.cv.gemini.cache.SingleFlight;
 import app.ai.service.cv.gemini.dto.GeminiResponse;
 import app.ai.service.cv.gemini.dto.MatchResult;
+import app.ai.service.cv.gemini.prompt.PromptCompactor;
+import app.ai.service.cv.gemini.resilience.AiCircuitBreaker;
+import app.exception.AiUnavailableException;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -19,11 +31,21 @@ public class GeminiService {
 
     private final ObjectMapper objectMapper;
     private final GeminiApiClient geminiApiClient;
+    private final AiResponseCache responseCache;
+    private final SingleFlight singleFlight;
+    private final AiCircuitBreaker circuitBreaker;
+    private final PromptCompactor promptCompactor;
 
     // 👇 ĐỊNH NGHĨA CÁC MỨC NHIỆT ĐỘ CHUẨN
     private static final float TEMP_STRICT = 0.0f;     // Nghiêm túc tuyệt đối (JSON, Chấm điểm)
     private static final float TEMP_ANALYTICAL = 0.2f; // Phân tích logic (So khớp CV)
     private static final float TEMP_BALANCED = 0.5f;   // Cân bằng (Phỏng vấn chuyên nghiệp)
+
+    // Ngân sách token mặc định cho từng input (ghi đè bằng gemini.prompt.budget.<feature>.<input>)
+    private static final int CV_PARSE_BUDGET = 6000;
+    private static final int CV_MATCH_BUDGET = 4000;
+    private static final int JD_BUDGET = 2000;
+    private static final int REQUIREMENTS_BUDGET = 1500;
     /**
      * CHỨC NĂNG 1: Phân tích CV (Raw Text -> JSON Profile)
      */
@@ -31,6 +53,7 @@ public class GeminiService {
         // [DEBUG LOG 1] Kiểm tra text đầu vào
         log.info("=== START PARSING CV ===");
         log.info("Raw Text Length: {}", rawText != null ? rawText.length() : 0);
+        String cvText = promptCompactor.compact(AiFeature.PARSE_CV, "cv", rawText, CV_PARSE_BUDGET);
 
         String prompt = """
               Bạn là một trợ lý nhân sự chuyên nghiệp (HR Assistant).
@@ -63,9 +86,9 @@ public class GeminiService {
                 ],
                 "aboutMe": "Trích xuất đoạn giới thiệu/Summary/About Me/Profile/Objective. Nếu không có mục riêng, hãy tự tóm tắt ngắn gọn năng lực ứng viên."
               }
-              """.formatted(rawText);
+              """.formatted(cvText);
 
-        return parseResponse(prompt, GeminiResponse.class, TEMP_STRICT);
+        return parseResponse(AiFeature.PARSE_CV, prompt, GeminiResponse.class, TEMP_STRICT, cvText);
     };
 
 
@@ -73,7 +96,9 @@ public class GeminiService {
     /**
      * CHỨC NĂNG 2: Tách Skill từ Job Description
      */
-    public List<String> extractSkillsFromJob(String jobDescription, String jobRequirements) {
+    public List<String> extractSkillsFromJob(String rawJobDescription, String rawJobRequirements) {
+       String jobDescription = promptCompactor.compact(AiFeature.EXTRACT_JOB_SKILLS, "jd", rawJobDescription, JD_BUDGET);
+       String jobRequirements = promptCompactor.compact(AiFeature.EXTRACT_JOB_SKILLS, "requirements", rawJobRequirements, REQUIREMENTS_BUDGET);
        String prompt = """
                 You are an expert Job Analyst. Extract technical and soft skills from the Job Description below.
                 Return ONLY a JSON Array of strings (e.g., ["Java", "Teamwork", "SQL"]).
@@ -85,8 +110,18 @@ public class GeminiService {
                 """.formatted(jobDescription, jobRequirements);
 
         try {
-            String jsonString = geminiApiClient.generateContent(prompt, TEMP_STRICT);
-           return objectMapper.readValue(jsonString, new TypeReference<List<String>>(){});
+            String cacheKey = responseCache.key(AiFeature.EXTRACT_JOB_SKILLS, TEMP_STRICT, jobDescription, jobRequirements);
+            TypeReference<List<String>> listType = new TypeReference<>(){};
+            Optional<String> cached = responseCache.get(AiFeature.EXTRACT_JOB_SKILLS, cacheKey);
+            if (cached.isEmpty()) promptCompactor.recordPrompt(AiFeature.EXTRACT_JOB_SKILLS, prompt);
+            String jsonString = cached.isPresent() ? cached.get()
+                    : generateOnce(AiFeature.EXTRACT_JOB_SKILLS, cacheKey,
+                        () -> geminiApiClient.generateContent(prompt, TEMP_STRICT),
+                        raw -> objectMapper.readValue(raw, listType));
+            return objectMapper.readValue(jsonString, listType);
+        } catch (AiUnavailableException e) {
+            log.warn("AI không khả dụng, bỏ qua bước tách skill từ Job: {}", e.getMessage());
+            return Collections.emptyList();
         } catch (Exception e) {
             log.error("Lỗi tách skill từ Job: ", e);
             return Collections.emptyList();
@@ -96,7 +131,10 @@ public class GeminiService {
     /**
      * CHỨC NĂNG 3: Chấm điểm & Gợi ý lộ trình (All-in-One)
      */
-    public MatchResult matchCVWithJob(String cvText, String jobDescription, String jobRequirements) {
+    public MatchResult matchCVWithJob(String rawCvText, String rawJobDescription, String rawJobRequirements) {
+       String cvText = promptCompactor.compact(AiFeature.MATCH_CV_JOB, "cv", rawCvText, CV_MATCH_BUDGET);
+       String jobDescription = promptCompactor.compact(AiFeature.MATCH_CV_JOB, "jd", rawJobDescription, JD_BUDGET);
+       String jobRequirements = promptCompactor.compact(AiFeature.MATCH_CV_JOB, "requirements", rawJobRequirements, REQUIREMENTS_BUDGET);
        String prompt = """
                 Bạn là Chuyên gia Tuyển dụng (HR Tech). Hãy phân tích CV so với JD và phân loại kỹ năng vào 5 NHÓM riêng biệt.
                 --- CẢNH BÁO QUAN TRỌNG ---
@@ -158,15 +196,146 @@ public class GeminiService {
                 }
                 """.formatted(jobDescription, jobRequirements, cvText);
 
-       return parseResponse(prompt, MatchResult.class,TEMP_ANALYTICAL);
+       return parseResponse(AiFeature.MATCH_CV_JOB, prompt, MatchResult.class, TEMP_ANALYTICAL, cvText, jobDescription, jobRequirements);
+    }
+
+    /**
+     * CHỨC NĂNG 3b: Chấm điểm NHIỀU ứng viên so với CÙNG 1 JD trong 1 prompt (Bulk Screening).
+     * JD chỉ gửi 1 lần cho cả nhóm, output rút gọn (không learningPath/careerAdvice) để tiết kiệm token.
+     * @param candidates Map candidateId -> dữ liệu ứng viên
+     * @return Kết quả hợp lệ theo candidateId. Ứng viên bị thiếu/sai trong output sẽ không có trong Map,
+     *         caller tự chấm lẻ bằng matchCVWithJob.
+     */
+    public Map<String, MatchResult> matchCandidatesBatch(Map<String, String> candidates, String rawJobDescription, String rawJobRequirements) {
+        String jobDescription = promptCompactor.compact(AiFeature.MATCH_CV_JOB_BATCH, "jd", rawJobDescription, JD_BUDGET);
+        String jobRequirements = promptCompactor.compact(AiFeature.MATCH_CV_JOB_BATCH, "requirements", rawJobRequirements, REQUIREMENTS_BUDGET);
+        StringBuilder candidateBlocks = new StringBuilder();
+        candidates.forEach((id, data) -> candidateBlocks
+                .append("### candidateId: ").append(id).append('\n')
+                .append(data).append("\n\n"));
+
+        String prompt = """
+                Bạn là Chuyên gia Tuyển dụng (HR Tech). Hãy chấm điểm TỪNG ứng viên dưới đây so với CÙNG MỘT JD.
+                --- CẢNH BÁO QUAN TRỌNG ---
+                  CHỈ TRẢ VỀ DUY NHẤT MỘT MẢNG JSON HỢP LỆ, KHÔNG CHÀO HỎI, KHÔNG GIẢI THÍCH.
+                  Mảng phải có đúng %d phần tử, mỗi phần tử ứng với 1 ứng viên, giữ nguyên candidateId.
+                  Chấm từng ứng viên ĐỘC LẬP, không so sánh các ứng viên với nhau.
+                --- LOGIC ---
+                - matchedSkillsList: kỹ năng Job YÊU CẦU và ứng viên ĐÃ CÓ.
+                - missingSkillsList: kỹ năng Job YÊU CẦU nhưng ứng viên KHÔNG CÓ.
+                - evaluation: nhận xét ngắn gọn (tối đa 2 câu, tiếng Việt).
+
+                --- DỮ LIỆU ĐẦU VÀO ---
+                [JOB]
+                %s
+                %s
+
+                [CANDIDATES]
+                %s
+                --- OUTPUT JSON ---
+                [
+                  {
+                    "candidateId": "id như trong đầu vào",
+                    "matchPercentage": (0-100),
+                    "matchedSkillsCount": (int),
+                    "matchedSkillsList": ["A", "B"],
+                    "missingSkillsCount": (int),
+                    "missingSkillsList": ["C"],
+                    "evaluation": "Nhận xét tiếng Việt..."
+                  }
+                ]
+                """.formatted(candidates.size(), jobDescription, jobRequirements, candidateBlocks);
+
+        promptCompactor.recordPrompt(AiFeature.MATCH_CV_JOB_BATCH, prompt);
+        String raw = circuitBreaker.execute(AiFeature.MATCH_CV_JOB_BATCH,
+                () -> geminiApiClient.generateContent(prompt, TEMP_ANALYTICAL));
+        return parseBatchResults(raw, candidates.keySet());
+    }
+
+    private Map<String, MatchResult> parseBatchResults(String raw, Set<String> expectedIds) {
+        Map<String, MatchResult> results = new LinkedHashMap<>();
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(raw);
+        } catch (Exception e) {
+            log.warn("Output batch không phải JSON hợp lệ, chuyển sang chấm lẻ: {}", e.getMessage());
+            return results;
+        }
+        if (root == null || !root.isArray()) {
+            log.warn("Output batch không phải mảng JSON, chuyển sang chấm lẻ");
+            return results;
+        }
+        for (JsonNode item : root) {
+            String id = item.path("candidateId").asText("");
+            // Bỏ qua id lạ hoặc trùng (AI "bịa" thêm ứng viên)
+            if (!expectedIds.contains(id) || results.containsKey(id)) continue;
+            try {
+                MatchResult result = objectMapper.treeToValue(item, MatchResult.class);
+                if (!isValidBatchItem(item, result)) continue;
+                result.setMatchedSkillsCount(result.getMatchedSkillsList().size());
+                result.setMissingSkillsCount(result.getMissingSkillsList().size());
+                result.setTotalRequiredSkills(result.getMatchedSkillsCount() + result.getMissingSkillsCount());
+                results.put(id, result);
+            } catch (Exception e) {
+                log.warn("Phần tử batch của ứng viên {} không hợp lệ: {}", id, e.getMessage());
+            }
+        }
+        if (results.size() < expectedIds.size()) {
+            log.warn("Batch chỉ trả về {}/{} kết quả hợp lệ", results.size(), expectedIds.size());
+        }
+        return results;
+    }
+
+    private boolean isValidBatchItem(JsonNode item, MatchResult result) {
+        int score = item.path("matchPercentage").asInt(-1);
+        return item.path("matchPercentage").isNumber() && score >= 0 && score <= 100
+                && result.getMatchedSkillsList() != null
+                && result.getMissingSkillsList() != null
+                && result.getEvaluation() != null && !result.getEvaluation().isBlank();
+    }
+
+    /**
+     * Ước lượng số token của đoạn text, dùng để chia batch theo ngân sách.
+     */
+    public int estimateTokens(String text) {
+        return promptCompactor.estimateTokens(text);
     }
 
     /**
      * CHỨC NĂNG: Chat thông thường (Không lưu DB)
      */
     public String chatWithAI(String userMessage) {
+        String prompt = buildGeneralChatPrompt(userMessage);
+
+        String cacheKey = responseCache.key(AiFeature.CHAT, TEMP_BALANCED, userMessage);
+        Optional<String> cached = responseCache.get(AiFeature.CHAT, cacheKey);
+        if (cached.isPresent()) return cached.get();
+
+        return generateOnce(AiFeature.CHAT, cacheKey, () -> geminiApiClient.generateContent(prompt, TEMP_BALANCED), raw -> {});
+    }
+
+    /**
+     * [MỚI] Chat thông thường dạng streaming: đẩy từng đoạn câu trả lời về onToken ngay khi Gemini sinh ra.
+     * Nếu câu hỏi đã có trong cache thì trả 1 lần toàn bộ câu trả lời.
+     */
+    public String streamChatWithAI(String userMessage, Consumer<String> onToken) {
+        String cacheKey = responseCache.key(AiFeature.CHAT, TEMP_BALANCED, userMessage);
+        Optional<String> cached = responseCache.get(AiFeature.CHAT, cacheKey);
+        if (cached.isPresent()) {
+            onToken.accept(cached.get());
+            return cached.get();
+        }
+
+        String prompt = buildGeneralChatPrompt(userMessage);
+        String reply = circuitBreaker.executeStreaming(AiFeature.CHAT,
+                () -> geminiApiClient.streamContent(prompt, TEMP_BALANCED, onToken));
+        responseCache.put(AiFeature.CHAT, cacheKey, reply);
+        return reply;
+    }
+
+    private String buildGeneralChatPrompt(String userMessage) {
         // Prompt định hình tính cách cho AI
-        String prompt = """
+        return """
                 Bạn là một trợ lý ảo AI thông minh và hữu ích.
                 Nhiệm vụ của bạn là trả lời câu hỏi của người dùng một cách ngắn gọn, chính xác.
                 
@@ -178,26 +347,65 @@ public class GeminiService {
                 CÂU HỎI CỦA NGƯỜI DÙNG:
                 %s
                 """.formatted(userMessage);
-
-        
-        return callAiChat(prompt);
     }
 
     public String callAiChat(String prompt) {
-        return geminiApiClient.generateContent(prompt, TEMP_BALANCED);
+        return circuitBreaker.execute(AiFeature.INTERVIEW, () -> geminiApiClient.generateContent(prompt, TEMP_BALANCED));
+    }
+
+    public String streamAiChat(String prompt, Consumer<String> onToken) {
+        return circuitBreaker.executeStreaming(AiFeature.INTERVIEW, () -> geminiApiClient.streamContent(prompt, TEMP_BALANCED, onToken));
     }
 
     // --- HÀM HELPER ---
-   private <T> T parseResponse(String prompt, Class<T> responseType, float temperature) {
+   private <T> T parseResponse(AiFeature feature, String prompt, Class<T> responseType, float temperature, String... cacheInputs) {
+        String cacheKey = responseCache.key(feature, temperature, cacheInputs);
+        Optional<String> cached = responseCache.get(feature, cacheKey);
+        if (cached.isPresent()) {
+            try {
+                return objectMapper.readValue(cached.get(), responseType);
+            } catch (Exception e) {
+                log.warn("Cache AI ({}) không parse được, gọi lại Gemini.", feature.getId());
+            }
+        }
+        promptCompactor.recordPrompt(feature, prompt);
         try {
-            String jsonResponse = geminiApiClient.generateContent(prompt, temperature);
+            // Chỉ cache khi JSON hợp lệ
+            String jsonResponse = generateOnce(feature, cacheKey,
+                    () -> geminiApiClient.generateContent(prompt, temperature),
+                    raw -> objectMapper.readValue(raw, responseType));
             return objectMapper.readValue(jsonResponse, responseType);
+        } catch (AiUnavailableException e) {
+            // Để caller tự chọn phương án dự phòng
+            throw e;
         } catch (Exception e) {
             log.error("Lỗi parse dữ liệu AI: ", e);
             throw new RuntimeException("AI Error: " + e.getMessage());
         }
     }
 
+    /**
+     * Gọi Gemini cho 1 khóa cache. Các request trùng khóa đang chạy song song chỉ gọi mạng 1 lần và dùng chung kết quả.
+     * Lời gọi mạng đi qua circuit breaker của feature; kết quả chỉ được ghi cache khi validator không ném lỗi.
+     */
+    private String generateOnce(AiFeature feature, String cacheKey, Supplier<String> call, ResponseValidator validator) {
+        return singleFlight.execute(cacheKey, () -> {
+            String raw = circuitBreaker.execute(feature, call);
+            try {
+                validator.validate(raw);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            responseCache.put(feature, cacheKey, raw);
+            return raw;
+        });
+    }
+
+    @FunctionalInterface
+    private interface ResponseValidator {
+        void validate(String raw) throws Exception;
+    }
+
     /**
      * [MỚI] CHỨC NĂNG: OCR thông minh (Ảnh -> Text có cấu trúc)
      * Dùng để xử lý CV dạng ảnh (PNG, JPG)
@@ -215,6 +423,12 @@ public class GeminiService {
                 """;
         
         // Dùng nhiệt độ thấp để OCR chính xác nhất
-        return geminiApiClient.generateContentWithImage(prompt, imageBytes, mimeType, 0.1f);
+        float temperature = 0.1f;
+        String cacheKey = responseCache.key(AiFeature.OCR_IMAGE, temperature, imageBytes, mimeType);
+        Optional<String> cached = responseCache.get(AiFeature.OCR_IMAGE, cacheKey);
+        if (cached.isPresent()) return cached.get();
+
+        return generateOnce(AiFeature.OCR_IMAGE, cacheKey,
+                () -> geminiApiClient.generateContentWithImage(prompt, imageBytes, mimeType, temperature), raw -> {});
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package app.ai.service.cv.gemini.cache;
+
+import app.ai.models.AiResponseCacheEntry;
+import app.ai.repository.IAiResponseCacheRepository;
+import app.ai.service.cv.gemini.AiFeature;
+import app.ai.service.cv.gemini.GeminiApiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache kết quả Gemini theo nội dung (content-addressed).
+ * - Khóa = SHA-256(template id + version, model, nhiệt độ, input đã chuẩn hóa).
+ * - Tầng 1: LRU trong RAM (giới hạn số entry). Tầng 2 (tùy chọn): bảng ai_response_cache trong Postgres.
+ * - TTL riêng theo từng chức năng: gemini.cache.ttl-minutes.&lt;feature-id&gt; (0 = không cache).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AiResponseCache {
+
+    private final IAiResponseCacheRepository cacheRepository;
+    private final GeminiApiClient geminiApiClient;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    @Value("${gemini.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gemini.cache.memory.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${gemini.cache.persistent.enabled:false}")
+    private boolean persistentEnabled;
+
+    private final Map<AiFeature, Long> ttlMillis = new EnumMap<>(AiFeature.class);
+    private Map<String, CachedValue> memory;
+    private TransactionTemplate requiresNewTx;
+
+    @PostConstruct
+    void init() {
+        for (AiFeature feature : AiFeature.values()) {
+            long minutes = environment.getProperty("gemini.cache.ttl-minutes." + feature.getId(), Long.class, feature.getDefaultTtlMinutes());
+            ttlMillis.put(feature, minutes * 60_000);
+        }
+        // LinkedHashMap với accessOrder = true -> entry ít dùng nhất bị loại khi vượt maxEntries
+        memory = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        // Ghi/đọc cache DB trong transaction riêng để lỗi cache không làm rollback transaction nghiệp vụ
+        requiresNewTx = new TransactionTemplate(transactionManager);
+        requiresNewTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Gauge.builder("gemini.cache.memory.size", this, c -> c.memorySize()).register(meterRegistry);
+    }
+
+    public boolean isCacheable(AiFeature feature) {
+        return enabled && ttlMillis.getOrDefault(feature, 0L) > 0;
+    }
+
+    /**
+     * Tạo khóa cache từ các input dạng text.
+     */
+    public String key(AiFeature feature, float temperature, String... inputs) {
+        return key(feature, temperature, null, inputs);
+    }
+
+    /**
+     * Tạo khóa cache, có thêm dữ liệu nhị phân (ảnh OCR).
+     */
+    public String key(AiFeature feature, float temperature, byte[] binary, String... inputs) {
+        MessageDigest digest = sha256();
+        update(digest, feature.getId() + ":v" + feature.getTemplateVersion());
+        update(digest, geminiApiClient.getModel());
+        update(digest, Float.toString(temperature));
+        for (String input : inputs) {
+            update(digest, normalize(input));
+        }
+        if (binary != null) {
+            digest.update(binary);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public Optional<String> get(AiFeature feature, String key) {
+        if (!isCacheable(feature)) return Optional.empty();
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            CachedValue cached = memory.get(key);
+            if (cached != null) {
+                if (cached.expiresAt > now) {
+                    count(feature, "hit_memory");
+                    return Optional.of(cached.value);
+                }
+                memory.remove(key);
+            }
+        }
+
+        if (persistentEnabled) {
+            try {
+                Optional<AiResponseCacheEntry> entry = requiresNewTx.execute(status -> cacheRepository.findById(key));
+                if (entry != null && entry.isPresent() && entry.get().getExpiresAt().isAfter(LocalDateTime.now())) {
+                    // Giữ hạn đã lưu trong DB: nạp lên RAM không được kéo dài tuổi của entry
+                    // (TTL cấu hình vừa giảm thì lấy hạn sớm hơn)
+                    long persistedExpiry = entry.get().getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    putMemory(key, entry.get().getResponse(), Math.min(persistedExpiry, now + ttlMillis.get(feature)));
+                    count(feature, "hit_db");
+                    return Optional.of(entry.get().getResponse());
+                }
+            } catch (Exception e) {
+                log.warn("Lỗi đọc cache AI từ DB: {}", e.getMessage());
+            }
+        }
+
+        count(feature, "miss");
+        return Optional.empty();
+    }
+
+    /**
+     * Chỉ gọi sau khi kết quả AI đã được parse/validate thành công, tránh cache response hỏng.
+     */
+    public void put(AiFeature feature, String key, String value) {
+        if (!isCacheable(feature) || value == null || value.isBlank()) return;
+        long ttl = ttlMillis.get(feature);
+        putMemory(key, value, System.currentTimeMillis() + ttl);
+
+        if (persistentEnabled) {
+            try {
+                LocalDateTime now = LocalDateTime.now();
+                requiresNewTx.executeWithoutResult(status -> cacheRepository.save(AiResponseCacheEntry.builder()
+                        .cacheKey(key)
+                        .feature(feature.getId())
+                        .response(value)
+                        .createdAt(now)
+                        .expiresAt(now.plusNanos(ttl * 1_000_000))
+                        .build()));
+            } catch (Exception e) {
+                log.warn("Lỗi ghi cache AI xuống DB: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Dọn các bản ghi cache DB đã hết hạn mỗi giờ.
+     */
+    @Scheduled(fixedRate = 3600000)
+    public void cleanupExpired() {
+        if (!persistentEnabled) return;
+        try {
+            Integer deleted = requiresNewTx.execute(status -> cacheRepository.deleteExpired(LocalDateTime.now()));
+            if (deleted != null && deleted > 0) {
+                log.info("Đã xóa {} bản ghi cache AI hết hạn", deleted);
+            }
+        } catch (Exception e) {
+            log.error("Lỗi khi dọn dẹp cache AI: {}", e.getMessage());
+        }
+    }
+
+    private void putMemory(String key, String value, long expiresAt) {
+        synchronized (memory) {
+            memory.put(key, new CachedValue(value, expiresAt));
+        }
+    }
+
+    private int memorySize() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    private void count(AiFeature feature, String result) {
+        Counter.builder("gemini.cache.requests")
+                .tag("feature", feature.getId())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // Chuẩn hóa: bỏ khoảng trắng đầu/cuối và gộp mọi chuỗi khoảng trắng liên tiếp thành 1 dấu cách
+    private static String normalize(String input) {
+        if (input == null) return "";
+        StringBuilder sb = new StringBuilder(input.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) sb.append(' ');
+                sb.append(c);
+                pendingSpace = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        digest.update(part.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0); // Phân tách các phần để "ab"+"c" khác "a"+"bc"
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM không hỗ trợ SHA-256", e);
+        }
+    }
+
+    private record CachedValue(String value, long expiresAt) {
+    }
+}
@@ -0,0 +1,100 @@
+package app.ai.service.cv.gemini.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Gộp các request trùng khóa đang chạy song song (single-flight).
+ * Request đầu tiên (leader) thực thi, các request đến sau cùng khóa chỉ chờ và dùng chung kết quả.
+ * Nếu leader chạy trong transaction, khóa chỉ được giải phóng sau khi transaction kết thúc,
+ * để request đến sau thấy được dữ liệu leader đã lưu thay vì gọi AI lại.
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter coalescedCounter;
+    private final Counter waitTimeoutCounter;
+
+    // Thời gian tối đa request đến sau chờ leader, hết hạn thì báo lỗi thay vì treo luồng
+    @Value("${ai.singleflight.wait-timeout-ms:180000}")
+    private long waitTimeoutMs;
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.leaderCounter = Counter.builder("ai.singleflight.calls").tag("role", "leader").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("ai.singleflight.calls").tag("role", "coalesced").register(meterRegistry);
+        this.waitTimeoutCounter = Counter.builder("ai.singleflight.wait.timeouts").register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V execute(String key, Supplier<V> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            coalescedCounter.increment();
+            log.info("Gộp request trùng khóa {}, chờ kết quả từ request đang chạy", key);
+            return (V) await(key, existing);
+        }
+
+        leaderCounter.increment();
+        boolean completed = false;
+        try {
+            V value = loader.get();
+            future.complete(value);
+            completed = true;
+            releaseAfterTransaction(key, future);
+            return value;
+        } catch (Throwable e) {
+            // Bắt cả Error (OOM, StackOverflow...) để request đang chờ không bị treo
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Lỗi thì giải phóng ngay để request sau được thử lại
+            if (!completed) inFlight.remove(key, future);
+        }
+    }
+
+    private Object await(String key, CompletableFuture<Object> existing) {
+        try {
+            return existing.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            waitTimeoutCounter.increment();
+            throw new RuntimeException("Chờ kết quả request trùng khóa " + key + " quá " + waitTimeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bị ngắt khi chờ kết quả request trùng khóa " + key, e);
+        }
+    }
+
+    private void releaseAfterTransaction(String key, CompletableFuture<Object> future) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlight.remove(key, future);
+                }
+            });
+        } else {
+            inFlight.remove(key, future);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package app.ai.service.cv.gemini.prompt;
+
+import app.ai.service.cv.gemini.AiFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Thu gọn input trước khi ghép vào prompt Gemini, theo ngân sách token của từng chức năng.
+ * Các bước luôn cho cùng kết quả với cùng input (để cache theo nội dung vẫn trúng):
+ *  1. Gộp khoảng trắng trong dòng, bỏ dòng trống và dòng nhiễu (OCR: "|", "•••", "Page 1/3"...).
+ *  2. Bỏ dòng trùng lặp (header/footer lặp lại ở mỗi trang).
+ *  3. Bỏ các mục "boilerplate" không giúp chấm điểm (Người tham chiếu, Sở thích, Quyền lợi, Về chúng tôi...):
+ *     chỉ bỏ tới tiêu đề mục kế tiếp (hoặc tối đa MAX_DROPPED_LINES dòng), phần sau đó giữ nguyên.
+ *  4. Nếu vẫn vượt ngân sách: giữ các dòng đầu (CV/JD thường đặt nội dung quan trọng, mới nhất lên trước).
+ * Ngân sách cấu hình qua gemini.prompt.budget.&lt;feature-id&gt;.&lt;input&gt; (đơn vị: token ước lượng).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PromptCompactor {
+
+    public static final String TRUNCATED_MARKER = "[...đã rút gọn...]";
+
+    // Tiêu đề mục cần bỏ cả phần nội dung bên dưới (so sánh lowercase, đã bỏ dấu ":" cuối)
+    private static final Set<String> BOILERPLATE_HEADINGS = Set.of(
+            "references", "referees", "reference", "người tham chiếu", "người giới thiệu", "tham chiếu", "người tham khảo",
+            "hobbies", "interests", "sở thích", "sở thích cá nhân",
+            "declaration", "cam đoan", "lời cam đoan", "cam kết",
+            "benefits", "quyền lợi", "phúc lợi", "chế độ đãi ngộ", "quyền lợi được hưởng",
+            "about us", "về chúng tôi", "giới thiệu công ty", "về công ty",
+            "how to apply", "cách thức ứng tuyển", "hồ sơ bao gồm", "liên hệ ứng tuyển");
+
+    // Tiêu đề các mục nội dung thường gặp của CV / JD: gặp là dừng bỏ boilerplate, kể cả khi viết thường không có ":"
+    private static final Set<String> SECTION_HEADINGS = Set.of(
+            "kinh nghiệm", "kinh nghiệm làm việc", "quá trình làm việc", "học vấn", "trình độ học vấn", "quá trình học tập",
+            "kỹ năng", "kĩ năng", "dự án", "chứng chỉ", "giải thưởng", "hoạt động", "mục tiêu nghề nghiệp", "mục tiêu",
+            "thông tin cá nhân", "giới thiệu bản thân", "tóm tắt", "ngoại ngữ",
+            "mô tả công việc", "yêu cầu công việc", "yêu cầu", "yêu cầu ứng viên", "trách nhiệm", "nhiệm vụ",
+            "địa điểm làm việc", "thời gian làm việc", "mức lương",
+            "experience", "work experience", "employment history", "education", "skills", "technical skills",
+            "projects", "certifications", "certificates", "awards", "activities", "summary", "profile", "objective",
+            "languages", "job description", "responsibilities", "requirements", "qualifications", "what you will do");
+
+    // Giới hạn số dòng bị bỏ sau 1 tiêu đề boilerplate: không nhận ra tiêu đề kế tiếp cũng không mất cả phần còn lại
+    private static final int MAX_DROPPED_LINES = 15;
+
+    private static final Pattern PAGE_NUMBER = Pattern.compile("(page|trang)\\s*\\d+(\\s*(/|of|trên)\\s*\\d+)?");
+    // Ngày kinh nghiệm nhập tự do: "2020-06", "2020/6", "06/2020", "6-2020", "Tháng 6/2020", "2019"
+    private static final Pattern YEAR_MONTH = Pattern.compile("(\\d{4})\\s*[-/.]\\s*(\\d{1,2})(?!\\d)");
+    private static final Pattern MONTH_YEAR = Pattern.compile("(?<!\\d)(\\d{1,2})\\s*[-/.]\\s*(\\d{4})");
+    private static final Pattern YEAR = Pattern.compile("(?<!\\d)(\\d{4})(?!\\d)");
+    private static final Set<String> PRESENT_WORDS = Set.of("present", "now", "current", "hiện tại", "nay", "đến nay");
+
+    private static final Pattern HEADING_PREFIX = Pattern.compile("^([#\\-*•]+|[0-9ivx]+[.)])\\s*");
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    /**
+     * Ước lượng token: chữ Latin ~4 ký tự/token, chữ có dấu/khác ASCII ~2 ký tự/token.
+     */
+    public int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) ascii++;
+            else other++;
+        }
+        return (ascii + 3) / 4 + (other + 1) / 2;
+    }
+
+    public int budget(AiFeature feature, String input, int defaultTokens) {
+        return environment.getProperty("gemini.prompt.budget." + feature.getId() + "." + input, Integer.class, defaultTokens);
+    }
+
+    /**
+     * Thu gọn 1 input text (CV, JD, yêu cầu...) theo ngân sách token và ghi metrics.
+     */
+    public String compact(AiFeature feature, String input, String text, int defaultBudgetTokens) {
+        if (text == null || text.isBlank()) return "";
+        int maxTokens = budget(feature, input, defaultBudgetTokens);
+        int rawTokens = estimateTokens(text);
+
+        List<String> lines = dropBoilerplateSections(cleanLines(text));
+        String compacted = String.join("\n", lines);
+        boolean truncated = false;
+        if (estimateTokens(compacted) > maxTokens) {
+            compacted = truncateLines(lines, maxTokens);
+            truncated = true;
+        }
+
+        int compactedTokens = estimateTokens(compacted);
+        DistributionSummary.builder("ai.prompt.input.tokens")
+                .tag("feature", feature.getId()).tag("input", input).tag("stage", "raw")
+                .register(meterRegistry).record(rawTokens);
+        DistributionSummary.builder("ai.prompt.input.tokens")
+                .tag("feature", feature.getId()).tag("input", input).tag("stage", "compacted")
+                .register(meterRegistry).record(compactedTokens);
+        if (truncated) {
+            Counter.builder("ai.prompt.truncated")
+                    .tag("feature", feature.getId()).tag("input", input)
+                    .register(meterRegistry).increment();
+            log.info("Input {}/{} vượt ngân sách {} token, đã cắt còn {} (gốc {})",
+                    feature.getId(), input, maxTokens, compactedTokens, rawTokens);
+        }
+        return compacted;
+    }
+
+    /**
+     * Ghi nhận kích thước prompt cuối cùng gửi lên Gemini.
+     */
+    public void recordPrompt(AiFeature feature, String prompt) {
+        DistributionSummary.builder("ai.prompt.tokens")
+                .tag("feature", feature.getId())
+                .register(meterRegistry)
+                .record(estimateTokens(prompt));
+    }
+
+    /**
+     * Giữ tối đa maxItems phần tử mới nhất theo ngày. Ngày là chuỗi tự do (AI parse CV / người dùng tự sửa) nên được
+     * đọc thành YearMonth bằng {@link #parseYearMonth}; ngày rỗng / không đọc được xếp cuối.
+     * Sắp xếp ổn định nên các phần tử cùng ngày giữ nguyên thứ tự ban đầu.
+     */
+    public <T> List<T> mostRecent(List<T> items, Function<T, String> dateOf, int maxItems) {
+        if (items == null) return List.of();
+        List<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparing((T item) -> parseYearMonth(dateOf.apply(item)),
+                Comparator.nullsLast(Comparator.reverseOrder())));
+        return sorted.size() > maxItems ? sorted.subList(0, maxItems) : sorted;
+    }
+
+    /**
+     * Đọc ngày dạng tự do thành YearMonth: yyyy-MM, yyyy/MM, MM/yyyy, MM-yyyy, yyyy (coi là tháng 1),
+     * "Present" / "Hiện tại" (coi là tháng hiện tại). Không đọc được trả về null.
+     */
+    static YearMonth parseYearMonth(String date) {
+        if (date == null || date.isBlank()) return null;
+        String value = date.trim().toLowerCase(Locale.ROOT);
+        if (PRESENT_WORDS.contains(value)) return YearMonth.now();
+
+        Matcher m = YEAR_MONTH.matcher(value);
+        if (m.find()) return yearMonth(m.group(1), m.group(2));
+        m = MONTH_YEAR.matcher(value);
+        if (m.find()) return yearMonth(m.group(2), m.group(1));
+        m = YEAR.matcher(value);
+        if (m.find()) return yearMonth(m.group(1), "1");
+        return null;
+    }
+
+    private static YearMonth yearMonth(String year, String month) {
+        int y = Integer.parseInt(year);
+        int mo = Integer.parseInt(month);
+        if (y < 1900 || y > 2100 || mo < 1 || mo > 12) return null;
+        return YearMonth.of(y, mo);
+    }
+
+    /**
+     * Cắt 1 đoạn text ngắn (VD: mô tả kinh nghiệm) về tối đa maxTokens, ưu tiên cắt ở ranh giới từ.
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || estimateTokens(text) <= maxTokens) return text;
+        int end = 0;
+        int tokens = 0;
+        // Duyệt theo từ để không cắt giữa chữ
+        for (String word : text.split(" ")) {
+            int next = estimateTokens(word) + 1;
+            if (tokens + next > maxTokens) break;
+            tokens += next;
+            end += word.length() + 1;
+        }
+        return text.substring(0, Math.min(end, text.length())).trim() + " " + TRUNCATED_MARKER;
+    }
+
+    private List<String> cleanLines(String text) {
+        List<String> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String rawLine : text.split("\\R")) {
+            String line = collapseWhitespace(rawLine);
+            if (isNoise(line)) continue;
+            // Chỉ bỏ trùng với dòng đủ dài, tránh xóa các dòng ngắn hợp lệ lặp lại (VD: "Java")
+            if (line.length() >= 20 && !seen.add(line.toLowerCase(Locale.ROOT))) continue;
+            result.add(line);
+        }
+        return result;
+    }
+
+    private List<String> dropBoilerplateSections(List<String> lines) {
+        List<String> result = new ArrayList<>(lines.size());
+        boolean dropping = false;
+        int dropped = 0;
+        for (String line : lines) {
+            if (isHeading(line)) {
+                dropping = BOILERPLATE_HEADINGS.contains(headingKey(line));
+                dropped = 0;
+                if (dropping) continue;
+            } else if (dropping && (isSectionHeading(line) || dropped >= MAX_DROPPED_LINES)) {
+                // Hết mục boilerplate: giữ lại từ dòng này trở đi
+                dropping = false;
+            }
+            if (dropping) {
+                dropped++;
+            } else {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    private String truncateLines(List<String> lines, int maxTokens) {
+        int markerTokens = estimateTokens(TRUNCATED_MARKER) + 1;
+        StringBuilder sb = new StringBuilder();
+        int tokens = 0;
+        for (String line : lines) {
+            int lineTokens = estimateTokens(line) + 1;
+            int remaining = maxTokens - markerTokens - tokens;
+            if (lineTokens > remaining) {
+                // Dòng rất dài (VD: JSON 1 dòng) -> vẫn giữ phần đầu thay vì bỏ cả dòng
+                if (remaining >= 20) {
+                    return sb.append(truncate(line, remaining)).toString();
+                }
+                break;
+            }
+            sb.append(line).append('\n');
+            tokens += lineTokens;
+        }
+        return sb.append(TRUNCATED_MARKER).toString();
+    }
+
+    private static String collapseWhitespace(String line) {
+        StringBuilder sb = new StringBuilder(line.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) sb.append(' ');
+                sb.append(c);
+                pendingSpace = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    // Dòng rỗng, chỉ có ký tự trang trí, hoặc số trang ("Page 2 of 3", "Trang 1/2")
+    private static boolean isNoise(String line) {
+        if (line.isEmpty()) return true;
+        int alnum = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isLetterOrDigit(line.charAt(i))) alnum++;
+        }
+        if (alnum == 0) return true;
+        String lower = line.toLowerCase(Locale.ROOT);
+        return PAGE_NUMBER.matcher(lower).matches();
+    }
+
+    // Tiêu đề mục: dòng ngắn, viết hoa toàn bộ hoặc kết thúc bằng ":" hoặc là tiêu đề boilerplate đã biết
+    private static boolean isHeading(String line) {
+        if (line.length() > 40) return false;
+        if (line.endsWith(":")) return true;
+        if (BOILERPLATE_HEADINGS.contains(headingKey(line))) return true;
+        boolean hasLetter = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isLetter(c)) {
+                hasLetter = true;
+                if (Character.isLowerCase(c)) return false;
+            }
+        }
+        return hasLetter;
+    }
+
+    // Tiêu đề mục nội dung đã biết, vd "Yêu cầu công việc", "Kinh nghiệm làm việc (3 năm)"
+    private static boolean isSectionHeading(String line) {
+        if (line.length() > 40) return false;
+        String key = headingKey(line);
+        if (SECTION_HEADINGS.contains(key)) return true;
+        for (String heading : SECTION_HEADINGS) {
+            if (key.startsWith(heading + " ") || key.startsWith(heading + "(")) return true;
+        }
+        return false;
+    }
+
+    private static String headingKey(String line) {
+        String key = line.toLowerCase(Locale.ROOT).trim();
+        // Bỏ ký tự đầu dòng kiểu "1.", "I.", "#", "-" và dấu ":" cuối
+        key = HEADING_PREFIX.matcher(key).replaceFirst("");
+        if (key.endsWith(":")) key = key.substring(0, key.length() - 1).trim();
+        return key;
+    }
+}
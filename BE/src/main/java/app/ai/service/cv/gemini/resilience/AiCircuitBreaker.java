@@ -0,0 +1,227 @@
+package app.ai.service.cv.gemini.resilience;
+
+import app.ai.service.cv.gemini.AiFeature;
+import app.exception.AiUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker theo từng loại thao tác AI + bulkhead giới hạn số request AI chạy đồng thời.
+ * - CLOSED: gọi bình thường, ghi nhận kết quả vào cửa sổ N lần gọi gần nhất.
+ * - OPEN: tỉ lệ lỗi vượt ngưỡng -> từ chối ngay (AiUnavailableException) trong openDuration, caller dùng fallback.
+ * - HALF_OPEN: hết thời gian mở -> cho 1 request thử, thành công thì đóng lại, lỗi thì mở tiếp.
+ * Request streaming (SSE) giữ permit suốt thời gian đẩy token về client nên dùng bulkhead riêng,
+ * tránh vài client đọc chậm chiếm hết chỗ của các request AI thường.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AiCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.circuit.window-size:20}")
+    private int windowSize;
+
+    @Value("${ai.circuit.minimum-calls:5}")
+    private int minimumCalls;
+
+    @Value("${ai.circuit.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${ai.circuit.open-duration-ms:30000}")
+    private long openDurationMs;
+
+    @Value("${ai.bulkhead.max-concurrent:20}")
+    private int maxConcurrent;
+
+    @Value("${ai.bulkhead.max-wait-ms:500}")
+    private long bulkheadMaxWaitMs;
+
+    @Value("${ai.bulkhead.stream-max-concurrent:8}")
+    private int streamMaxConcurrent;
+
+    private final Map<AiFeature, Breaker> breakers = new EnumMap<>(AiFeature.class);
+    private Semaphore bulkhead;
+    private Semaphore streamBulkhead;
+
+    @PostConstruct
+    void init() {
+        bulkhead = new Semaphore(maxConcurrent);
+        streamBulkhead = new Semaphore(streamMaxConcurrent);
+        Gauge.builder("ai.bulkhead.available", bulkhead, Semaphore::availablePermits).register(meterRegistry);
+        Gauge.builder("ai.bulkhead.stream.available", streamBulkhead, Semaphore::availablePermits).register(meterRegistry);
+        for (AiFeature feature : AiFeature.values()) {
+            Breaker breaker = new Breaker(feature, windowSize);
+            breakers.put(feature, breaker);
+            Gauge.builder("ai.circuit.state", breaker, b -> b.state.ordinal())
+                    .tag("feature", feature.getId())
+                    .description("0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN")
+                    .register(meterRegistry);
+        }
+    }
+
+    public <T> T execute(AiFeature feature, Supplier<T> call) {
+        return execute(feature, bulkhead, "bulkhead", call);
+    }
+
+    /**
+     * Như execute nhưng cho request streaming: chiếm permit của bulkhead streaming thay vì bulkhead chung.
+     */
+    public <T> T executeStreaming(AiFeature feature, Supplier<T> call) {
+        return execute(feature, streamBulkhead, "stream_bulkhead", call);
+    }
+
+    private <T> T execute(AiFeature feature, Semaphore bulkhead, String bulkheadName, Supplier<T> call) {
+        Breaker breaker = breakers.get(feature);
+        if (!breaker.tryAcquirePermission()) {
+            reject(feature, "open");
+            throw new AiUnavailableException("Dịch vụ AI (" + feature.getId() + ") đang tạm gián đoạn, vui lòng thử lại sau.");
+        }
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(bulkheadMaxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            breaker.releasePermission();
+            reject(feature, bulkheadName);
+            throw new AiUnavailableException("Hệ thống AI đang quá tải, vui lòng thử lại sau.");
+        }
+
+        try {
+            T result = call.get();
+            breaker.record(true);
+            return result;
+        } catch (UncheckedIOException e) {
+            // Client ngắt kết nối (streaming) -> không tính là lỗi của AI
+            breaker.releasePermission();
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.record(false);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public State getState(AiFeature feature) {
+        return breakers.get(feature).currentState();
+    }
+
+    public boolean isOpen(AiFeature feature) {
+        return getState(feature) == State.OPEN;
+    }
+
+    private void reject(AiFeature feature, String reason) {
+        Counter.builder("ai.circuit.rejected")
+                .tag("feature", feature.getId())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private final class Breaker {
+        private final AiFeature feature;
+        // Cửa sổ vòng (ring buffer) kết quả N lần gọi gần nhất: true = thành công
+        private final boolean[] outcomes;
+        private int position;
+        private int recorded;
+        private int failures;
+
+        private State state = State.CLOSED;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        private Breaker(AiFeature feature, int windowSize) {
+            this.feature = feature;
+            this.outcomes = new boolean[Math.max(1, windowSize)];
+        }
+
+        private synchronized State currentState() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        }
+
+        private synchronized boolean tryAcquirePermission() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openDurationMs) return false;
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) return false;
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        private synchronized void releasePermission() {
+            if (state == State.HALF_OPEN) trialInFlight = false;
+        }
+
+        private synchronized void record(boolean success) {
+            if (state == State.HALF_OPEN) {
+                trialInFlight = false;
+                if (success) {
+                    reset();
+                    transition(State.CLOSED);
+                } else {
+                    open();
+                }
+                return;
+            }
+
+            if (recorded == outcomes.length) {
+                if (!outcomes[position]) failures--;
+            } else {
+                recorded++;
+            }
+            outcomes[position] = success;
+            if (!success) failures++;
+            position = (position + 1) % outcomes.length;
+
+            if (state == State.CLOSED && recorded >= minimumCalls
+                    && (double) failures / recorded >= failureRateThreshold) {
+                open();
+            }
+        }
+
+        private void open() {
+            openedAt = System.currentTimeMillis();
+            transition(State.OPEN);
+        }
+
+        private void reset() {
+            position = 0;
+            recorded = 0;
+            failures = 0;
+        }
+
+        private void transition(State next) {
+            if (state != next) {
+                log.warn("Circuit breaker AI [{}]: {} -> {}", feature.getId(), state, next);
+                state = next;
+            }
+        }
+    }
+}
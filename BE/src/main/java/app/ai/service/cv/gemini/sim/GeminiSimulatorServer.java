@@ -0,0 +1,237 @@
+package app.ai.service.cv.gemini.sim;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gemini giả lập chạy local (chỉ bật với profile "gemini-sim") để đo tải sàng lọc / phỏng vấn mà không tốn quota.
+ * - Hỗ trợ đúng 2 endpoint GeminiApiClient dùng: models/{model}:generateContent và :streamGenerateContent (SSE).
+ * - Độ trễ theo phân phối cấu hình được: fixed | uniform | lognormal.
+ * - Bơm lỗi 429 (kèm retryDelay), 500 và phản hồi bị chặn an toàn (safety block) theo tỉ lệ.
+ * - Nội dung trả về là JSON mẫu của MatchResult / GeminiResponse / danh sách skill (xem SimulatedReplies).
+ * Chạy trên HttpServer của JDK với port riêng nên không đi qua Security filter của ứng dụng.
+ */
+@Component
+@Profile("gemini-sim")
+@RequiredArgsConstructor
+@Slf4j
+public class GeminiSimulatorServer {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${gemini.sim.port:8089}")
+    private int port;
+
+    @Value("${gemini.sim.threads:64}")
+    private int threads;
+
+    // Phân phối độ trễ (thời gian tới token đầu tiên): fixed | uniform | lognormal
+    @Value("${gemini.sim.latency.distribution:lognormal}")
+    private String latencyDistribution;
+
+    @Value("${gemini.sim.latency.median-ms:800}")
+    private long medianLatencyMs;
+
+    @Value("${gemini.sim.latency.sigma:0.5}")
+    private double latencySigma;
+
+    @Value("${gemini.sim.latency.min-ms:100}")
+    private long minLatencyMs;
+
+    @Value("${gemini.sim.latency.max-ms:10000}")
+    private long maxLatencyMs;
+
+    @Value("${gemini.sim.rate-limit-rate:0.0}")
+    private double rateLimitRate;
+
+    @Value("${gemini.sim.retry-delay-seconds:5}")
+    private int retryDelaySeconds;
+
+    @Value("${gemini.sim.server-error-rate:0.0}")
+    private double serverErrorRate;
+
+    @Value("${gemini.sim.safety-block-rate:0.0}")
+    private double safetyBlockRate;
+
+    @Value("${gemini.sim.stream.chunk-chars:40}")
+    private int streamChunkChars;
+
+    @Value("${gemini.sim.stream.chunk-delay-ms:30}")
+    private long streamChunkDelayMs;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+    private SimulatedReplies replies;
+
+    @PostConstruct
+    void start() throws IOException {
+        replies = new SimulatedReplies(objectMapper);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gemini-sim-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/v1beta/models/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        log.warn("Gemini SIMULATOR đang chạy tại http://127.0.0.1:{}/v1beta (latency={} median={}ms, 429={}, 500={}, safety={})",
+                port, latencyDistribution, medianLatencyMs, rateLimitRate, serverErrorRate, safetyBlockRate);
+    }
+
+    @PreDestroy
+    void stop() {
+        log.info("Dừng Gemini simulator sau {} request", requestCount.get());
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error(405, "Method not allowed", "INVALID_ARGUMENT"));
+                return;
+            }
+            boolean stream = path.endsWith(":streamGenerateContent");
+            if (!stream && !path.endsWith(":generateContent")) {
+                sendJson(exchange, 404, error(404, "Unknown method: " + path, "NOT_FOUND"));
+                return;
+            }
+
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            StringBuilder prompt = new StringBuilder();
+            boolean hasImage = false;
+            for (JsonNode part : body.path("contents").path(0).path("parts")) {
+                prompt.append(part.path("text").asText(""));
+                hasImage |= part.has("inline_data") || part.has("inlineData");
+            }
+
+            sleep(sampleLatency());
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < rateLimitRate) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryDelaySeconds));
+                sendJson(exchange, 429, rateLimitError());
+                return;
+            }
+            roll -= rateLimitRate;
+            if (roll < serverErrorRate) {
+                sendJson(exchange, 500, error(500, "Internal error encountered.", "INTERNAL"));
+                return;
+            }
+            roll -= serverErrorRate;
+            boolean blocked = roll < safetyBlockRate;
+
+            String text = replies.replyFor(prompt.toString(), hasImage);
+            if (stream) {
+                sendStream(exchange, text, blocked);
+            } else {
+                sendJson(exchange, 200, blocked ? safetyBlocked() : candidate(text, "STOP"));
+            }
+        } catch (Exception e) {
+            log.debug("Gemini simulator lỗi khi xử lý request: {}", e.getMessage());
+        }
+    }
+
+    private void sendStream(HttpExchange exchange, String text, boolean blocked) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (blocked) {
+            // Gemini stream bị chặn: 1 event có finishReason SAFETY, không có content
+            writeEvent(out, Map.of("candidates", List.of(Map.of("finishReason", "SAFETY", "index", 0))));
+            return;
+        }
+        int chunk = Math.max(1, streamChunkChars);
+        for (int i = 0; i < text.length(); i += chunk) {
+            if (i > 0) sleep(streamChunkDelayMs);
+            boolean last = i + chunk >= text.length();
+            writeEvent(out, candidate(text.substring(i, Math.min(text.length(), i + chunk)), last ? "STOP" : null));
+        }
+    }
+
+    private void writeEvent(OutputStream out, Object payload) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(payload) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object payload) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(payload);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private long sampleLatency() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = switch (latencyDistribution.toLowerCase()) {
+            case "fixed" -> medianLatencyMs;
+            case "uniform" -> random.nextLong(minLatencyMs, Math.max(minLatencyMs, maxLatencyMs) + 1);
+            // Đuôi dài giống API thật: median * e^(sigma * N(0,1))
+            default -> Math.round(medianLatencyMs * Math.exp(latencySigma * random.nextGaussian()));
+        };
+        return Math.max(minLatencyMs, Math.min(maxLatencyMs, latency));
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Object> candidate(String text, String finishReason) {
+        Map<String, Object> candidate = new LinkedHashMap<>();
+        candidate.put("content", Map.of("parts", List.of(Map.of("text", text)), "role", "model"));
+        if (finishReason != null) candidate.put("finishReason", finishReason);
+        candidate.put("index", 0);
+        return Map.of("candidates", List.of(candidate), "modelVersion", "gemini-simulator");
+    }
+
+    private static Map<String, Object> safetyBlocked() {
+        return Map.of("promptFeedback", Map.of("blockReason", "SAFETY"), "modelVersion", "gemini-simulator");
+    }
+
+    private Map<String, Object> rateLimitError() {
+        // Cùng dạng body với Gemini thật để GeminiKeyScheduler đọc được retryDelay
+        return Map.of("error", Map.of(
+                "code", 429,
+                "message", "Resource has been exhausted (e.g. check quota).",
+                "status", "RESOURCE_EXHAUSTED",
+                "details", List.of(Map.of(
+                        "@type", "type.googleapis.com/google.rpc.RetryInfo",
+                        "retryDelay", retryDelaySeconds + "s"))));
+    }
+
+    private static Map<String, Object> error(int code, String message, String status) {
+        return Map.of("error", Map.of("code", code, "message", message, "status", status));
+    }
+}
@@ -0,0 +1,139 @@
+package app.ai.service.cv.gemini.sim;
+
+import app.ai.service.cv.gemini.dto.ContactDTO;
+import app.ai.service.cv.gemini.dto.ExperienceDTO;
+import app.ai.service.cv.gemini.dto.GeminiResponse;
+import app.ai.service.cv.gemini.dto.MatchResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Câu trả lời mẫu cho GeminiSimulatorServer, chọn theo dấu hiệu trong prompt của GeminiService.
+ * JSON được sinh từ chính các DTO (MatchResult, GeminiResponse) nên luôn khớp với code parse phía client.
+ */
+class SimulatedReplies {
+
+    private static final List<String> SKILL_POOL = List.of(
+            "Java", "Spring Boot", "SQL", "PostgreSQL", "Docker", "Git", "REST API",
+            "React", "Teamwork", "Communication", "English", "Problem Solving");
+
+    private static final Pattern CANDIDATE_ID_PATTERN = Pattern.compile("### candidateId: (\\S+)");
+
+    private final ObjectMapper objectMapper;
+
+    SimulatedReplies(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    String replyFor(String prompt, boolean hasImage) {
+        if (hasImage) return ocrText();
+        if (prompt.contains("\"candidateId\"")) return toJson(batchMatchResults(prompt));
+        if (prompt.contains("matchPercentage")) return toJson(matchResult());
+        if (prompt.contains("\"contact\"") && prompt.contains("aboutMe")) return toJson(parsedCv());
+        if (prompt.contains("JSON Array of strings")) return toJson(pickSkills(5));
+        return chatText();
+    }
+
+    private MatchResult matchResult() {
+        List<String> matched = pickSkills(4);
+        List<String> missing = SKILL_POOL.stream().filter(s -> !matched.contains(s)).limit(2).toList();
+        List<String> recommended = List.of("CI/CD", "Cloud", "Time Management");
+        int total = matched.size() + missing.size();
+        return MatchResult.builder()
+                .matchPercentage(ThreadLocalRandom.current().nextInt(30, 96))
+                .totalRequiredSkills(total)
+                .matchedSkillsCount(matched.size())
+                .matchedSkillsList(matched)
+                .missingSkillsCount(missing.size())
+                .missingSkillsList(missing)
+                .otherHardSkillsCount(1)
+                .otherHardSkillsList(List.of("Python"))
+                .otherSoftSkillsCount(1)
+                .otherSoftSkillsList(List.of("Leadership"))
+                .recommendedSkillsCount(recommended.size())
+                .recommendedSkillsList(recommended)
+                .evaluation("[Giả lập] Ứng viên đáp ứng phần lớn yêu cầu kỹ thuật của vị trí.")
+                .learningPath("1. Học thêm Docker\n2. Làm quen với CI/CD")
+                .careerAdvice("[Giả lập] Nên bổ sung dự án thực tế vào CV.")
+                .build();
+    }
+
+    // Prompt batch của GeminiService.matchCandidatesBatch: mỗi ứng viên mở đầu bằng "### candidateId: <id>"
+    private List<Map<String, Object>> batchMatchResults(String prompt) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        Matcher m = CANDIDATE_ID_PATTERN.matcher(prompt);
+        while (m.find()) {
+            MatchResult result = matchResult();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("candidateId", m.group(1));
+            item.put("matchPercentage", result.getMatchPercentage());
+            item.put("matchedSkillsCount", result.getMatchedSkillsCount());
+            item.put("matchedSkillsList", result.getMatchedSkillsList());
+            item.put("missingSkillsCount", result.getMissingSkillsCount());
+            item.put("missingSkillsList", result.getMissingSkillsList());
+            item.put("evaluation", result.getEvaluation());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private GeminiResponse parsedCv() {
+        GeminiResponse response = new GeminiResponse();
+        response.setContact(ContactDTO.builder()
+                .name("Nguyễn Văn Giả Lập")
+                .email("simulator@example.com")
+                .phoneNumber("0900000000")
+                .address("Hà Nội")
+                .linkedIn("")
+                .build());
+        response.setSkills(pickSkills(6));
+        response.setExperiences(List.of(ExperienceDTO.builder()
+                .company("Công ty Giả Lập")
+                .role("Backend Developer")
+                .startDate("2022-01")
+                .endDate("Present")
+                .description("Phát triển API với Spring Boot")
+                .build()));
+        response.setAboutMe("[Giả lập] Lập trình viên backend với 3 năm kinh nghiệm.");
+        return response;
+    }
+
+    private String ocrText() {
+        return """
+                NGUYỄN VĂN GIẢ LẬP
+                Email: simulator@example.com
+                KỸ NĂNG: Java, Spring Boot, SQL
+                KINH NGHIỆM: Backend Developer - Công ty Giả Lập (2022 - nay)
+                """;
+    }
+
+    private String chatText() {
+        return "[Giả lập] Đây là câu trả lời mẫu từ Gemini simulator. "
+                + "Nội dung này chỉ dùng để đo tải và độ trễ, không phản ánh câu hỏi thật. "
+                + "Bạn có thể chỉnh độ trễ, tỉ lệ lỗi 429/500 và tỉ lệ bị chặn an toàn qua cấu hình gemini.sim.*";
+    }
+
+    private List<String> pickSkills(int count) {
+        int offset = ThreadLocalRandom.current().nextInt(SKILL_POOL.size());
+        return IntStream.range(0, Math.min(count, SKILL_POOL.size()))
+                .mapToObj(i -> SKILL_POOL.get((offset + i) % SKILL_POOL.size()))
+                .toList();
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Không tạo được JSON giả lập", e);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package app.ai.service.matching;
+
+import app.ai.service.cv.gemini.dto.FastMatchResult;
+import app.recruitment.entity.JobPosting;
+import app.recruitment.entity.enums.JobStatus;
+import app.recruitment.event.JobPostingChangedEvent;
+import app.recruitment.repository.JobPostingRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục ngược skill -> job đang PUBLISHED, nằm thường trú trong RAM.
+ * <p>
+ * Mỗi job được gán 1 slot (số nguyên liên tiếp), mỗi skill lấy id từ {@link SkillLexicon} (đã gom đồng nghĩa);
+ * với mỗi skill giữ mảng int các slot job yêu cầu skill đó (tăng dần). Chấm điểm 1 ứng viên với toàn bộ job chỉ là
+ * cộng dồn trên các mảng của những skill ứng viên có -> không query DB, không nạp entity.
+ * <p>
+ * Dựng lại toàn bộ khi khởi động và định kỳ (job.skill-index.rebuild-interval-ms, để dọn slot trống / bắt kịp thay đổi
+ * ngoài luồng, và khi từ điển kỹ năng được nạp lại), còn bình thường cập nhật từng job qua {@link JobPostingChangedEvent}
+ * sau khi transaction commit.
+ */
+@Component
+@Slf4j
+public class JobSkillIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int REFRESH_LOCK_STRIPES = 64;
+
+    private final JobPostingRepository jobPostingRepository;
+    private final SkillLexicon skillLexicon;
+    private final Timer scoreTimer;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object rebuildMonitor = new Object();
+    private State state;
+
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+    // Job thay đổi trong lúc đang dựng lại -> áp lại sau khi thay chỉ mục mới, tránh mất cập nhật
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    // Đọc DB + áp vào chỉ mục tuần tự theo job, để 2 lần refresh cùng job không áp bản đọc cũ sau bản mới
+    private final Object[] refreshLocks = new Object[REFRESH_LOCK_STRIPES];
+
+    public JobSkillIndex(JobPostingRepository jobPostingRepository, SkillLexicon skillLexicon, MeterRegistry meterRegistry) {
+        this.jobPostingRepository = jobPostingRepository;
+        this.skillLexicon = skillLexicon;
+        this.state = new State(skillLexicon);
+        for (int i = 0; i < refreshLocks.length; i++) {
+            refreshLocks[i] = new Object();
+        }
+        this.scoreTimer = Timer.builder("job.skill-index.score").register(meterRegistry);
+        Gauge.builder("job.skill-index.size", this, JobSkillIndex::jobCount).tag("type", "jobs").register(meterRegistry);
+        Gauge.builder("job.skill-index.size", this, JobSkillIndex::skillCount).tag("type", "skills").register(meterRegistry);
+    }
+
+    /** Chỉ mục đã nạp xong lần đầu chưa (trước đó bên gọi nên đi đường DB). */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // --- DỰNG / CẬP NHẬT CHỈ MỤC ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${job.skill-index.rebuild-interval-ms:1800000}",
+               fixedDelayString = "${job.skill-index.rebuild-interval-ms:1800000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        synchronized (rebuildMonitor) {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+            long start = System.currentTimeMillis();
+            try {
+                List<JobPosting> jobs = jobPostingRepository.findByStatusWithSkills(JobStatus.PUBLISHED);
+                State fresh = new State(skillLexicon);
+                for (JobPosting job : jobs) {
+                    fresh.put(job.getId(), job.getExtractedSkills());
+                }
+                lock.writeLock().lock();
+                try {
+                    state = fresh;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                ready = true;
+                log.info("Đã dựng chỉ mục skill: {} job, {} skill ({} ms)",
+                        fresh.slotByJob.size(), fresh.skillCount(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Lỗi dựng chỉ mục skill (giữ chỉ mục cũ): {}", e.getMessage());
+            } finally {
+                rebuilding = false;
+            }
+            for (Long jobId : changedDuringRebuild) {
+                refresh(jobId);
+            }
+            changedDuringRebuild.clear();
+        }
+    }
+
+    @EventListener
+    public void onSkillLexiconReloaded(SkillLexiconReloadedEvent event) {
+        rebuild();
+    }
+
+    // fallbackExecution: bên bắn event không nằm trong transaction thì chạy ngay
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobPostingChanged(JobPostingChangedEvent event) {
+        refresh(event.getJobId());
+    }
+
+    /**
+     * Đọc lại 1 job từ DB: còn PUBLISHED thì cập nhật skill, không thì gỡ khỏi chỉ mục.
+     * Đọc và áp chạy dưới khóa theo job; chỉ mục bị thay (rebuild) trong lúc đọc thì đọc lại rồi áp vào chỉ mục mới.
+     */
+    public void refresh(Long jobId) {
+        if (jobId == null) return;
+        if (rebuilding) {
+            changedDuringRebuild.add(jobId);
+        }
+        synchronized (refreshLocks[Math.floorMod(jobId.hashCode(), refreshLocks.length)]) {
+            try {
+                boolean applied = false;
+                while (!applied) {
+                    State readFor = currentState();
+                    List<JobPosting> found = jobPostingRepository.findAllByIdsWhithSkills(List.of(jobId));
+                    JobPosting job = found.isEmpty() ? null : found.get(0);
+                    lock.writeLock().lock();
+                    try {
+                        if (state != readFor) continue;
+                        if (job != null && job.getStatus() == JobStatus.PUBLISHED) {
+                            state.put(jobId, job.getExtractedSkills());
+                        } else {
+                            state.remove(jobId);
+                        }
+                        applied = true;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Không cập nhật được job {} vào chỉ mục skill: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    private State currentState() {
+        lock.readLock().lock();
+        try {
+            return state;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- CHẤM ĐIỂM ---
+
+    /**
+     * Chấm điểm ứng viên với TẤT CẢ job đang mở trong 1 lượt quét các posting list.
+     * Điểm = số skill job mà ứng viên có / tổng skill job * 100, chỉ trả về job có điểm >= minScore.
+     */
+    public Map<Long, FastMatchResult> scoreOpenJobs(Collection<String> candidateSkills, int minScore) {
+        return scoreTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                State s = state;
+                BitSet candidate = s.resolve(candidateSkills);
+                int[] hits = new int[s.slots.size()];
+                for (int skillId = candidate.nextSetBit(0); skillId >= 0; skillId = candidate.nextSetBit(skillId + 1)) {
+                    for (int slot : s.postings.get(skillId)) {
+                        hits[slot]++;
+                    }
+                }
+
+                Map<Long, FastMatchResult> result = new HashMap<>();
+                for (int slot = 0; slot < hits.length; slot++) {
+                    IndexedJob job = s.slots.get(slot);
+                    if (job == null) continue;
+                    int score = job.score(hits[slot]);
+                    if (score >= minScore) {
+                        result.put(job.jobId(), job.toResult(candidate, score));
+                    }
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /** 1 job trong bảng xếp hạng: khóa xếp hạng (điểm rồi id, giảm dần) + kết quả so khớp. */
+    public record RankedJob(long rankKey, long jobId, FastMatchResult match) {}
+
+    /** 1 trang top-K; totalMatched = số job đạt minScore trên toàn bộ danh sách xếp hạng. */
+    public record TopJobs(List<RankedJob> jobs, int totalMatched) {}
+
+    /** Khóa xếp hạng: điểm ở 16 bit cao, id job ở 48 bit thấp -> so sánh 1 số long = so điểm rồi so id (job mới hơn trước). */
+    public static long rankKey(int score, long jobId) {
+        return ((long) score << 48) | jobId;
+    }
+
+    /**
+     * Top-K job đang mở cho ứng viên, xếp theo điểm giảm dần (cùng điểm thì job mới hơn trước), chỉ lấy các job
+     * đứng SAU afterRankKey (phân trang theo con trỏ; trang đầu truyền Long.MAX_VALUE).
+     * Giữ heap tối đa limit phần tử trong lúc quét, chỉ dựng FastMatchResult cho đúng các job được trả về.
+     */
+    public TopJobs topOpenJobs(Collection<String> candidateSkills, int minScore, int limit, long afterRankKey) {
+        return scoreTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                State s = state;
+                BitSet candidate = s.resolve(candidateSkills);
+                int[] hits = new int[s.slots.size()];
+                for (int skillId = candidate.nextSetBit(0); skillId >= 0; skillId = candidate.nextSetBit(skillId + 1)) {
+                    for (int slot : s.postings.get(skillId)) {
+                        hits[slot]++;
+                    }
+                }
+
+                LongMinHeap heap = new LongMinHeap(limit);
+                int totalMatched = 0;
+                for (int slot = 0; slot < hits.length; slot++) {
+                    if (hits[slot] == 0 && minScore > 0) continue;
+                    IndexedJob job = s.slots.get(slot);
+                    if (job == null) continue;
+                    int score = job.score(hits[slot]);
+                    if (score < minScore) continue;
+                    totalMatched++;
+                    long key = rankKey(score, job.jobId());
+                    if (key < afterRankKey) {
+                        heap.offer(key);
+                    }
+                }
+
+                long[] keys = heap.sortedDescending();
+                List<RankedJob> jobs = new ArrayList<>(keys.length);
+                for (long key : keys) {
+                    long jobId = key & ((1L << 48) - 1);
+                    IndexedJob job = s.slots.get(s.slotByJob.get(jobId));
+                    jobs.add(new RankedJob(key, jobId, job.toResult(candidate, (int) (key >>> 48))));
+                }
+                return new TopJobs(jobs, totalMatched);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Chấm điểm ứng viên với 1 nhóm job. Job không có trong chỉ mục (chưa/không còn PUBLISHED) sẽ vắng mặt
+     * trong kết quả, bên gọi tự xử lý.
+     */
+    public Map<Long, FastMatchResult> score(Collection<String> candidateSkills, Collection<Long> jobIds) {
+        lock.readLock().lock();
+        try {
+            State s = state;
+            BitSet candidate = s.resolve(candidateSkills);
+            Map<Long, FastMatchResult> result = new HashMap<>();
+            for (Long jobId : jobIds) {
+                Integer slot = s.slotByJob.get(jobId);
+                if (slot == null) continue;
+                IndexedJob job = s.slots.get(slot);
+                int hits = 0;
+                for (int skillId : job.skillIds()) {
+                    if (candidate.get(skillId)) hits++;
+                }
+                result.put(jobId, job.toResult(candidate, job.score(hits)));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double jobCount() {
+        lock.readLock().lock();
+        try {
+            return state.slotByJob.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double skillCount() {
+        lock.readLock().lock();
+        try {
+            return state.skillCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- CẤU TRÚC DỮ LIỆU ---
+
+    /** skillIds song song với skillNames (tên gốc đầu tiên gặp trong job, để hiển thị). */
+    private record IndexedJob(long jobId, int[] skillIds, List<String> skillNames) {
+
+        int score(int hits) {
+            if (skillIds.length == 0) return 0; // Job không yêu cầu skill -> 0 để không gây nhiễu
+            return (int) Math.round((double) hits / skillIds.length * 100);
+        }
+
+        FastMatchResult toResult(BitSet candidate, int score) {
+            List<String> matched = new ArrayList<>();
+            List<String> missing = new ArrayList<>();
+            for (int i = 0; i < skillIds.length; i++) {
+                (candidate.get(skillIds[i]) ? matched : missing).add(skillNames.get(i));
+            }
+            return new FastMatchResult(score, matched, missing);
+        }
+    }
+
+    /** Không thread-safe, mọi truy cập đi qua lock của JobSkillIndex. */
+    private static final class State {
+        final SkillLexicon lexicon;
+        final List<int[]> postings = new ArrayList<>();   // skillId -> các slot job, tăng dần
+        final List<IndexedJob> slots = new ArrayList<>(); // slot -> job, null khi job đã bị gỡ
+        final Map<Long, Integer> slotByJob = new HashMap<>();
+
+        State(SkillLexicon lexicon) {
+            this.lexicon = lexicon;
+        }
+
+        void put(Long jobId, List<String> rawSkills) {
+            Integer slot = slotByJob.get(jobId);
+            if (slot != null) {
+                unlink(slot);
+            } else {
+                slot = slots.size();
+                slots.add(null);
+                slotByJob.put(jobId, slot);
+            }
+
+            // Bỏ skill trùng (sau chuẩn hóa) để điểm không bị lệch khi job liệt kê 1 skill 2 lần
+            Map<Integer, String> distinct = new LinkedHashMap<>();
+            if (rawSkills != null) {
+                for (String raw : rawSkills) {
+                    int skillId = lexicon.idOf(raw);
+                    if (skillId < 0) continue;
+                    while (postings.size() <= skillId) {
+                        postings.add(EMPTY);
+                    }
+                    distinct.putIfAbsent(skillId, raw.trim());
+                }
+            }
+            int[] ids = distinct.keySet().stream().mapToInt(Integer::intValue).toArray();
+            slots.set(slot, new IndexedJob(jobId, ids, List.copyOf(distinct.values())));
+            for (int skillId : ids) {
+                postings.set(skillId, insertSorted(postings.get(skillId), slot));
+            }
+        }
+
+        void remove(Long jobId) {
+            Integer slot = slotByJob.remove(jobId);
+            if (slot == null) return;
+            unlink(slot);
+            slots.set(slot, null);
+        }
+
+        private void unlink(int slot) {
+            IndexedJob old = slots.get(slot);
+            if (old == null) return;
+            for (int skillId : old.skillIds()) {
+                postings.set(skillId, removeSorted(postings.get(skillId), slot));
+            }
+        }
+
+        /** Skill ứng viên -> tập id skill mà ít nhất 1 job trong chỉ mục có thể yêu cầu. */
+        BitSet resolve(Collection<String> candidateSkills) {
+            BitSet set = lexicon.idSet(candidateSkills);
+            if (set.length() > postings.size()) {
+                set.clear(postings.size(), set.length());
+            }
+            return set;
+        }
+
+        int skillCount() {
+            int count = 0;
+            for (int[] posting : postings) {
+                if (posting.length > 0) count++;
+            }
+            return count;
+        }
+
+        private static int[] insertSorted(int[] arr, int value) {
+            int pos = Arrays.binarySearch(arr, value);
+            if (pos >= 0) return arr;
+            pos = -pos - 1;
+            int[] out = new int[arr.length + 1];
+            System.arraycopy(arr, 0, out, 0, pos);
+            out[pos] = value;
+            System.arraycopy(arr, pos, out, pos + 1, arr.length - pos);
+            return out;
+        }
+
+        private static int[] removeSorted(int[] arr, int value) {
+            int pos = Arrays.binarySearch(arr, value);
+            if (pos < 0) return arr;
+            int[] out = new int[arr.length - 1];
+            System.arraycopy(arr, 0, out, 0, pos);
+            System.arraycopy(arr, pos + 1, out, pos, arr.length - pos - 1);
+            return out;
+        }
+    }
+}
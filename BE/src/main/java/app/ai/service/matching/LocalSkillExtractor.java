@@ -0,0 +1,306 @@
+package app.ai.service.matching;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Tách kỹ năng từ văn bản tự do (mô tả job, yêu cầu, CV) ngay trên máy, không gọi AI.
+ * <p>
+ * Mọi biến thể trong {@link SkillLexicon} được biên dịch thành 1 automaton Aho-Corasick (bảng chuyển trạng thái đầy đủ),
+ * văn bản chỉ cần quét 1 lượt: O(độ dài văn bản + số lần khớp), cỡ micro giây cho 1 JD / CV.
+ * <ul>
+ *   <li>Văn bản được "gấp" từng ký tự: chữ thường, bỏ dấu tiếng Việt, dấu câu / khoảng trắng -> 1 dấu cách.
+ *       Biến thể cũng gấp như vậy, nên "Tiếng Anh" khớp "tieng anh", "Node.js" khớp "node js".</li>
+ *   <li>Chỉ nhận khi khớp trọn từ (đầu / cuối là ranh giới), nên "Java" không khớp trong "JavaScript", "C" không khớp "C++".</li>
+ *   <li>Biến thể đánh dấu "~" trong từ điển ("Go", "REST"...) phải đúng hoa/thường như trong từ điển.</li>
+ * </ul>
+ * Automaton dựng lại khi từ điển được nạp lại.
+ */
+@Component
+@Slf4j
+public class LocalSkillExtractor {
+
+    // Bảng chữ cái sau khi gấp: 0 = ranh giới, 1-26 = a-z, 27-36 = 0-9, 37 = '+', 38 = '#', 39 = chữ khác (CJK...)
+    private static final int ALPHABET = 40;
+    private static final char BOUNDARY = ' ';
+    private static final char OTHER = '\u0001';
+    private static final char SKIP = '\u0000';
+    private static final char[] FOLD = buildFoldTable();
+
+    private final SkillLexicon skillLexicon;
+    private final Timer extractTimer;
+    private volatile Automaton automaton;
+
+    public LocalSkillExtractor(SkillLexicon skillLexicon, MeterRegistry meterRegistry) {
+        this.skillLexicon = skillLexicon;
+        this.extractTimer = Timer.builder("skill.extract.local").register(meterRegistry);
+        this.automaton = Automaton.build(skillLexicon.snapshot());
+    }
+
+    @EventListener
+    public void onSkillLexiconReloaded(SkillLexiconReloadedEvent event) {
+        automaton = Automaton.build(skillLexicon.snapshot());
+        log.info("Đã dựng lại automaton tách kỹ năng: {} mẫu, {} trạng thái",
+                automaton.patternCount(), automaton.stateCount());
+    }
+
+    /**
+     * Kỹ năng (tên chuẩn theo từ điển) xuất hiện trong các đoạn văn bản, bỏ trùng, theo thứ tự xuất hiện đầu tiên.
+     * Đoạn null / rỗng được bỏ qua.
+     */
+    public List<String> extract(String... texts) {
+        return extractTimer.record(() -> {
+            Automaton current = automaton;
+            LinkedHashSet<Integer> found = new LinkedHashSet<>();
+            for (String text : texts) {
+                if (text != null && !text.isEmpty()) {
+                    current.scan(text, found);
+                }
+            }
+            List<String> skills = new ArrayList<>(found.size());
+            for (int id : found) {
+                String name = skillLexicon.nameOf(id);
+                if (name != null) skills.add(name);
+            }
+            return skills;
+        });
+    }
+
+    // --- GẤP KÝ TỰ ---
+
+    /** Bảng gấp cho vùng Latin + tiếng Việt (U+0000 - U+1FFF); ngoài vùng này chỉ phân biệt chữ / không phải chữ. */
+    private static char[] buildFoldTable() {
+        char[] table = new char[0x2000];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = foldSlow((char) c);
+        }
+        return table;
+    }
+
+    private static char foldSlow(char c) {
+        if (c == 'đ' || c == 'Đ') return 'd';
+        if (Character.getType(c) == Character.NON_SPACING_MARK) return SKIP; // Dấu rời (văn bản dạng NFD)
+        char base = Character.toLowerCase(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0));
+        if ((base >= 'a' && base <= 'z') || (base >= '0' && base <= '9') || base == '+' || base == '#') return base;
+        return Character.isLetterOrDigit(c) ? OTHER : BOUNDARY;
+    }
+
+    private static char fold(char c) {
+        if (c < FOLD.length) return FOLD[c];
+        return Character.isLetterOrDigit(c) ? OTHER : BOUNDARY;
+    }
+
+    private static int symbol(char folded) {
+        if (folded >= 'a' && folded <= 'z') return 1 + folded - 'a';
+        if (folded >= '0' && folded <= '9') return 27 + folded - '0';
+        if (folded == '+') return 37;
+        if (folded == '#') return 38;
+        if (folded == OTHER) return 39;
+        return 0;
+    }
+
+    /**
+     * Gấp 1 chuỗi: chữ thường, bỏ dấu, ký tự phân cách -> 1 dấu cách; gộp ranh giới liên tiếp, bỏ ranh giới đầu / cuối.
+     * Dùng chung cho các chỉ mục tìm kiếm cần so khớp không dấu (vd CandidateSearchIndex).
+     */
+    public static String foldText(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char f = fold(text.charAt(i));
+            if (f == SKIP) continue;
+            if (f == BOUNDARY && (sb.length() == 0 || sb.charAt(sb.length() - 1) == BOUNDARY)) continue;
+            sb.append(f);
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == BOUNDARY) sb.setLength(len - 1);
+        return sb.toString();
+    }
+
+    // --- AUTOMATON ---
+
+    /**
+     * @param strictForm null nếu không phân biệt hoa/thường, ngược lại là các ký tự chữ/số/+/# của biến thể giữ nguyên hoa/thường
+     */
+    private record Pattern(int skillId, int length, String strictForm) {}
+
+    private static final class Automaton {
+        private final int[] delta;      // trạng thái * ALPHABET + ký hiệu -> trạng thái kế
+        private final int[][] outputs;  // trạng thái -> các mẫu kết thúc tại đây (đã gộp theo liên kết fail)
+        private final Pattern[] patterns;
+
+        private Automaton(int[] delta, int[][] outputs, Pattern[] patterns) {
+            this.delta = delta;
+            this.outputs = outputs;
+            this.patterns = patterns;
+        }
+
+        int patternCount() {
+            return patterns.length;
+        }
+
+        int stateCount() {
+            return outputs.length;
+        }
+
+        static Automaton build(SkillLexicon.Snapshot snapshot) {
+            List<Pattern> patterns = new ArrayList<>();
+            List<int[]> gotoRows = new ArrayList<>();
+            List<List<Integer>> outs = new ArrayList<>();
+            gotoRows.add(newRow());
+            outs.add(new ArrayList<>());
+
+            Set<String> seen = new HashSet<>();
+            for (SkillLexicon.Entry entry : snapshot.entries()) {
+                for (String variant : entry.variants()) {
+                    boolean strict = entry.strictVariants().contains(variant);
+                    String strictForm = strict ? strictForm(variant) : null;
+                    String spaced = foldText(variant);
+                    // Thêm bản viết liền để "SpringBoot" / "NodeJS" trong văn bản cũng khớp
+                    for (String form : new String[]{spaced, spaced.replace(" ", "")}) {
+                        if (form.isEmpty() || !seen.add(entry.id() + ":" + form + ":" + strictForm)) continue;
+                        int state = 0;
+                        for (int i = 0; i < form.length(); i++) {
+                            int sym = symbol(form.charAt(i));
+                            int next = gotoRows.get(state)[sym];
+                            if (next < 0) {
+                                next = gotoRows.size();
+                                gotoRows.get(state)[sym] = next;
+                                gotoRows.add(newRow());
+                                outs.add(new ArrayList<>());
+                            }
+                            state = next;
+                        }
+                        outs.get(state).add(patterns.size());
+                        patterns.add(new Pattern(entry.id(), form.length(), strictForm));
+                    }
+                }
+            }
+
+            // BFS tính liên kết fail, đồng thời lấp đầy bảng chuyển (DFA) để lúc quét không phải lần theo fail
+            int stateCount = gotoRows.size();
+            int[] delta = new int[stateCount * ALPHABET];
+            int[] fail = new int[stateCount];
+            int[][] outputs = new int[stateCount][];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int sym = 0; sym < ALPHABET; sym++) {
+                int next = gotoRows.get(0)[sym];
+                if (next < 0) {
+                    delta[sym] = 0;
+                } else {
+                    delta[sym] = next;
+                    fail[next] = 0;
+                    queue.add(next);
+                }
+            }
+            outputs[0] = toArray(outs.get(0));
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                List<Integer> merged = new ArrayList<>(outs.get(state));
+                for (int p : outputs[fail[state]]) merged.add(p);
+                outputs[state] = toArray(merged);
+                for (int sym = 0; sym < ALPHABET; sym++) {
+                    int next = gotoRows.get(state)[sym];
+                    if (next < 0) {
+                        delta[state * ALPHABET + sym] = delta[fail[state] * ALPHABET + sym];
+                    } else {
+                        delta[state * ALPHABET + sym] = next;
+                        fail[next] = delta[fail[state] * ALPHABET + sym];
+                        queue.add(next);
+                    }
+                }
+            }
+            return new Automaton(delta, outputs, patterns.toArray(new Pattern[0]));
+        }
+
+        /** Quét 1 đoạn văn bản, thêm id kỹ năng khớp được vào found. */
+        void scan(String text, Set<Integer> found) {
+            // Văn bản đã gấp + vị trí ký tự gốc tương ứng (để kiểm tra hoa/thường cho biến thể "~")
+            char[] folded = new char[text.length()];
+            int[] origin = new int[text.length()];
+            int n = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char f = fold(text.charAt(i));
+                if (f == SKIP) continue;
+                if (f == BOUNDARY && (n == 0 || folded[n - 1] == BOUNDARY)) continue;
+                folded[n] = f;
+                origin[n] = i;
+                n++;
+            }
+
+            // Các lần khớp {start, end, skillId}; khớp nằm trọn trong khớp dài hơn bị bỏ
+            // ("Spring Boot" không sinh thêm "Spring", "Machine Learning" không sinh thêm "Learning"...)
+            List<int[]> matches = new ArrayList<>();
+            int state = 0;
+            for (int i = 0; i < n; i++) {
+                state = delta[state * ALPHABET + symbol(folded[i])];
+                int[] out = outputs[state];
+                if (out.length == 0) continue;
+                boolean endsAtBoundary = i + 1 == n || folded[i + 1] == BOUNDARY;
+                if (!endsAtBoundary) continue;
+                for (int p : out) {
+                    Pattern pattern = patterns[p];
+                    int start = i - pattern.length() + 1;
+                    if (start > 0 && folded[start - 1] != BOUNDARY) continue;
+                    if (pattern.strictForm() != null && !matchesStrict(text, folded, origin, start, i, pattern.strictForm())) continue;
+                    addLongest(matches, start, i, pattern.skillId());
+                }
+            }
+            for (int[] match : matches) {
+                found.add(match[2]);
+            }
+        }
+
+        /** Khớp đến sau luôn kết thúc không sớm hơn khớp trước, nên chỉ cần so với đuôi danh sách. */
+        private static void addLongest(List<int[]> matches, int start, int end, int skillId) {
+            while (!matches.isEmpty() && matches.get(matches.size() - 1)[0] >= start) {
+                int[] last = matches.get(matches.size() - 1);
+                if (last[0] == start && last[1] == end) {
+                    if (last[2] == skillId) return; // Trùng hệt (bản viết liền / cách)
+                    break;                          // Cùng khoảng, khác kỹ năng -> giữ cả hai
+                }
+                matches.remove(matches.size() - 1);
+            }
+            for (int k = matches.size() - 1; k >= 0 && matches.get(k)[1] == end; k--) {
+                if (matches.get(k)[0] <= start) return; // Đã có khớp dài hơn bao trọn
+            }
+            matches.add(new int[]{start, end, skillId});
+        }
+
+        private static boolean matchesStrict(String text, char[] folded, int[] origin, int start, int end, String strictForm) {
+            int k = 0;
+            for (int i = start; i <= end; i++) {
+                if (folded[i] == BOUNDARY) continue;
+                if (k >= strictForm.length() || text.charAt(origin[i]) != strictForm.charAt(k)) return false;
+                k++;
+            }
+            return k == strictForm.length();
+        }
+
+        private static String strictForm(String variant) {
+            StringBuilder sb = new StringBuilder(variant.length());
+            for (int i = 0; i < variant.length(); i++) {
+                char c = variant.charAt(i);
+                if (Character.isLetterOrDigit(c) || c == '+' || c == '#') sb.append(c);
+            }
+            return sb.toString();
+        }
+
+        private static int[] newRow() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] arr = new int[list.size()];
+            for (int i = 0; i < arr.length; i++) arr[i] = list.get(i);
+            return arr;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package app.ai.service.matching;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap long có sức chứa cố định: giữ capacity khóa lớn nhất, không boxing.
+ * Dùng để lấy top-K theo khóa xếp hạng (xem {@link JobSkillIndex#rankKey}) mà không phải sắp xếp toàn bộ.
+ * Không thread-safe: mỗi luồng giữ heap riêng rồi gộp lại bằng {@link #offerAll}.
+ */
+public final class LongMinHeap {
+    private final long[] heap;
+    private int size;
+
+    public LongMinHeap(int capacity) {
+        this.heap = new long[Math.max(capacity, 0)];
+    }
+
+    public void offer(long key) {
+        if (heap.length == 0) return;
+        if (size < heap.length) {
+            heap[size] = key;
+            siftUp(size++);
+        } else if (key > heap[0]) {
+            heap[0] = key;
+            siftDown(0);
+        }
+    }
+
+    /** Gộp heap khác (vd kết quả của 1 phân đoạn song song) vào heap này. */
+    public void offerAll(LongMinHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.heap[i]);
+        }
+    }
+
+    public long[] sortedDescending() {
+        long[] out = Arrays.copyOf(heap, size);
+        Arrays.sort(out);
+        for (int i = 0, j = out.length - 1; i < j; i++, j--) {
+            long tmp = out[i];
+            out[i] = out[j];
+            out[j] = tmp;
+        }
+        return out;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= heap[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int smallest = left + 1 < size && heap[left + 1] < heap[left] ? left + 1 : left;
+            if (heap[i] <= heap[smallest]) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+}
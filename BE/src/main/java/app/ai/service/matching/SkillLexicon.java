@@ -0,0 +1,283 @@
+package app.ai.service.matching;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Từ điển kỹ năng: gom các cách viết khác nhau của 1 kỹ năng ("JS", "JavaScript", "ES6"...; "Làm việc nhóm" / "Teamwork")
+ * về 1 kỹ năng chuẩn với 1 id số nguyên.
+ * <p>
+ * - Id ổn định suốt vòng đời ứng dụng, kể cả khi nạp lại từ điển: id gắn với khóa của tên chuẩn, không bao giờ bị tái sử dụng.
+ * - Kỹ năng không có trong từ điển chỉ được cấp id (intern) qua {@link #idOf}, dành cho kỹ năng của job đang đăng.
+ *   Kỹ năng tự nhập của ứng viên không đi qua idOf nên không làm từ điển phình theo dữ liệu người dùng.
+ *   Số kỹ năng intern bị chặn bởi skill.lexicon.max-interned (gauge skill.lexicon.interned).
+ * - Từ điển nằm ở skill.lexicon.location (mặc định classpath:skills/skill-lexicon.txt), file thay đổi thì tự nạp lại.
+ */
+@Component
+@Slf4j
+public class SkillLexicon {
+
+    private final ResourceLoader resourceLoader;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter internRejectedCounter;
+
+    @Value("${skill.lexicon.location:classpath:skills/skill-lexicon.txt}")
+    private String location;
+
+    // Trần số khóa (tên chuẩn + kỹ năng lạ đã intern); vượt trần thì kỹ năng lạ mới không được cấp id
+    @Value("${skill.lexicon.max-interned:200000}")
+    private int maxInterned;
+
+    // Khóa (tên chuẩn hoặc kỹ năng lạ) -> id. Chỉ thêm, không xóa, để id không đổi giữa các lần nạp lại
+    private final Map<String, Integer> idByKey = new ConcurrentHashMap<>();
+    private final Map<Integer, String> nameById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private volatile Snapshot snapshot = new Snapshot(0, Map.of(), List.of());
+    private volatile long loadedLastModified = -1;
+
+    public SkillLexicon(ResourceLoader resourceLoader, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.resourceLoader = resourceLoader;
+        this.eventPublisher = eventPublisher;
+        this.internRejectedCounter = Counter.builder("skill.lexicon.intern.rejected").register(meterRegistry);
+        Gauge.builder("skill.lexicon.interned", idByKey, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 1 kỹ năng chuẩn trong từ điển cùng mọi cách viết của nó (kể cả chính tên chuẩn).
+     * strictVariants: các biến thể đánh dấu "~" trong file (dễ trùng từ thường như "Go", "C", "REST"),
+     * khi dò trong văn bản tự do phải khớp đúng hoa/thường.
+     */
+    public record Entry(int id, String name, List<String> variants, Set<String> strictVariants) {}
+
+    /** Bản từ điển đang dùng, bất biến: khóa biến thể -> id kỹ năng chuẩn. */
+    public record Snapshot(int version, Map<String, Integer> aliasIds, List<Entry> entries) {}
+
+    @PostConstruct
+    public void init() {
+        try {
+            load(false);
+        } catch (Exception e) {
+            // Thiếu từ điển vẫn chạy được, chỉ mất khả năng gom đồng nghĩa
+            log.error("Không nạp được từ điển kỹ năng {}: {}", location, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${skill.lexicon.reload-interval-ms:60000}")
+    public void reloadIfChanged() {
+        try {
+            long lastModified = resourceLoader.getResource(location).lastModified();
+            if (lastModified != loadedLastModified) {
+                load(true);
+            }
+        } catch (IOException e) {
+            // Resource nằm trong jar không có lastModified -> chỉ nạp lại thủ công
+        } catch (Exception e) {
+            log.warn("Lỗi nạp lại từ điển kỹ năng (giữ bản cũ): {}", e.getMessage());
+        }
+    }
+
+    /** Nạp lại thủ công (vd admin vừa sửa file). Lỗi thì giữ nguyên bản cũ và ném exception. */
+    public Snapshot reload() throws IOException {
+        return load(true);
+    }
+
+    private synchronized Snapshot load(boolean notify) throws IOException {
+        Resource resource = resourceLoader.getResource(location);
+        long lastModified = -1;
+        try {
+            lastModified = resource.lastModified();
+        } catch (IOException ignored) {
+            // Không hỗ trợ lastModified
+        }
+
+        Map<String, Integer> aliasIds = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\|");
+                String name = stripStrictMark(parts[0].trim());
+                String nameKey = key(name);
+                if (nameKey.isEmpty()) {
+                    log.warn("Từ điển kỹ năng dòng {}: thiếu tên chuẩn, bỏ qua", lineNo);
+                    continue;
+                }
+                int id = idByKey.computeIfAbsent(nameKey, k -> nextId.getAndIncrement());
+                nameById.put(id, name); // Tên chuẩn trong từ điển luôn thắng tên đã intern trước đó
+
+                List<String> variants = new ArrayList<>();
+                Set<String> strictVariants = new HashSet<>();
+                for (String part : parts) {
+                    String variant = part.trim();
+                    boolean strict = variant.startsWith("~");
+                    variant = stripStrictMark(variant);
+                    String variantKey = key(variant);
+                    if (variantKey.isEmpty()) continue;
+                    Integer existing = aliasIds.putIfAbsent(variantKey, id);
+                    if (existing != null && existing != id) {
+                        log.warn("Từ điển kỹ năng dòng {}: '{}' đã thuộc về '{}', bỏ qua",
+                                lineNo, variant, nameById.get(existing));
+                        continue;
+                    }
+                    variants.add(variant);
+                    if (strict) strictVariants.add(variant);
+                }
+                entries.add(new Entry(id, name, List.copyOf(variants), Set.copyOf(strictVariants)));
+            }
+        }
+
+        Snapshot fresh = new Snapshot(snapshot.version() + 1, Map.copyOf(aliasIds), List.copyOf(entries));
+        snapshot = fresh;
+        loadedLastModified = lastModified;
+        log.info("Đã nạp từ điển kỹ năng v{}: {} kỹ năng chuẩn, {} biến thể",
+                fresh.version(), entries.size(), aliasIds.size());
+        if (notify) {
+            eventPublisher.publishEvent(new SkillLexiconReloadedEvent(this, fresh.version()));
+        }
+        return fresh;
+    }
+
+    private static String stripStrictMark(String variant) {
+        return variant.startsWith("~") ? variant.substring(1).trim() : variant;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // --- TRA CỨU ---
+
+    /**
+     * Id của kỹ năng (tên chuẩn / biến thể trong từ điển). Kỹ năng lạ được cấp id mới theo khóa chuẩn hóa.
+     * Trả về -1 nếu chuỗi rỗng sau chuẩn hóa hoặc đã chạm trần skill.lexicon.max-interned.
+     * Chỉ dùng cho kỹ năng của job (dựng chỉ mục job); KHÔNG dùng cho chuỗi tự nhập của ứng viên.
+     */
+    public int idOf(String skill) {
+        String key = key(skill);
+        if (key.isEmpty()) return -1;
+        Integer id = snapshot.aliasIds().get(key);
+        if (id != null) return id;
+        Integer existing = idByKey.get(key);
+        if (existing != null) return existing;
+        if (idByKey.size() >= maxInterned) {
+            internRejectedCounter.increment();
+            return -1;
+        }
+        return idByKey.computeIfAbsent(key, k -> {
+            int newId = nextId.getAndIncrement();
+            nameById.put(newId, skill.trim());
+            return newId;
+        });
+    }
+
+    /** Id kỹ năng chuẩn nếu chuỗi là tên / biến thể trong từ điển, không thì -1 (bỏ qua kỹ năng lạ đã intern). */
+    public int lexiconId(String skill) {
+        String key = key(skill);
+        if (key.isEmpty()) return -1;
+        return snapshot.aliasIds().getOrDefault(key, -1);
+    }
+
+    /** Như {@link #idOf} nhưng không cấp id cho kỹ năng lạ (trả về -1). Dùng khi ĐỌC / truy vấn. */
+    public int find(String skill) {
+        String key = key(skill);
+        if (key.isEmpty()) return -1;
+        Integer id = snapshot.aliasIds().get(key);
+        if (id != null) return id;
+        return idByKey.getOrDefault(key, -1);
+    }
+
+    /** Tập id (bitset) của danh sách kỹ năng, bỏ qua kỹ năng chưa từng gặp. */
+    public BitSet idSet(Collection<String> skills) {
+        BitSet set = new BitSet();
+        if (skills == null) return set;
+        for (String skill : skills) {
+            int id = find(skill);
+            if (id >= 0) set.set(id);
+        }
+        return set;
+    }
+
+    /** Tên hiển thị của kỹ năng: tên chuẩn nếu có trong từ điển, không thì giữ nguyên chuỗi gốc. */
+    public String canonicalName(String skill) {
+        String key = key(skill);
+        Integer id = key.isEmpty() ? null : snapshot.aliasIds().get(key);
+        return id != null ? nameById.get(id) : (skill == null ? "" : skill.trim());
+    }
+
+    public String nameOf(int id) {
+        return nameById.get(id);
+    }
+
+    /**
+     * Chuẩn hóa danh sách kỹ năng lúc GHI: đổi về tên chuẩn, bỏ trùng (cùng kỹ năng chuẩn hoặc cùng khóa chuẩn hóa),
+     * bỏ chuỗi rỗng, giữ thứ tự. Áp cho JobPosting.extractedSkills và CandidateProfile.skills để DB chỉ chứa tên chuẩn.
+     * Không intern kỹ năng lạ (dữ liệu người dùng nhập tùy ý).
+     */
+    public List<String> canonicalize(Collection<String> skills) {
+        List<String> result = new ArrayList<>();
+        if (skills == null) return result;
+        Set<Object> seen = new HashSet<>();
+        for (String skill : skills) {
+            String key = key(skill);
+            if (key.isEmpty()) continue;
+            Integer id = snapshot.aliasIds().get(key);
+            if (seen.add(id != null ? (Object) id : key)) {
+                result.add(canonicalName(skill));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Khóa chuẩn hóa: chữ thường, bỏ dấu tiếng Việt (đ -> d), chỉ giữ chữ, số, '+' và '#'.
+     * Nhờ vậy "React.js" = "react js" = "ReactJS", "Tiếng Anh" = "tieng anh", còn "C++" / "C#" vẫn khác "C".
+     */
+    public static String key(String skill) {
+        if (skill == null || skill.isEmpty()) return "";
+        String source = skill;
+        for (int i = 0; i < skill.length(); i++) {
+            if (skill.charAt(i) > 0x7F) {
+                source = Normalizer.normalize(skill, Normalizer.Form.NFD); // Tách dấu ra thành ký tự riêng
+                break;
+            }
+        }
+        StringBuilder sb = new StringBuilder(source.length());
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == 'đ' || c == 'Đ') {
+                sb.append('d');
+            } else if (c == '+' || c == '#') {
+                sb.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+            // Dấu (NON_SPACING_MARK), khoảng trắng, . - _ / ... đều bị bỏ
+        }
+        return sb.toString();
+    }
+}
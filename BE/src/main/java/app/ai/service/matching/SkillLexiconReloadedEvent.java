@@ -0,0 +1,18 @@
+package app.ai.service.matching;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Từ điển kỹ năng vừa được nạp lại: id của 1 số biến thể có thể đã đổi (vd "golang" nay thuộc "Go"),
+ * các chỉ mục dựng từ id kỹ năng cần dựng lại.
+ */
+@Getter
+public class SkillLexiconReloadedEvent extends ApplicationEvent {
+    private final int version;
+
+    public SkillLexiconReloadedEvent(Object source, int version) {
+        super(source);
+        this.version = version;
+    }
+}
@@ -21,6 +21,7 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import app.admin.service.SystemSettingService;
+import jakarta.servlet.DispatcherType;
 
 import java.util.Arrays;
 import java.util.List;
@@ -52,6 +53,8 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
             )
             .authorizeHttpRequests(auth -> auth
+                // Async dispatch của SSE (chat/phỏng vấn streaming): request gốc đã được xác thực
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // ======================================================
                 // 1. PUBLIC ENDPOINTS (Không cần đăng nhập)
                 // ======================================================
@@ -61,7 +64,8 @@ public class SecurityConfig {
                     "/swagger-ui/**",     // Swagger UI
                     "/v3/api-docs/**", 
                     "/api/recruiter/jobs/public/**",   // API Docs
-                    "/api/chat/ask"
+                    "/api/chat/ask",
+                    "/api/chat/ask/stream"
                 ).permitAll()
                 // ======================================================
                 // 2. PAYMENT (Cho phép mọi User đã login thực hiện thanh toán)
@@ -119,7 +123,7 @@ public class SecurityConfig {
                 // ======================================================
                 
                 // Tìm kiếm ứng viên (Candidate Search): Dành cho Recruiter (Thường + VIP)
-                .requestMatchers("/api/recruitment/candidates/**")
+                .requestMatchers("/api/recruitment/candidates/**", "/api/recruitment/search/**")
                     .hasAnyAuthority("RECRUITER", "RECRUITER_VIP", "ADMIN")
 
                 .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/companies/**").permitAll()
@@ -32,6 +32,7 @@ import app.content.model.Company;
 // --- MỚI: Import Event & Enum ---
 import org.springframework.context.ApplicationEventPublisher;
 import app.gamification.event.PointEvent;
+import app.candidate.event.CandidateProfileChangedEvent;
 import app.gamification.model.UserPointAction;
 
 import java.time.LocalDateTime;
@@ -136,6 +137,8 @@ public class AuthService {
         user.setIsEmailVerified(true);
         user.setVerificationCode(null);
         userRepository.save(user);
+        // Tài khoản vừa kích hoạt -> hồ sơ ứng viên (nếu có) được đưa vào chỉ mục tìm kiếm
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
         
         log.info("User verified email successfully: {}", email);
     }
@@ -246,15 +249,22 @@ public class AuthService {
                 user.setGoogleId(googleId);
                 user.setAuthProvider(AuthProvider.GOOGLE);
             }
+            boolean searchableChanged = false;
             if ((user.getProfileImageUrl() == null || user.getProfileImageUrl().isEmpty()) && pictureUrl != null) {
                 user.setProfileImageUrl(pictureUrl);
+                searchableChanged = true;
             }
             if (user.getStatus() != UserStatus.ACTIVE && user.getStatus() != UserStatus.BANNED) {
                 user.setStatus(UserStatus.ACTIVE);
                 user.setIsEmailVerified(true);
+                searchableChanged = true;
             }
             user.setLastLoginAt(LocalDateTime.now());
             userRepository.save(user);
+            if (searchableChanged) {
+                // Ảnh đại diện / trạng thái kích hoạt ảnh hưởng kết quả tìm kiếm ứng viên -> báo chỉ mục cập nhật
+                eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
+            }
             }
 
             if (isNewUser && (user.getUserRole() == UserRole.RECRUITER || user.getUserRole() == UserRole.RECRUITER_VIP)) {
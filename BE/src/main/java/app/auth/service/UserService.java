@@ -3,6 +3,7 @@ package app.auth.service;
 
 import lombok.RequiredArgsConstructor; // Lombok: Tự động tạo constructor với các trường final (hoặc @NonNull) -> thuận tiện cho constructor injection
 import lombok.extern.slf4j.Slf4j;      // Lombok: Tự động cung cấp logger 'log' (SLF4J) cho class, dùng log.info/log.error...
+import org.springframework.context.ApplicationEventPublisher;          // Spring: bắn event để các chỉ mục trong bộ nhớ cập nhật theo
 import org.springframework.security.core.context.SecurityContextHolder; // Spring Security: truy cập thông tin Authentication hiện tại (user đang đăng nhập)
 import org.springframework.security.crypto.password.PasswordEncoder;    // Spring Security: mã hoá & kiểm tra mật khẩu an toàn (BCrypt, v.v.)
 import org.springframework.stereotype.Service;                         // Spring: đánh dấu lớp là một Service (bean chứa logic nghiệp vụ)
@@ -13,6 +14,7 @@ import app.auth.exception.InvalidCredentialsException;              // Exception
 import app.auth.exception.UserNotFoundException;                    // Exception tuỳ chỉnh: ném khi không tìm thấy người dùng
 import app.auth.model.User;
 import app.auth.repository.UserRepository;                          // Repository: thao tác với DB cho User (findByEmail, save, delete, ...)
+import app.candidate.event.CandidateProfileChangedEvent;            // Event: báo chỉ mục tìm kiếm ứng viên cập nhật / gỡ hồ sơ của tài khoản
 
 // @Service: Đăng ký bean tầng service trong Spring Container
 // @RequiredArgsConstructor (Lombok): Tạo constructor gồm các trường final để Spring tự động inject (constructor injection)
@@ -28,6 +30,8 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     // Inject RefreshTokenService để xử lý refresh token (invalidation khi thay đổi mật khẩu/xoá tài khoản)
     private final RefreshTokenService refreshTokenService;
+    // Bắn event sau khi đổi hồ sơ / xoá tài khoản (chỉ mục tìm kiếm ứng viên lắng nghe)
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Lấy thông tin người dùng hiện tại từ SecurityContext
@@ -78,6 +82,8 @@ public class UserService {
         user = userRepository.save(user);
         // Ghi log thông tin cập nhật
         log.info("Profile updated for user: {}", email);
+        // Tên / ảnh đại diện hiển thị trong kết quả tìm kiếm ứng viên -> báo chỉ mục cập nhật
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
         
         // Trả về DTO
         return convertToUserResponse(user);
@@ -140,6 +146,7 @@ public class UserService {
         
         // Delete user: xoá tài khoản khỏi DB
         userRepository.delete(user);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, user.getId()));
         
         // Ghi log sự kiện xoá
         log.info("Account deleted for user: {}", email);
@@ -3,13 +3,17 @@ package app.candidate.controller;
 import app.auth.dto.response.MessageResponse;
 import app.candidate.dto.request.CandidateProfileUpdateRequest;
 import app.candidate.dto.response.CandidateProfileResponse; // 👈 Dùng DTO
+import app.candidate.dto.response.CvIngestionStatusResponse;
 import app.candidate.service.CandidateService;
+import app.candidate.service.CvIngestionService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 import app.auth.model.User;
 import app.auth.repository.UserRepository;
 
@@ -19,6 +23,7 @@ import app.auth.repository.UserRepository;
 public class CandidateProfileController {
 
     private final CandidateService candidateService;
+    private final CvIngestionService cvIngestionService;
     private final UserRepository userRepository;
 
     @PostMapping("/upload-cv")
@@ -30,19 +35,33 @@ public class CandidateProfileController {
             User user = userRepository.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
-            // 1. Xử lý upload và phân tích (Entity ẩn bên trong Service)
-            candidateService.uploadAndAnalyzeCV(user.getId(), file);
+            // Chỉ nhận file và đưa vào pipeline nền (upload + trích xuất + AI), trả về ngay mã theo dõi
+            CvIngestionStatusResponse status = cvIngestionService.submit(user.getId(), file.getBytes(), file.getOriginalFilename());
 
-            // 2. Gọi hàm lấy DTO an toàn để trả về FE
-            CandidateProfileResponse response = candidateService.getProfileDTO(user.getId());
-
-            return ResponseEntity.ok(MessageResponse.success("Phân tích CV thành công", response));
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(MessageResponse.success("Đã nhận CV, đang phân tích", status));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(MessageResponse.error(e.getReason()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body(MessageResponse.error("Lỗi xử lý CV: " + e.getMessage()));
         }
     }
 
+    // Theo dõi tiến độ phân tích CV (hoặc nghe WebSocket /user/queue/cv-ingestion)
+    @GetMapping("/upload-cv/{ingestionId}")
+    public ResponseEntity<?> getUploadStatus(@PathVariable String ingestionId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String email = authentication.getName();
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        return cvIngestionService.getStatus(ingestionId, user.getId())
+                .<ResponseEntity<?>>map(status -> ResponseEntity.ok(MessageResponse.success("Tiến độ phân tích CV", status)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(MessageResponse.error("Không tìm thấy phiên phân tích CV: " + ingestionId)));
+    }
+
     @GetMapping("/me")
     public ResponseEntity<?> getMyProfile() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -10,6 +10,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -37,6 +38,24 @@ public class RecommendationController {
         }
     }
 
+    // API 1b: Gợi ý việc làm phù hợp theo trang (top-K, DTO gọn không kèm mô tả, phân trang bằng con trỏ)
+    // URL: /api/candidate/recommendations/matching/top?size=20&cursor=...
+    @GetMapping("/matching/top")
+    public ResponseEntity<?> getTopMatchingJobs(@RequestParam(required = false) String cursor,
+                                                @RequestParam(defaultValue = "20") int size) {
+        try {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            User user = userRepository.findByEmail(auth.getName())
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            var page = recommendationService.getMatchingJobsPage(user.getId(), cursor, size);
+            return ResponseEntity.ok(MessageResponse.success("Gợi ý việc làm phù hợp thành công", page));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(MessageResponse.error(e.getMessage()));
+        }
+    }
+
     @GetMapping("/all")
     public ResponseEntity<?> getAllJobs() {
         try {
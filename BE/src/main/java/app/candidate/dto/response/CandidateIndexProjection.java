@@ -0,0 +1,12 @@
+package app.candidate.dto.response;
+
+/**
+ * Các cột của hồ sơ ứng viên cần cho chỉ mục tìm kiếm (không nạp entity, không kèm aboutMe / educationJson).
+ */
+public interface CandidateIndexProjection {
+    Long getProfileId();
+    Long getUserId();
+    String getFullName();
+    String getAvatarUrl();
+    String getAddress();
+}
@@ -0,0 +1,19 @@
+package app.candidate.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+public class CvIngestionStatusResponse {
+    private String ingestionId;
+    private String status;              // PENDING / RUNNING / COMPLETED / FAILED / SUPERSEDED (đã có CV mới hơn)
+    private Map<String, String> stages; // UPLOAD, EXTRACT, PARSE, MERGE -> PENDING / RUNNING / DONE / FAILED / SKIPPED
+    private String cvFilePath;          // Có sau khi bước UPLOAD xong
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,29 @@
+package app.candidate.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 1 thẻ job trong danh sách gợi ý: chỉ thông tin hiển thị + điểm phù hợp, mô tả / yêu cầu chỉ là đoạn trích ngắn
+ * (xem đầy đủ qua GET /api/recruiter/jobs/public/{id}).
+ */
+@Data
+@Builder
+public class JobRecommendationItem {
+    private Long id;
+    private String title;
+    private String company;
+    private String companyLogo;
+    private String location;
+    private String salary;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiryDate;
+    private String descriptionSnippet;
+    private String requirementsSnippet;
+    private int matchScore;
+    private List<String> skillsFound;
+    private List<String> skillsMissing;
+}
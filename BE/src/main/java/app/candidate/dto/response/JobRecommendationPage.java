@@ -0,0 +1,19 @@
+package app.candidate.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 1 trang gợi ý việc làm theo thứ tự điểm giảm dần.
+ * nextCursor: truyền lại ở tham số cursor để lấy trang kế, null khi đã hết.
+ */
+@Data
+@Builder
+public class JobRecommendationPage {
+    private List<JobRecommendationItem> items;
+    private String nextCursor;
+    private boolean hasMore;
+    private int totalMatched;
+}
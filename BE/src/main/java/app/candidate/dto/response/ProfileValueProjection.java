@@ -0,0 +1,9 @@
+package app.candidate.dto.response;
+
+/**
+ * 1 cặp (hồ sơ, giá trị) khi đọc hàng loạt collection con của hồ sơ: kỹ năng, vị trí kinh nghiệm.
+ */
+public interface ProfileValueProjection {
+    Long getProfileId();
+    String getContent();
+}
@@ -0,0 +1,19 @@
+package app.candidate.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Bắn ra mỗi khi hồ sơ ứng viên đổi tên / địa chỉ / kỹ năng / kinh nghiệm / ảnh đại diện, hoặc tài khoản bị xóa,
+ * bị khóa / mở khóa, được kích hoạt hay đổi vai trò.
+ * Chỉ mục tìm kiếm ứng viên (CandidateSearchIndex) nghe sự kiện này để cập nhật riêng hồ sơ đó.
+ */
+@Getter
+public class CandidateProfileChangedEvent extends ApplicationEvent {
+    private final Long userId;
+
+    public CandidateProfileChangedEvent(Object source, Long userId) {
+        super(source);
+        this.userId = userId;
+    }
+}
@@ -1,11 +1,14 @@
 package app.candidate.repository;
 
+import app.candidate.dto.response.CandidateIndexProjection;
+import app.candidate.dto.response.ProfileValueProjection;
 import app.candidate.model.CandidateProfile;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -17,4 +20,31 @@ public interface CandidateProfileRepository extends JpaRepository<CandidateProfi
     @Query("SELECT p FROM CandidateProfile p LEFT JOIN FETCH p.skills WHERE p.user.id = :userId")
     Optional<CandidateProfile> findByUserIdWithSkills(@Param("userId") Long userId);
 
+    // --- Nạp chỉ mục tìm kiếm ứng viên: chỉ đọc cột cần thiết, không dựng entity ---
+    // Chỉ tài khoản ứng viên (CANDIDATE / CANDIDATE_VIP) đang ACTIVE mới được nhà tuyển dụng tìm thấy
+    String SEARCHABLE_USER = "u.userRole IN (app.auth.model.enums.UserRole.CANDIDATE, app.auth.model.enums.UserRole.CANDIDATE_VIP) " +
+            "AND u.status = app.auth.model.enums.UserStatus.ACTIVE";
+
+    @Query("SELECT p.id AS profileId, u.id AS userId, COALESCE(p.fullName, u.fullName) AS fullName, " +
+           "COALESCE(u.profileImageUrl, p.avatarUrl) AS avatarUrl, p.address AS address " +
+           "FROM CandidateProfile p JOIN p.user u WHERE " + SEARCHABLE_USER)
+    List<CandidateIndexProjection> findAllForSearchIndex();
+
+    @Query("SELECT p.id AS profileId, u.id AS userId, COALESCE(p.fullName, u.fullName) AS fullName, " +
+           "COALESCE(u.profileImageUrl, p.avatarUrl) AS avatarUrl, p.address AS address " +
+           "FROM CandidateProfile p JOIN p.user u WHERE u.id = :userId AND " + SEARCHABLE_USER)
+    Optional<CandidateIndexProjection> findForSearchIndexByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT p.id AS profileId, s AS content FROM CandidateProfile p JOIN p.skills s")
+    List<ProfileValueProjection> findAllSkillsForSearchIndex();
+
+    @Query("SELECT p.id AS profileId, s AS content FROM CandidateProfile p JOIN p.skills s WHERE p.id = :profileId")
+    List<ProfileValueProjection> findSkillsForSearchIndex(@Param("profileId") Long profileId);
+
+    @Query("SELECT e.candidateProfile.id AS profileId, e.role AS content FROM Experience e WHERE e.role IS NOT NULL")
+    List<ProfileValueProjection> findAllRolesForSearchIndex();
+
+    @Query("SELECT e.candidateProfile.id AS profileId, e.role AS content FROM Experience e " +
+           "WHERE e.role IS NOT NULL AND e.candidateProfile.id = :profileId")
+    List<ProfileValueProjection> findRolesForSearchIndex(@Param("profileId") Long profileId);
 }
\ No newline at end of file
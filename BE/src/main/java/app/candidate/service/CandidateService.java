@@ -4,10 +4,12 @@ import app.ai.models.Experience;
 import app.ai.service.cv.CVAnalysisService;
 import app.ai.service.cv.gemini.dto.ExperienceDTO;
 import app.ai.service.cv.gemini.dto.GeminiResponse;
+import app.ai.service.matching.SkillLexicon;
 import app.auth.model.User;
 import app.auth.repository.UserRepository;
 import app.candidate.dto.request.CandidateProfileUpdateRequest;
 import app.candidate.dto.response.CandidateProfileResponse;
+import app.candidate.event.CandidateProfileChangedEvent;
 import app.candidate.model.CandidateProfile;
 import app.candidate.repository.CandidateProfileRepository;
 import app.recruitment.repository.CVAnalysisResultRepository;
@@ -43,6 +45,7 @@ public class CandidateService {
     
     // --- SỬA: Dùng EventPublisher thay vì LeaderboardService ---
     private final ApplicationEventPublisher eventPublisher;
+    private final SkillLexicon skillLexicon;
 
     @Transactional(readOnly = true)
     public CandidateProfileResponse getProfileDTO(Long userId) {
@@ -80,19 +83,15 @@ public class CandidateService {
     }
 
     /**
-     * Upload CV, Phân tích AI và Lưu vào DB
+     * Bước cuối của pipeline nhận CV (CvIngestionService): ghi kết quả AI vào hồ sơ.
+     * Upload Cloudinary, trích xuất text và gọi Gemini đã chạy xong ở luồng nền,
+     * transaction ở đây chỉ gồm các thao tác DB nên giữ connection rất ngắn.
      */
     @Transactional
-    public CandidateProfile uploadAndAnalyzeCV(Long userId, MultipartFile file) throws Exception {
+    public CandidateProfile applyParsedCV(Long userId, String cvOnlineUrl, GeminiResponse aiResult) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found: " + userId));
 
-        // Upload file lấy link
-        String cvOnlineUrl = cloudinaryService.uploadFile(file);
-
-        // AI phân tích
-        GeminiResponse aiResult = cvAnalysisService.analyzeCV(file);
-
         // Lấy profile cũ hoặc tạo mới
         CandidateProfile profile = candidateProfileRepository.findByUserId(userId)
                 .orElse(CandidateProfile.builder()
@@ -103,12 +102,17 @@ public class CandidateService {
 
         // Update dữ liệu từ AI
         updateProfileFromAI(profile, aiResult);
+        String oldCvUrl = profile.getCvFilePath();
         profile.setCvFilePath(cvOnlineUrl);
+        if (oldCvUrl != null && !oldCvUrl.equals(cvOnlineUrl)) {
+            cvAnalysisService.invalidateCvText(oldCvUrl);
+        }
 
         // Xóa cache kết quả chấm điểm cũ
         cvAnalysisResultRepository.deleteByUserId(userId);
         
         CandidateProfile savedProfile = candidateProfileRepository.save(profile);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, userId));
 
         // --- SỬA: Bắn Event UPLOAD_CV ---
         try {
@@ -137,6 +141,7 @@ public class CandidateService {
         user.setProfileImageUrl(avatarUrl);
         userRepository.save(user);
         candidateProfileRepository.save(profile);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, userId));
 
         return avatarUrl;
     }
@@ -170,7 +175,7 @@ public class CandidateService {
         if (request.getWebsiteUrl() != null) profile.setWebsiteUrl(request.getWebsiteUrl());
 
         if (request.getSkills() != null) {
-            profile.setSkills(request.getSkills());
+            profile.setSkills(skillLexicon.canonicalize(request.getSkills()));
         }
 
         if (request.getExperiences() != null) {
@@ -201,7 +206,9 @@ public class CandidateService {
 
         cvAnalysisResultRepository.deleteByUserId(userId);
 
-        return candidateProfileRepository.save(profile);
+        CandidateProfile savedProfile = candidateProfileRepository.save(profile);
+        eventPublisher.publishEvent(new CandidateProfileChangedEvent(this, userId));
+        return savedProfile;
     }
 
     public CandidateProfile getProfile(Long userId) {
@@ -225,7 +232,7 @@ public class CandidateService {
             }
 
             if (result.getSkills() != null && !result.getSkills().isEmpty()) {
-                profile.setSkills(new ArrayList<>(result.getSkills()));
+                profile.setSkills(skillLexicon.canonicalize(result.getSkills()));
             }
 
             if (result.getExperiences() != null) {
@@ -0,0 +1,342 @@
+package app.candidate.service;
+
+import app.ai.service.cv.extractortext.CVTextExtractor;
+import app.ai.service.cv.extractortext.CvFileContent;
+import app.ai.service.cv.extractortext.ExtractionExecutor;
+import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.cv.gemini.dto.GeminiResponse;
+import app.ai.service.matching.LocalSkillExtractor;
+import app.candidate.dto.response.CvIngestionStatusResponse;
+import app.exception.AiUnavailableException;
+import app.service.CloudinaryService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Pipeline nhận CV chạy nền: request upload trả về ngay mã ingestion (202), phần nặng chạy ở luồng riêng.
+ *
+ *   UPLOAD (Cloudinary) ──────────────┐
+ *                                     ├──> MERGE (lưu hồ sơ, transaction ngắn)
+ *   EXTRACT (PDF/DOCX/OCR) ──> PARSE ─┘        (Gemini)
+ *
+ * - UPLOAD và EXTRACT chạy song song; không bước nào giữ DB connection khi chờ mạng, chỉ MERGE mở transaction.
+ * - Tiến độ: GET /api/candidate/profile/upload-cv/{id} hoặc WebSocket /user/queue/cv-ingestion.
+ * - Trạng thái giữ trong RAM cv.ingestion.retention-minutes phút sau khi kết thúc.
+ * - Cùng 1 user upload nhiều CV liên tiếp: MERGE chạy tuần tự theo user và bỏ qua ingestion cũ hơn
+ *   ingestion đã MERGE (trạng thái SUPERSEDED), để CV cũ xong sau không ghi đè CV mới.
+ */
+@Service
+@Slf4j
+public class CvIngestionService {
+
+    public static final String STAGE_UPLOAD = "UPLOAD";
+    public static final String STAGE_EXTRACT = "EXTRACT";
+    public static final String STAGE_PARSE = "PARSE";
+    public static final String STAGE_MERGE = "MERGE";
+    private static final int MERGE_LOCK_STRIPES = 64;
+
+    private final CloudinaryService cloudinaryService;
+    private final CVTextExtractor textExtractor;
+    private final ExtractionExecutor extractionExecutor;
+    private final GeminiService geminiService;
+    private final LocalSkillExtractor localSkillExtractor;
+    private final CandidateService candidateService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxInFlight;
+    private final long retentionMinutes;
+    private final Map<String, Ingestion> ingestions = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Thứ tự nhận CV (tăng dần) và ingestion mới nhất đã MERGE của từng user
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> lastMergedSeqByUser = new ConcurrentHashMap<>();
+    private final Object[] mergeLocks = new Object[MERGE_LOCK_STRIPES];
+
+    public CvIngestionService(CloudinaryService cloudinaryService,
+                              CVTextExtractor textExtractor,
+                              ExtractionExecutor extractionExecutor,
+                              GeminiService geminiService,
+                              LocalSkillExtractor localSkillExtractor,
+                              CandidateService candidateService,
+                              SimpMessagingTemplate messagingTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${cv.ingestion.threads:6}") int threads,
+                              @Value("${cv.ingestion.max-in-flight:20}") int maxInFlight,
+                              @Value("${cv.ingestion.retention-minutes:60}") long retentionMinutes) {
+        this.cloudinaryService = cloudinaryService;
+        this.textExtractor = textExtractor;
+        this.extractionExecutor = extractionExecutor;
+        this.geminiService = geminiService;
+        this.localSkillExtractor = localSkillExtractor;
+        this.candidateService = candidateService;
+        this.messagingTemplate = messagingTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxInFlight = maxInFlight;
+        this.retentionMinutes = retentionMinutes;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Số ingestion đang chạy đã bị chặn bởi maxInFlight -> queue không thể phình quá 4 bước x maxInFlight
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "cv-ingestion-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        for (int i = 0; i < mergeLocks.length; i++) {
+            mergeLocks[i] = new Object();
+        }
+        Gauge.builder("cv.ingestion.in_flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    /**
+     * Nhận CV (đã đọc sẵn bytes vì MultipartFile hết hiệu lực khi request kết thúc) và chạy pipeline nền.
+     */
+    public CvIngestionStatusResponse submit(Long userId, byte[] content, String originalFileName) {
+        // Pool trích xuất đã kín -> từ chối ngay từ đầu vào, không nhận thêm việc sẽ phải xếp hàng
+        if (extractionExecutor.isSaturated()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Hệ thống đang xử lý nhiều CV, vui lòng thử lại sau ít phút");
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Hệ thống đang xử lý nhiều CV, vui lòng thử lại sau ít phút");
+        }
+        Ingestion ingestion = new Ingestion(UUID.randomUUID().toString(), userId, sequence.incrementAndGet());
+        ingestions.put(ingestion.id, ingestion);
+        long startNanos = System.nanoTime();
+
+        CompletableFuture<String> upload = stage(ingestion, STAGE_UPLOAD,
+                () -> cloudinaryService.uploadFile(content, originalFileName));
+        CompletableFuture<ExtractedCv> extract = stage(ingestion, STAGE_EXTRACT, () -> {
+            CvFileContent file = CvFileContent.of(content, content.length);
+            return new ExtractedCv(file.sha256Hex(), textExtractor.extractText(file, null));
+        });
+        CompletableFuture<ParsedCv> parse = extract.thenCompose(extracted -> stage(ingestion, STAGE_PARSE,
+                () -> new ParsedCv(extracted.contentHash(), parseWithLocalSkills(extracted.text()))));
+        upload.thenCombine(parse, UploadAndParse::new)
+                .thenCompose(done -> stage(ingestion, STAGE_MERGE, () -> {
+                    ingestion.setCvUrl(done.cvUrl());
+                    // Chỉ ghi liên kết URL -> hash, không trích xuất lại (văn bản chưa trọn vẹn thì không có gì để gắn)
+                    textExtractor.linkUrl(done.cv().contentHash(), done.cvUrl());
+                    synchronized (mergeLock(userId)) {
+                        Long lastMerged = lastMergedSeqByUser.get(userId);
+                        if (lastMerged != null && lastMerged > ingestion.seq) {
+                            log.info("Bỏ ingestion CV {} của user {}: đã có CV mới hơn được lưu", ingestion.id, userId);
+                            ingestion.supersede();
+                            return null;
+                        }
+                        candidateService.applyParsedCV(userId, done.cvUrl(), done.cv().parsed());
+                        lastMergedSeqByUser.put(userId, ingestion.seq);
+                    }
+                    return null;
+                }))
+                .whenComplete((ignored, error) -> {
+                    inFlight.decrementAndGet();
+                    Timer.builder("cv.ingestion.duration")
+                            .tag("outcome", error == null ? "completed" : "failed")
+                            .register(meterRegistry)
+                            .record(Duration.ofNanos(System.nanoTime() - startNanos));
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        log.error("Ingestion CV {} của user {} thất bại: {}", ingestion.id, userId, cause.getMessage());
+                        ingestion.fail(cause.getMessage());
+                    } else {
+                        log.info("Ingestion CV {} của user {} hoàn tất", ingestion.id, userId);
+                        ingestion.complete();
+                    }
+                    publish(ingestion);
+                });
+
+        return ingestion.snapshot();
+    }
+
+    public Optional<CvIngestionStatusResponse> getStatus(String ingestionId, Long userId) {
+        Ingestion ingestion = ingestions.get(ingestionId);
+        if (ingestion == null || !ingestion.userId.equals(userId)) return Optional.empty();
+        return Optional.of(ingestion.snapshot());
+    }
+
+    /**
+     * Dọn trạng thái các ingestion đã kết thúc quá thời gian lưu giữ.
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupFinished() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        ingestions.values().removeIf(i -> i.finishedBefore(threshold));
+        // Chỉ cần nhớ thứ tự MERGE khi user còn ingestion đang chạy
+        Set<Long> activeUsers = ingestions.values().stream()
+                .filter(i -> !i.isFinished())
+                .map(i -> i.userId)
+                .collect(Collectors.toSet());
+        lastMergedSeqByUser.keySet().retainAll(activeUsers);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> stage(Ingestion ingestion, String stage, Supplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            ingestion.markStage(stage, "RUNNING");
+            publish(ingestion);
+            long start = System.nanoTime();
+            try {
+                T result = work.get();
+                ingestion.markStage(stage, "DONE");
+                return result;
+            } catch (RuntimeException e) {
+                ingestion.markStage(stage, "FAILED");
+                throw e;
+            } finally {
+                Timer.builder("cv.ingestion.stage.duration").tag("stage", stage)
+                        .register(meterRegistry)
+                        .record(Duration.ofNanos(System.nanoTime() - start));
+                publish(ingestion);
+            }
+        }, executor);
+    }
+
+    /**
+     * Gemini đọc hồ sơ (liên hệ, kinh nghiệm...), kỹ năng thì hợp thêm phần tách cục bộ theo từ điển.
+     * AI không khả dụng -> vẫn lưu được kỹ năng tách cục bộ, các trường khác giữ nguyên.
+     */
+    private GeminiResponse parseWithLocalSkills(String text) {
+        List<String> localSkills = localSkillExtractor.extract(text);
+        GeminiResponse parsed;
+        try {
+            parsed = geminiService.parseCV(text);
+        } catch (AiUnavailableException e) {
+            if (localSkills.isEmpty()) throw e;
+            log.warn("AI không khả dụng, chỉ dùng {} kỹ năng tách cục bộ: {}", localSkills.size(), e.getMessage());
+            parsed = new GeminiResponse();
+        }
+        List<String> skills = new ArrayList<>();
+        if (parsed.getSkills() != null) skills.addAll(parsed.getSkills());
+        skills.addAll(localSkills); // Trùng lặp được bỏ khi lưu (SkillLexicon.canonicalize)
+        parsed.setSkills(skills);
+        return parsed;
+    }
+
+    private Object mergeLock(Long userId) {
+        return mergeLocks[Math.floorMod(userId.hashCode(), mergeLocks.length)];
+    }
+
+    private void publish(Ingestion ingestion) {
+        try {
+            messagingTemplate.convertAndSendToUser(String.valueOf(ingestion.userId), "/queue/cv-ingestion", ingestion.snapshot());
+        } catch (Exception e) {
+            log.warn("Không gửi được tiến độ ingestion {} qua WebSocket: {}", ingestion.id, e.getMessage());
+        }
+    }
+
+    private record UploadAndParse(String cvUrl, ParsedCv cv) {
+    }
+
+    private record ParsedCv(String contentHash, GeminiResponse parsed) {
+    }
+
+    private record ExtractedCv(String contentHash, String text) {
+    }
+
+    private static final class Ingestion {
+        private final String id;
+        private final Long userId;
+        private final long seq;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final Map<String, String> stages = new LinkedHashMap<>();
+        private String status = "PENDING";
+        private String cvUrl;
+        private String error;
+        private LocalDateTime updatedAt = createdAt;
+
+        Ingestion(String id, Long userId, long seq) {
+            this.id = id;
+            this.userId = userId;
+            this.seq = seq;
+            for (String stage : new String[]{STAGE_UPLOAD, STAGE_EXTRACT, STAGE_PARSE, STAGE_MERGE}) {
+                stages.put(stage, "PENDING");
+            }
+        }
+
+        synchronized void markStage(String stage, String state) {
+            if ("SKIPPED".equals(stages.get(stage))) return; // Đã bỏ qua (SUPERSEDED) thì giữ nguyên
+            stages.put(stage, state);
+            if ("PENDING".equals(status)) status = "RUNNING";
+            updatedAt = LocalDateTime.now();
+        }
+
+        synchronized void setCvUrl(String cvUrl) {
+            this.cvUrl = cvUrl;
+        }
+
+        synchronized void complete() {
+            if (!"SUPERSEDED".equals(status)) status = "COMPLETED";
+            updatedAt = LocalDateTime.now();
+        }
+
+        // CV mới hơn của cùng user đã được lưu -> bản này không ghi vào hồ sơ
+        synchronized void supersede() {
+            status = "SUPERSEDED";
+            stages.put(STAGE_MERGE, "SKIPPED");
+            updatedAt = LocalDateTime.now();
+        }
+
+        synchronized void fail(String message) {
+            status = "FAILED";
+            error = message;
+            updatedAt = LocalDateTime.now();
+        }
+
+        synchronized boolean isFinished() {
+            return "COMPLETED".equals(status) || "FAILED".equals(status) || "SUPERSEDED".equals(status);
+        }
+
+        synchronized boolean finishedBefore(LocalDateTime threshold) {
+            return isFinished() && updatedAt.isBefore(threshold);
+        }
+
+        synchronized CvIngestionStatusResponse snapshot() {
+            return CvIngestionStatusResponse.builder()
+                    .ingestionId(id)
+                    .status(status)
+                    .stages(new LinkedHashMap<>(stages))
+                    .cvFilePath(cvUrl)
+                    .error(error)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .build();
+        }
+    }
+}
@@ -2,8 +2,12 @@ package app.candidate.service;
 
 import app.ai.service.JobFastMatchingService;
 import app.ai.service.cv.gemini.dto.FastMatchResult;
+import app.ai.service.matching.JobSkillIndex;
+import app.candidate.dto.response.JobRecommendationItem;
+import app.candidate.dto.response.JobRecommendationPage;
 import app.candidate.model.CandidateProfile;
 import app.candidate.repository.CandidateProfileRepository;
+import app.recruitment.dto.response.JobCardProjection;
 import app.recruitment.entity.JobPosting;
 import app.recruitment.repository.JobPostingRepository;
 import lombok.RequiredArgsConstructor;
@@ -11,7 +15,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import app.recruitment.entity.enums.JobStatus;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,6 +29,11 @@ public class JobRecommendationService {
     private final JobPostingRepository jobRepository;
     private final JobFastMatchingService fastMatchingService;
 
+    private static final int MATCHING_MIN_SCORE = 50;
+    private static final int MAX_PAGE_SIZE = 50;
+    // Đủ cho 2 dòng trên thẻ job; đọc dư 1 ký tự để biết có bị cắt hay không
+    private static final int SNIPPET_LENGTH = 200;
+
     // Lấy tất cả JOB
     @Transactional(readOnly = true)
     public List<Map<String, Object>> getAllJobs() {
@@ -57,24 +68,12 @@ public class JobRecommendationService {
         }
         List<String> candidateSkills = profileOpt.get().getSkills();
 
-        // 2. Lấy tất cả Job ID đanng PUBLISHED
-        List<Long> allJobIds = jobRepository.findByStatus(JobStatus.PUBLISHED).stream()
-                .map(JobPosting::getId)
-                .collect(Collectors.toList());
-        if (allJobIds.isEmpty()) return Collections.emptyList();
-
-        // 3. Tính điểm nhanh (Batch)
-        Map<Long, FastMatchResult> scores = fastMatchingService.calculateBatchCompatibility(candidateSkills, allJobIds);
-
-        // 4. Lọc Job có điểm >= 50
-        List<Long> passedJobIds = scores.entrySet().stream()
-                .filter(entry -> entry.getValue().getMatchScore() >= 50) // Sử dụng getScore() hoặc getMatchScore() tùy DTO của bạn
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        // 2. Tính điểm nhanh với toàn bộ Job đang PUBLISHED qua chỉ mục skill (không nạp entity), lọc điểm >= 50
+        Map<Long, FastMatchResult> scores = fastMatchingService.scoreOpenJobs(candidateSkills, MATCHING_MIN_SCORE);
+        if (scores.isEmpty()) return Collections.emptyList();
+        List<Long> passedJobIds = new ArrayList<>(scores.keySet());
 
-        if (passedJobIds.isEmpty()) return Collections.emptyList();
-
-        // 5. Lấy thông tin chi tiết các Job đã lọc
+        // 3. Lấy thông tin chi tiết các Job đã lọc
         List<JobPosting> passedJobs = jobRepository.findAllById(passedJobIds);
         List<Map<String, Object>> resultList = new ArrayList<>();
 
@@ -90,7 +89,7 @@ public class JobRecommendationService {
             }
         }
 
-        // 6. Sắp xếp điểm giảm dần
+        // 4. Sắp xếp điểm giảm dần
         resultList.sort((j1, j2) -> {
             Integer s1 = (Integer) j1.get("matchScore");
             Integer s2 = (Integer) j2.get("matchScore");
@@ -100,6 +99,80 @@ public class JobRecommendationService {
         return resultList;
     }
 
+    // --- HÀM 3: GỢI Ý VIỆC LÀM THEO TRANG (TOP-K + CON TRỎ, DTO GỌN) ---
+    /**
+     * Như getMatchingJobs nhưng chỉ giữ top-K trong lúc chấm điểm (không sắp xếp cả danh sách), trả về DTO gọn
+     * chỉ kèm đoạn trích description / requirements, phân trang bằng con trỏ (điểm + id của job cuối trang trước).
+     */
+    @Transactional(readOnly = true)
+    public JobRecommendationPage getMatchingJobsPage(Long userId, String cursor, int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        long afterRankKey = decodeCursor(cursor);
+
+        List<String> candidateSkills = profileRepository.findByUserIdWithSkills(userId)
+                .map(CandidateProfile::getSkills)
+                .orElse(Collections.emptyList());
+
+        // Lấy dư 1 phần tử để biết còn trang sau hay không
+        JobSkillIndex.TopJobs top = fastMatchingService.topOpenJobs(candidateSkills, MATCHING_MIN_SCORE, pageSize + 1, afterRankKey);
+        List<JobSkillIndex.RankedJob> ranked = top.jobs();
+        boolean hasMore = ranked.size() > pageSize;
+        if (hasMore) {
+            ranked = ranked.subList(0, pageSize);
+        }
+
+        Map<Long, JobCardProjection> cards = ranked.isEmpty() ? Map.of()
+                : jobRepository.findCardsByIds(ranked.stream().map(JobSkillIndex.RankedJob::jobId).collect(Collectors.toList()), SNIPPET_LENGTH + 1)
+                        .stream().collect(Collectors.toMap(JobCardProjection::getId, Function.identity()));
+
+        List<JobRecommendationItem> items = new ArrayList<>(ranked.size());
+        for (JobSkillIndex.RankedJob job : ranked) {
+            JobCardProjection card = cards.get(job.jobId());
+            if (card == null) continue; // Job vừa bị xóa giữa lúc chấm điểm và lúc đọc
+            items.add(JobRecommendationItem.builder()
+                    .id(card.getId())
+                    .title(card.getTitle() != null ? card.getTitle() : "Chưa có tiêu đề")
+                    .company(card.getCompanyName() != null ? card.getCompanyName() : "Công ty ẩn danh")
+                    .companyLogo(card.getCompanyLogoUrl())
+                    .location(card.getLocation() != null ? card.getLocation() : "Remote")
+                    .salary(card.getSalaryRange() != null ? card.getSalaryRange() : "Thỏa thuận")
+                    .createdAt(card.getCreatedAt())
+                    .expiryDate(card.getExpiryDate())
+                    .descriptionSnippet(snippet(card.getDescriptionSnippet()))
+                    .requirementsSnippet(snippet(card.getRequirementsSnippet()))
+                    .matchScore(job.match().getMatchScore())
+                    .skillsFound(job.match().getMatchedSkills())
+                    .skillsMissing(job.match().getMissingSkills())
+                    .build());
+        }
+
+        return JobRecommendationPage.builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore && !ranked.isEmpty() ? encodeCursor(ranked.get(ranked.size() - 1).rankKey()) : null)
+                .totalMatched(top.totalMatched())
+                .build();
+    }
+
+    private static String snippet(String text) {
+        if (text == null || text.length() <= SNIPPET_LENGTH) return text;
+        return text.substring(0, SNIPPET_LENGTH).stripTrailing() + "...";
+    }
+
+    private static String encodeCursor(long rankKey) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(rankKey).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return Long.MAX_VALUE;
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Con trỏ phân trang không hợp lệ");
+        }
+    }
+
     // Helper map dữ liệu cơ bản để tránh lặp code
     private Map<String, Object> mapJobToBasicInfo(JobPosting job) {
         Map<String, Object> jobMap = new HashMap<>();
@@ -0,0 +1,87 @@
+package app.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Cấu hình HTTP riêng cho Gemini API.
+ * - Dùng chung 1 connection pool (keep-alive) cho mọi API key, không bắt tay TLS lại mỗi lần gọi.
+ * - Dùng chung 1 SSLContext nên TLS session được tái sử dụng giữa các kết nối.
+ * - Có connect/read timeout rõ ràng để socket treo không giữ thread Tomcat mãi mãi.
+ */
+@Configuration
+public class GeminiHttpConfig {
+
+    @Value("${gemini.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${gemini.http.max-connections-per-route:20}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${gemini.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // Gemini có thể mất 10-20s cho prompt dài -> read timeout rộng hơn connect timeout
+    @Value("${gemini.http.read-timeout-ms:60000}")
+    private long readTimeoutMs;
+
+    @Value("${gemini.http.pool-wait-timeout-ms:3000}")
+    private long poolWaitTimeoutMs;
+
+    @Value("${gemini.http.connection-ttl-seconds:300}")
+    private long connectionTtlSeconds;
+
+    @Value("${gemini.http.idle-evict-seconds:30}")
+    private long idleEvictSeconds;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient geminiHttpClient() {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .setTimeToLive(TimeValue.ofSeconds(connectionTtlSeconds))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                        .setSslContext(SSLContexts.createSystemDefault())
+                        .build())
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolWaitTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictSeconds))
+                // Retry do GeminiApiClient tự quản lý (đổi key + backoff), không để HttpClient retry ngầm
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate geminiRestTemplate(CloseableHttpClient geminiHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(geminiHttpClient));
+    }
+}
@@ -0,0 +1,15 @@
+package app.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Ném ra khi circuit breaker của AI đang mở hoặc số lượng request AI đồng thời đã chạm giới hạn.
+ * Caller nên dùng phương án dự phòng (fallback) thay vì chờ Gemini.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AiUnavailableException extends RuntimeException {
+    public AiUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package app.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Ném ra khi pool trích xuất CV (PDF/DOCX/OCR) đã đầy cả luồng lẫn hàng đợi.
+ * Client nên thử lại sau thay vì để request chờ vô hạn.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class ExtractionOverloadedException extends RuntimeException {
+    public ExtractionOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -96,6 +96,20 @@ public class GlobalExceptionHandler {
                 .body(MessageResponse.error(ex.getMessage()));
     }
     
+    @ExceptionHandler(AiUnavailableException.class)
+    public ResponseEntity<MessageResponse> handleAiUnavailable(AiUnavailableException ex) {
+        log.warn("AI unavailable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(MessageResponse.error(ex.getMessage()));
+    }
+    
+    @ExceptionHandler(ExtractionOverloadedException.class)
+    public ResponseEntity<MessageResponse> handleExtractionOverloaded(ExtractionOverloadedException ex) {
+        log.warn("CV extraction overloaded: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(MessageResponse.error(ex.getMessage()));
+    }
+    
     @ExceptionHandler(HttpRequestMethodNotSupportedException.class)
     @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
     public Map<String, Object> handleMethodNotSupported(HttpRequestMethodNotSupportedException e) {
@@ -1,7 +1,11 @@
 package app.recruitment.controller;
 
-import app.recruitment.service.CandidateSearchService; // Service này cần gọi tới JobMatchingService của AI
+import app.auth.dto.response.MessageResponse;
+import app.recruitment.dto.request.CandidateSearchRequest;
+import app.recruitment.service.CandidateSearchService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,10 +16,33 @@ public class CandidateSearchController {
 
     private final CandidateSearchService candidateSearchService;
 
-    // Tìm kiếm ứng viên phù hợp dựa trên mô tả công việc (Text description)
+    // Tìm ứng viên: q / name / location / role (không dấu, theo tiền tố), skills=Java,React & skillMode=AND|OR
+    // URL: /api/recruitment/search/candidates?q=nguyen&skills=Java,Spring Boot&skillMode=AND&page=0&size=20
+    @GetMapping("/candidates")
+    public ResponseEntity<?> searchCandidates(@ModelAttribute CandidateSearchRequest request, Pageable pageable) {
+        try {
+            return ResponseEntity.ok(MessageResponse.success("Tìm kiếm ứng viên thành công",
+                    candidateSearchService.searchCandidates(request, pageable)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(MessageResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(MessageResponse.error(e.getMessage()));
+        }
+    }
+
+    // Xếp hạng ứng viên phù hợp dựa trên mô tả công việc (Text description), không gọi AI
+    // URL: POST /api/recruitment/search/match-description?limit=20&minScore=0 (body: JD dạng text)
     @PostMapping("/match-description")
-    public ResponseEntity<?> searchCandidatesByDescription(@RequestBody String jobDescription) {
-        // Logic: Dùng Gemini hoặc so sánh keyword để trả về list CandidateProfile
-        return ResponseEntity.ok(candidateSearchService.searchByJobDescription(jobDescription));
+    public ResponseEntity<?> searchCandidatesByDescription(@RequestBody String jobDescription,
+                                                           @RequestParam(defaultValue = "0") int minScore,
+                                                           @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return ResponseEntity.ok(MessageResponse.success("Xếp hạng ứng viên thành công",
+                    candidateSearchService.searchByJobDescription(jobDescription, minScore, limit)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(MessageResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(MessageResponse.error(e.getMessage()));
+        }
     }
-}
\ No newline at end of file
+}
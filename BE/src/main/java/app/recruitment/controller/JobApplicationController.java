@@ -3,6 +3,7 @@ package app.recruitment.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -21,6 +22,7 @@ import app.recruitment.entity.JobApplication;
 import app.recruitment.entity.enums.ApplicationStatus;
 import app.auth.repository.UserRepository;
 import app.ai.service.cv.gemini.dto.MatchResult;
+import app.exception.ExtractionOverloadedException;
 
 @RestController
 @RequestMapping("/api/applications") // Để chung là applications
@@ -120,6 +122,9 @@ List<JobApplicationResponse> list = applicationService.getApplicationsByCandidat
                 "Phân tích AI hoàn tất!", 
                 result
             ));
+        } catch (ExtractionOverloadedException e) {
+            log.warn("Phân tích đơn {} bị từ chối do pool trích xuất đầy: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(MessageResponse.error(e.getMessage()));
         } catch (Exception e) {
             log.error("Lỗi phân tích AI cho đơn {}: {}", id, e.getMessage());
             
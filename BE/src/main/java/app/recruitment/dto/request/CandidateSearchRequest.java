@@ -0,0 +1,22 @@
+package app.recruitment.dto.request;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Điều kiện tìm ứng viên. Mọi trường đều tùy chọn, các điều kiện có giá trị được AND với nhau.
+ * Chữ được so khớp không dấu, không phân biệt hoa/thường và theo TIỀN TỐ từng từ ("ngu va" khớp "Nguyễn Văn A").
+ */
+@Data
+public class CandidateSearchRequest {
+    // Tìm chung trên tên, địa chỉ, vị trí kinh nghiệm và kỹ năng
+    private String q;
+    private String name;
+    private String location;
+    private String role;
+
+    // Kỹ năng (gom đồng nghĩa qua từ điển kỹ năng); skillMode = AND (mặc định, phải có đủ) hoặc OR (có ít nhất 1)
+    private List<String> skills;
+    private String skillMode;
+}
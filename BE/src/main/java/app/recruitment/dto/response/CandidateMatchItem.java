@@ -0,0 +1,24 @@
+package app.recruitment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 1 ứng viên trong danh sách xếp hạng theo mô tả công việc.
+ * matchScore = số kỹ năng của job mà ứng viên có / tổng kỹ năng job * 100 (cùng công thức fast-match với gợi ý việc làm).
+ */
+@Data
+@Builder
+public class CandidateMatchItem {
+    private Long profileId;
+    private Long userId;
+    private String fullName;
+    private String avatarUrl;
+    private String location;
+    private List<String> roles;
+    private int matchScore;
+    private List<String> skillsFound;
+    private List<String> skillsMissing;
+}
@@ -0,0 +1,18 @@
+package app.recruitment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Kết quả xếp hạng ứng viên cho 1 mô tả công việc: kỹ năng tách được từ JD, số hồ sơ có ít nhất 1 kỹ năng khớp
+ * (đạt minScore) và top-K ứng viên điểm cao nhất.
+ */
+@Data
+@Builder
+public class CandidateMatchResult {
+    private List<String> jobSkills;
+    private int totalMatched;
+    private List<CandidateMatchItem> candidates;
+}
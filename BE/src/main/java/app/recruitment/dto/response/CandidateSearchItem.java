@@ -0,0 +1,23 @@
+package app.recruitment.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 1 ứng viên trong kết quả tìm kiếm: thông tin hiển thị lấy thẳng từ chỉ mục trong RAM, không query DB.
+ */
+@Data
+@Builder
+public class CandidateSearchItem {
+    private Long profileId;
+    private Long userId;
+    private String fullName;
+    private String avatarUrl;
+    private String location;
+    private List<String> skills;
+    private List<String> roles;
+    // Các kỹ năng trong điều kiện lọc mà ứng viên có (rỗng nếu không lọc theo kỹ năng)
+    private List<String> matchedSkills;
+}
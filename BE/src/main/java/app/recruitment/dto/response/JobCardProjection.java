@@ -0,0 +1,20 @@
+package app.recruitment.dto.response;
+
+import java.time.LocalDateTime;
+
+/**
+ * Các cột hiển thị thẻ job trong danh sách: description / requirements chỉ lấy đoạn đầu (cắt ngay trong SQL),
+ * không kéo cả cột TEXT dài.
+ */
+public interface JobCardProjection {
+    Long getId();
+    String getTitle();
+    String getLocation();
+    String getSalaryRange();
+    LocalDateTime getCreatedAt();
+    LocalDateTime getExpiryDate();
+    String getCompanyName();
+    String getCompanyLogoUrl();
+    String getDescriptionSnippet();
+    String getRequirementsSnippet();
+}
@@ -0,0 +1,18 @@
+package app.recruitment.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Bắn ra mỗi khi tin tuyển dụng đổi nội dung / kỹ năng / trạng thái (tạo, sửa, duyệt, từ chối, ẩn, xóa).
+ * Các chỉ mục trong bộ nhớ (vd JobSkillIndex) nghe sự kiện này để cập nhật riêng job đó, không phải nạp lại toàn bộ.
+ */
+@Getter
+public class JobPostingChangedEvent extends ApplicationEvent {
+    private final Long jobId;
+
+    public JobPostingChangedEvent(Object source, Long jobId) {
+        super(source);
+        this.jobId = jobId;
+    }
+}
@@ -1,5 +1,6 @@
 package app.recruitment.repository;
 
+import app.recruitment.dto.response.JobCardProjection;
 import app.recruitment.entity.JobPosting;
 import app.recruitment.entity.enums.JobStatus;
 import org.springframework.data.jpa.repository.EntityGraph;
@@ -47,5 +48,17 @@ public interface JobPostingRepository extends JpaRepository<JobPosting, Long> {
     // 3. Hàm lấy jobs kèm skills 
     @Query("SELECT DISTINCT j FROM JobPosting j LEFT JOIN FETCH j.extractedSkills WHERE j.id IN :ids")
     List<JobPosting> findAllByIdsWhithSkills(@Param("ids") List<Long> ids);
+
+    // 4. Lấy toàn bộ job theo trạng thái kèm skills (dùng để dựng chỉ mục skill trong bộ nhớ)
+    @Query("SELECT DISTINCT j FROM JobPosting j LEFT JOIN FETCH j.extractedSkills WHERE j.status = :status")
+    List<JobPosting> findByStatusWithSkills(@Param("status") JobStatus status);
+    // 5. Chỉ lấy các cột hiển thị thẻ job (danh sách gợi ý), không nạp description / requirements
+    @Query("SELECT j.id AS id, j.title AS title, j.location AS location, j.salaryRange AS salaryRange, " +
+           "j.createdAt AS createdAt, j.expiryDate AS expiryDate, c.name AS companyName, c.logoUrl AS companyLogoUrl, " +
+           "SUBSTRING(j.description, 1, :snippetLength) AS descriptionSnippet, " +
+           "SUBSTRING(j.requirements, 1, :snippetLength) AS requirementsSnippet " +
+           "FROM JobPosting j LEFT JOIN j.company c WHERE j.id IN :ids")
+    List<JobCardProjection> findCardsByIds(@Param("ids") List<Long> ids, @Param("snippetLength") int snippetLength);
+
     List<JobPosting> findByRecruiterIdAndStatusNot(Long recruiterId, JobStatus status);
 }
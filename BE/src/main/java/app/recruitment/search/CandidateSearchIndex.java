@@ -0,0 +1,699 @@
+package app.recruitment.search;
+
+import app.ai.service.matching.JobSkillIndex;
+import app.ai.service.matching.LocalSkillExtractor;
+import app.ai.service.matching.LongMinHeap;
+import app.ai.service.matching.SkillLexicon;
+import app.ai.service.matching.SkillLexiconReloadedEvent;
+import app.candidate.dto.response.CandidateIndexProjection;
+import app.candidate.dto.response.ProfileValueProjection;
+import app.candidate.event.CandidateProfileChangedEvent;
+import app.candidate.repository.CandidateProfileRepository;
+import app.recruitment.dto.request.CandidateSearchRequest;
+import app.recruitment.dto.response.CandidateMatchItem;
+import app.recruitment.dto.response.CandidateSearchItem;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục tìm kiếm ứng viên thường trú trong RAM, thay cho việc nạp cả bảng users rồi lọc bằng Java.
+ * <p>
+ * Mỗi hồ sơ được gán 1 slot. Với từng trường chữ (tên, địa chỉ, vị trí kinh nghiệm, kỹ năng) giữ 1 từ điển đã sắp xếp:
+ * từ (gấp không dấu bằng {@link LocalSkillExtractor#foldText}) -> các slot chứa từ đó, nên tìm theo tiền tố chỉ là
+ * duyệt 1 đoạn liên tiếp của từ điển. Kỹ năng còn có posting list theo id kỹ năng để lọc AND / OR: kỹ năng trong
+ * {@link SkillLexicon} gom theo tên chuẩn (đồng nghĩa), kỹ năng lạ theo khóa chuẩn hóa, id cấp riêng trong chỉ mục.
+ * <p>
+ * Xếp hạng ngược (mô tả công việc -> ứng viên) chấm fast-match cho MỌI hồ sơ, chia đoạn slot chạy song song trên
+ * ForkJoinPool riêng (candidate.match.parallelism, mặc định = số core), mỗi đoạn giữ top-K riêng rồi gộp lại.
+ * <p>
+ * Dựng lại toàn bộ khi khởi động và định kỳ (candidate.search-index.rebuild-interval-ms), còn bình thường cập nhật
+ * từng hồ sơ qua {@link CandidateProfileChangedEvent} sau khi transaction commit.
+ */
+@Component
+@Slf4j
+public class CandidateSearchIndex {
+
+    /** Các trường chữ được đánh chỉ mục. */
+    enum Field { NAME, LOCATION, ROLE, SKILL }
+
+    private static final Field[] FIELDS = Field.values();
+    // Số slot mỗi tác vụ lá khi xếp hạng song song: đủ lớn để chi phí fork không đáng kể
+    private static final int RANK_BATCH = 4096;
+    private static final int REFRESH_LOCK_STRIPES = 64;
+
+    private final CandidateProfileRepository profileRepository;
+    private final SkillLexicon skillLexicon;
+    private final Timer searchTimer;
+    private final Timer rankTimer;
+    private final ForkJoinPool rankPool;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object rebuildMonitor = new Object();
+    private State state;
+
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+    // Hồ sơ thay đổi trong lúc đang dựng lại -> áp lại sau khi thay chỉ mục mới, tránh mất cập nhật
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    // Đọc DB + áp vào chỉ mục tuần tự theo user, để 2 lần refresh cùng user không áp bản đọc cũ sau bản mới
+    private final Object[] refreshLocks = new Object[REFRESH_LOCK_STRIPES];
+
+    public CandidateSearchIndex(CandidateProfileRepository profileRepository, SkillLexicon skillLexicon,
+                                MeterRegistry meterRegistry,
+                                @Value("${candidate.match.parallelism:0}") int parallelism) {
+        this.profileRepository = profileRepository;
+        this.skillLexicon = skillLexicon;
+        this.state = new State(skillLexicon);
+        for (int i = 0; i < refreshLocks.length; i++) {
+            refreshLocks[i] = new Object();
+        }
+        this.searchTimer = Timer.builder("candidate.search-index.query").register(meterRegistry);
+        this.rankTimer = Timer.builder("candidate.match.rank").register(meterRegistry);
+
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.rankPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("candidate-rank-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+        Gauge.builder("candidate.search-index.size", this, CandidateSearchIndex::profileCount)
+                .tag("type", "profiles").register(meterRegistry);
+    }
+
+    /** Chỉ mục đã nạp xong lần đầu chưa. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // --- DỰNG / CẬP NHẬT CHỈ MỤC ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${candidate.search-index.rebuild-interval-ms:3600000}",
+               fixedDelayString = "${candidate.search-index.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        synchronized (rebuildMonitor) {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+            long start = System.currentTimeMillis();
+            try {
+                // 3 truy vấn chỉ đọc cột cần thiết, không dựng entity CandidateProfile / User
+                List<CandidateIndexProjection> rows = new ArrayList<>(profileRepository.findAllForSearchIndex());
+                Map<Long, List<String>> skills = groupByProfile(profileRepository.findAllSkillsForSearchIndex());
+                Map<Long, List<String>> roles = groupByProfile(profileRepository.findAllRolesForSearchIndex());
+                rows.sort(Comparator.comparing(CandidateIndexProjection::getProfileId));
+
+                State fresh = new State(skillLexicon);
+                for (CandidateIndexProjection row : rows) {
+                    fresh.put(row, skills.get(row.getProfileId()), roles.get(row.getProfileId()));
+                }
+                lock.writeLock().lock();
+                try {
+                    state = fresh;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                ready = true;
+                log.info("Đã dựng chỉ mục tìm kiếm ứng viên: {} hồ sơ ({} ms)",
+                        fresh.slotByUser.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Lỗi dựng chỉ mục tìm kiếm ứng viên (giữ chỉ mục cũ): {}", e.getMessage());
+            } finally {
+                rebuilding = false;
+            }
+            for (Long userId : changedDuringRebuild) {
+                refresh(userId);
+            }
+            changedDuringRebuild.clear();
+        }
+    }
+
+    @EventListener
+    public void onSkillLexiconReloaded(SkillLexiconReloadedEvent event) {
+        rebuild();
+    }
+
+    // fallbackExecution: bên bắn event không nằm trong transaction thì chạy ngay
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCandidateProfileChanged(CandidateProfileChangedEvent event) {
+        refresh(event.getUserId());
+    }
+
+    /**
+     * Đọc lại hồ sơ của 1 user từ DB: còn hồ sơ (và tài khoản ứng viên đang ACTIVE) thì cập nhật,
+     * không thì gỡ khỏi chỉ mục (xóa tài khoản, bị khóa, đổi vai trò).
+     * Đọc và áp chạy dưới khóa theo user; chỉ mục bị thay (rebuild) trong lúc đọc thì đọc lại rồi áp vào chỉ mục mới.
+     */
+    public void refresh(Long userId) {
+        if (userId == null) return;
+        if (rebuilding) {
+            changedDuringRebuild.add(userId);
+        }
+        synchronized (refreshLocks[Math.floorMod(userId.hashCode(), refreshLocks.length)]) {
+            try {
+                boolean applied = false;
+                while (!applied) {
+                    State readFor = currentState();
+                    CandidateIndexProjection row = profileRepository.findForSearchIndexByUserId(userId).orElse(null);
+                    List<String> skills = null;
+                    List<String> roles = null;
+                    if (row != null) {
+                        skills = values(profileRepository.findSkillsForSearchIndex(row.getProfileId()));
+                        roles = values(profileRepository.findRolesForSearchIndex(row.getProfileId()));
+                    }
+                    lock.writeLock().lock();
+                    try {
+                        if (state != readFor) continue;
+                        if (row != null) {
+                            state.put(row, skills, roles);
+                        } else {
+                            state.remove(userId);
+                        }
+                        applied = true;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Không cập nhật được hồ sơ của user {} vào chỉ mục tìm kiếm: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    private State currentState() {
+        lock.readLock().lock();
+        try {
+            return state;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<Long, List<String>> groupByProfile(List<ProfileValueProjection> rows) {
+        Map<Long, List<String>> grouped = new HashMap<>();
+        for (ProfileValueProjection row : rows) {
+            grouped.computeIfAbsent(row.getProfileId(), k -> new ArrayList<>()).add(row.getContent());
+        }
+        return grouped;
+    }
+
+    private static List<String> values(List<ProfileValueProjection> rows) {
+        List<String> values = new ArrayList<>(rows.size());
+        for (ProfileValueProjection row : rows) {
+            values.add(row.getContent());
+        }
+        return values;
+    }
+
+    // --- TÌM KIẾM ---
+
+    /** 1 trang kết quả; total = số hồ sơ khớp điều kiện trên toàn chỉ mục. */
+    public record SearchHits(List<CandidateSearchItem> items, int total) {}
+
+    /**
+     * Tìm hồ sơ khớp mọi điều kiện có giá trị trong request, trả về đoạn [offset, offset + limit).
+     * Thứ tự: lọc kỹ năng kiểu OR thì hồ sơ có nhiều kỹ năng yêu cầu hơn đứng trước; cùng mức thì hồ sơ mới hơn trước.
+     */
+    public SearchHits search(CandidateSearchRequest request, int offset, int limit) {
+        boolean matchAllSkills = !"OR".equalsIgnoreCase(request.getSkillMode());
+        return searchTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                State s = state;
+                BitSet filter = null;
+
+                // q: mỗi từ phải khớp (theo tiền tố) ít nhất 1 trường bất kỳ
+                for (String token : tokens(request.getQ())) {
+                    BitSet any = new BitSet();
+                    for (Field field : FIELDS) {
+                        s.prefix(field, token, any);
+                    }
+                    filter = and(filter, any);
+                }
+                filter = matchField(s, Field.NAME, request.getName(), filter);
+                filter = matchField(s, Field.LOCATION, request.getLocation(), filter);
+                filter = matchField(s, Field.ROLE, request.getRole(), filter);
+
+                // Kỹ năng: đếm số kỹ năng yêu cầu mỗi hồ sơ có, AND = đủ tất cả, OR = ít nhất 1
+                BitSet requested = null;
+                int[] hits = null;
+                if (request.getSkills() != null && request.getSkills().stream().anyMatch(k -> k != null && !k.isBlank())) {
+                    requested = new BitSet();
+                    for (String skill : request.getSkills()) {
+                        int skillId = s.findSkill(skill);
+                        if (skillId >= 0) {
+                            requested.set(skillId);
+                        } else if (matchAllSkills && !SkillLexicon.key(skill).isEmpty()) {
+                            return new SearchHits(List.of(), 0); // Chưa ai có kỹ năng này
+                        }
+                    }
+                    hits = new int[s.slots.size()];
+                    BitSet bySkill = new BitSet();
+                    int need = matchAllSkills ? requested.cardinality() : 1;
+                    for (int skillId = requested.nextSetBit(0); skillId >= 0; skillId = requested.nextSetBit(skillId + 1)) {
+                        SlotList posting = s.skillPosting(skillId);
+                        if (posting == null) continue;
+                        for (int i = 0; i < posting.size; i++) {
+                            int slot = posting.slots[i];
+                            if (++hits[slot] == need) bySkill.set(slot);
+                        }
+                    }
+                    filter = and(filter, bySkill);
+                }
+
+                if (filter == null) {
+                    filter = s.live();
+                }
+
+                long[] keys = new long[filter.cardinality()];
+                int n = 0;
+                for (int slot = filter.nextSetBit(0); slot >= 0; slot = filter.nextSetBit(slot + 1)) {
+                    IndexedCandidate doc = s.slots.get(slot);
+                    if (doc == null) continue;
+                    int skillHits = hits == null || matchAllSkills ? 0 : hits[slot];
+                    keys[n++] = ((long) skillHits << 48) | doc.profileId();
+                }
+                Arrays.sort(keys, 0, n);
+
+                List<CandidateSearchItem> items = new ArrayList<>(Math.max(0, Math.min(limit, n - offset)));
+                for (int i = n - 1 - offset; i >= 0 && items.size() < limit; i--) {
+                    long profileId = keys[i] & ((1L << 48) - 1);
+                    IndexedCandidate doc = s.slots.get(s.slotByProfile.get(profileId));
+                    items.add(doc.toItem(requested));
+                }
+                return new SearchHits(items, n);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    // --- XẾP HẠNG THEO MÔ TẢ CÔNG VIỆC ---
+
+    /** Top-K ứng viên; totalMatched = số hồ sơ đạt minScore (và có ít nhất 1 kỹ năng khớp) trên toàn chỉ mục. */
+    public record RankedCandidates(List<CandidateMatchItem> items, int totalMatched) {}
+
+    /**
+     * Chấm điểm MỌI hồ sơ với danh sách kỹ năng của job: điểm = số kỹ năng job ứng viên có / tổng kỹ năng job * 100.
+     * Kỹ năng job chưa hồ sơ nào có (không có id trong chỉ mục) vẫn tính vào mẫu số và luôn nằm trong skillsMissing.
+     * Xếp theo điểm giảm dần, cùng điểm thì hồ sơ mới hơn trước.
+     */
+    public RankedCandidates rankBySkills(List<String> jobSkills, int minScore, int limit) {
+        // Bỏ kỹ năng trùng (cùng kỹ năng chuẩn hoặc cùng khóa chuẩn hóa), giữ tên hiển thị đầu tiên
+        List<String> names = new ArrayList<>();
+        Set<Object> seen = new HashSet<>();
+        for (String skill : jobSkills) {
+            String key = SkillLexicon.key(skill);
+            if (key.isEmpty()) continue;
+            int lexiconId = skillLexicon.lexiconId(skill);
+            if (!seen.add(lexiconId >= 0 ? (Object) lexiconId : key)) continue;
+            names.add(skill.trim());
+        }
+        if (names.isEmpty() || limit <= 0) return new RankedCandidates(List.of(), 0);
+        int total = names.size();
+
+        return rankTimer.record(() -> {
+            // Giữ read lock trong suốt lúc các luồng của pool đọc state: ghi phải chờ, không cần copy dữ liệu
+            lock.readLock().lock();
+            try {
+                State s = state;
+                // Id kỹ năng là id cục bộ của State hiện tại -> phải tra trong lock
+                List<Integer> ids = new ArrayList<>(names.size());
+                BitSet jobSet = new BitSet();
+                for (String name : names) {
+                    int skillId = s.findSkill(name);
+                    ids.add(skillId);
+                    if (skillId >= 0) jobSet.set(skillId);
+                }
+                RankPartial ranked = rankPool.invoke(
+                        new RankTask(s.slots, jobSet, total, Math.max(minScore, 1), limit, 0, s.slots.size()));
+
+                List<CandidateMatchItem> items = new ArrayList<>();
+                for (long key : ranked.heap().sortedDescending()) {
+                    long profileId = key & ((1L << 48) - 1);
+                    IndexedCandidate doc = s.slots.get(s.slotByProfile.get(profileId));
+                    items.add(doc.toMatchItem(names, ids, (int) (key >>> 48)));
+                }
+                return new RankedCandidates(items, ranked.matched());
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    static int matchScore(int hits, int total) {
+        return (int) Math.round((double) hits / total * 100);
+    }
+
+    /** Kết quả 1 đoạn slot: top-K của đoạn + số hồ sơ đạt ngưỡng. */
+    private record RankPartial(LongMinHeap heap, int matched) {}
+
+    /** Chia đôi đoạn slot tới khi còn <= RANK_BATCH, đoạn lá chấm tuần tự và giữ heap top-K riêng. */
+    private static final class RankTask extends RecursiveTask<RankPartial> {
+        private final List<IndexedCandidate> slots;
+        private final BitSet jobSet;
+        private final int total;
+        private final int minScore;
+        private final int limit;
+        private final int from;
+        private final int to;
+
+        RankTask(List<IndexedCandidate> slots, BitSet jobSet, int total, int minScore, int limit, int from, int to) {
+            this.slots = slots;
+            this.jobSet = jobSet;
+            this.total = total;
+            this.minScore = minScore;
+            this.limit = limit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RankPartial compute() {
+            if (to - from > RANK_BATCH) {
+                int mid = (from + to) >>> 1;
+                RankTask left = new RankTask(slots, jobSet, total, minScore, limit, from, mid);
+                left.fork();
+                RankPartial right = new RankTask(slots, jobSet, total, minScore, limit, mid, to).compute();
+                RankPartial merged = left.join();
+                merged.heap().offerAll(right.heap());
+                return new RankPartial(merged.heap(), merged.matched() + right.matched());
+            }
+
+            LongMinHeap heap = new LongMinHeap(limit);
+            int matched = 0;
+            for (int slot = from; slot < to; slot++) {
+                IndexedCandidate doc = slots.get(slot);
+                if (doc == null) continue;
+                int hits = 0;
+                for (int skillId : doc.skillIds()) {
+                    if (jobSet.get(skillId)) hits++;
+                }
+                if (hits == 0) continue;
+                int score = matchScore(hits, total);
+                if (score < minScore) continue;
+                matched++;
+                heap.offer(JobSkillIndex.rankKey(score, doc.profileId()));
+            }
+            return new RankPartial(heap, matched);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rankPool.shutdownNow();
+    }
+
+    /** Mọi từ trong text phải khớp (theo tiền tố) trường field. */
+    private static BitSet matchField(State s, Field field, String text, BitSet filter) {
+        for (String token : tokens(text)) {
+            BitSet matched = new BitSet();
+            s.prefix(field, token, matched);
+            filter = and(filter, matched);
+        }
+        return filter;
+    }
+
+    /** null nghĩa là "chưa lọc gì" (khớp tất cả). */
+    private static BitSet and(BitSet filter, BitSet other) {
+        if (filter == null) return other;
+        filter.and(other);
+        return filter;
+    }
+
+    /** Tách chuỗi đã gấp không dấu thành các từ (bỏ trùng). */
+    static Set<String> tokens(String text) {
+        if (text == null || text.isBlank()) return Set.of();
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : LocalSkillExtractor.foldText(text).split(" ")) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private double profileCount() {
+        lock.readLock().lock();
+        try {
+            return state.slotByUser.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- CẤU TRÚC DỮ LIỆU ---
+
+    /**
+     * Danh sách slot tăng dần, sửa tại chỗ. Lúc dựng chỉ mục slot được cấp tăng dần nên thêm vào cuối là O(1).
+     */
+    static final class SlotList {
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            if (size > 0 && slots[size - 1] >= slot) {
+                int pos = Arrays.binarySearch(slots, 0, size, slot);
+                if (pos >= 0) return;
+                pos = -pos - 1;
+                grow();
+                System.arraycopy(slots, pos, slots, pos + 1, size - pos);
+                slots[pos] = slot;
+                size++;
+                return;
+            }
+            grow();
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            int pos = Arrays.binarySearch(slots, 0, size, slot);
+            if (pos < 0) return;
+            System.arraycopy(slots, pos + 1, slots, pos, size - pos - 1);
+            size--;
+        }
+
+        private void grow() {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+        }
+    }
+
+    /**
+     * 1 hồ sơ trong chỉ mục. skillIds (id cục bộ của State) song song với skills (tên hiển thị, đã bỏ trùng theo id);
+     * terms[field.ordinal()] = các từ của trường đó, giữ lại để gỡ khỏi từ điển khi hồ sơ đổi.
+     */
+    record IndexedCandidate(long profileId, long userId, String fullName, String avatarUrl, String location,
+                            List<String> skills, int[] skillIds, List<String> roles, String[][] terms) {
+
+        CandidateSearchItem toItem(BitSet requested) {
+            List<String> matched = new ArrayList<>();
+            if (requested != null) {
+                for (int i = 0; i < skillIds.length; i++) {
+                    if (requested.get(skillIds[i])) matched.add(skills.get(i));
+                }
+            }
+            return CandidateSearchItem.builder()
+                    .profileId(profileId)
+                    .userId(userId)
+                    .fullName(fullName)
+                    .avatarUrl(avatarUrl)
+                    .location(location)
+                    .skills(skills)
+                    .roles(roles)
+                    .matchedSkills(matched)
+                    .build();
+        }
+
+        /** jobSkillIds song song với jobSkills, -1 = kỹ năng chưa có id (không ai có). */
+        CandidateMatchItem toMatchItem(List<String> jobSkills, List<Integer> jobSkillIds, int score) {
+            List<String> found = new ArrayList<>();
+            List<String> missing = new ArrayList<>();
+            for (int i = 0; i < jobSkills.size(); i++) {
+                int skillId = jobSkillIds.get(i);
+                boolean has = false;
+                for (int own : skillIds) {
+                    if (own == skillId) {
+                        has = true;
+                        break;
+                    }
+                }
+                (has ? found : missing).add(jobSkills.get(i));
+            }
+            return CandidateMatchItem.builder()
+                    .profileId(profileId)
+                    .userId(userId)
+                    .fullName(fullName)
+                    .avatarUrl(avatarUrl)
+                    .location(location)
+                    .roles(roles)
+                    .matchScore(score)
+                    .skillsFound(found)
+                    .skillsMissing(missing)
+                    .build();
+        }
+    }
+
+    /** Không thread-safe, mọi truy cập đi qua lock của CandidateSearchIndex. */
+    static final class State {
+        final SkillLexicon lexicon;
+        final List<IndexedCandidate> slots = new ArrayList<>(); // slot -> hồ sơ, null khi đã bị gỡ
+        final Map<Long, Integer> slotByUser = new HashMap<>();
+        final Map<Long, Integer> slotByProfile = new HashMap<>();
+        final List<SlotList> skillPostings = new ArrayList<>(); // skillId -> các slot có kỹ năng đó
+        // Id kỹ năng cục bộ của State: kỹ năng trong từ điển gom theo id chuẩn (đồng nghĩa), kỹ năng lạ theo khóa
+        // chuẩn hóa. Không intern vào SkillLexicon nên chuỗi tự nhập của ứng viên không làm từ điển chung phình ra;
+        // id sống theo State, dựng lại là bỏ hết kỹ năng không còn hồ sơ nào dùng.
+        final Map<Object, Integer> skillIdByGroup = new HashMap<>();
+        final List<TreeMap<String, SlotList>> terms = new ArrayList<>(); // field -> từ -> các slot
+
+        State(SkillLexicon lexicon) {
+            this.lexicon = lexicon;
+            for (int i = 0; i < FIELDS.length; i++) {
+                terms.add(new TreeMap<>());
+            }
+        }
+
+        void put(CandidateIndexProjection row, List<String> rawSkills, List<String> rawRoles) {
+            Integer slot = slotByUser.get(row.getUserId());
+            if (slot != null) {
+                unlink(slot);
+            } else {
+                slot = slots.size();
+                slots.add(null);
+                slotByUser.put(row.getUserId(), slot);
+            }
+
+            // Bỏ kỹ năng trùng (sau chuẩn hóa) để lọc / chấm điểm không bị lệch
+            Map<Integer, String> distinct = new LinkedHashMap<>();
+            if (rawSkills != null) {
+                for (String raw : rawSkills) {
+                    if (raw == null) continue;
+                    int skillId = internSkill(raw);
+                    if (skillId >= 0) distinct.putIfAbsent(skillId, raw.trim());
+                }
+            }
+            List<String> roles = new ArrayList<>();
+            if (rawRoles != null) {
+                for (String role : rawRoles) {
+                    if (role != null && !role.isBlank() && !roles.contains(role.trim())) roles.add(role.trim());
+                }
+            }
+            List<String> skills = List.copyOf(distinct.values());
+
+            String[][] docTerms = new String[FIELDS.length][];
+            docTerms[Field.NAME.ordinal()] = tokens(row.getFullName()).toArray(String[]::new);
+            docTerms[Field.LOCATION.ordinal()] = tokens(row.getAddress()).toArray(String[]::new);
+            docTerms[Field.ROLE.ordinal()] = tokens(String.join(" ", roles)).toArray(String[]::new);
+            docTerms[Field.SKILL.ordinal()] = tokens(String.join(" ", skills)).toArray(String[]::new);
+
+            IndexedCandidate doc = new IndexedCandidate(row.getProfileId(), row.getUserId(), row.getFullName(),
+                    row.getAvatarUrl(), row.getAddress(), skills,
+                    distinct.keySet().stream().mapToInt(Integer::intValue).toArray(), List.copyOf(roles), docTerms);
+            slots.set(slot, doc);
+            slotByProfile.put(doc.profileId(), slot);
+
+            for (int skillId : doc.skillIds()) {
+                while (skillPostings.size() <= skillId) {
+                    skillPostings.add(null);
+                }
+                if (skillPostings.get(skillId) == null) skillPostings.set(skillId, new SlotList());
+                skillPostings.get(skillId).add(slot);
+            }
+            for (Field field : FIELDS) {
+                TreeMap<String, SlotList> dictionary = terms.get(field.ordinal());
+                for (String term : docTerms[field.ordinal()]) {
+                    dictionary.computeIfAbsent(term, k -> new SlotList()).add(slot);
+                }
+            }
+        }
+
+        void remove(Long userId) {
+            Integer slot = slotByUser.remove(userId);
+            if (slot == null) return;
+            unlink(slot);
+            slots.set(slot, null);
+        }
+
+        private void unlink(int slot) {
+            IndexedCandidate old = slots.get(slot);
+            if (old == null) return;
+            slotByProfile.remove(old.profileId());
+            for (int skillId : old.skillIds()) {
+                skillPostings.get(skillId).remove(slot);
+            }
+            for (Field field : FIELDS) {
+                TreeMap<String, SlotList> dictionary = terms.get(field.ordinal());
+                for (String term : old.terms()[field.ordinal()]) {
+                    SlotList posting = dictionary.get(term);
+                    if (posting == null) continue;
+                    posting.remove(slot);
+                    if (posting.size == 0) dictionary.remove(term);
+                }
+            }
+        }
+
+        /** Đánh dấu vào out mọi slot có 1 từ của trường field bắt đầu bằng prefix. */
+        void prefix(Field field, String prefix, BitSet out) {
+            for (SlotList posting : terms.get(field.ordinal())
+                    .subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                for (int i = 0; i < posting.size; i++) {
+                    out.set(posting.slots[i]);
+                }
+            }
+        }
+
+        /** Id cục bộ của kỹ năng, -1 nếu chưa hồ sơ nào trong State có kỹ năng đó. */
+        int findSkill(String skill) {
+            Object group = skillGroup(skill);
+            return group == null ? -1 : skillIdByGroup.getOrDefault(group, -1);
+        }
+
+        private int internSkill(String skill) {
+            Object group = skillGroup(skill);
+            return group == null ? -1 : skillIdByGroup.computeIfAbsent(group, k -> skillIdByGroup.size());
+        }
+
+        private Object skillGroup(String skill) {
+            String key = SkillLexicon.key(skill);
+            if (key.isEmpty()) return null;
+            int lexiconId = lexicon.lexiconId(skill);
+            return lexiconId >= 0 ? (Object) lexiconId : key;
+        }
+
+        SlotList skillPosting(int skillId) {
+            return skillId < skillPostings.size() ? skillPostings.get(skillId) : null;
+        }
+
+        BitSet live() {
+            BitSet live = new BitSet(slots.size());
+            for (int slot : slotByUser.values()) {
+                live.set(slot);
+            }
+            return live;
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package app.recruitment.service;
 
-import java.util.List;
-
-import app.auth.model.User;
-import app.candidate.dto.response.CandidateProfileResponse;
+import app.recruitment.dto.request.CandidateSearchRequest;
+import app.recruitment.dto.response.CandidateMatchResult;
+import app.recruitment.dto.response.CandidateSearchItem;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 public interface CandidateSearchService {
 /**
-* Tìm candidate theo tên / kỹ năng / GPA (nếu có)
-* Note: hiện workspace không chứa trực tiếp field GPA hoặc skills trong User entity.
-* Implement cơ bản theo tên; phần skill/GPA cần mở rộng DB (profile) hoặc sử dụng AI CV analysis.
+* Tìm ứng viên theo tên / địa chỉ / vị trí kinh nghiệm / kỹ năng (AND hoặc OR), có phân trang.
+* Chạy trên chỉ mục trong RAM (CandidateSearchIndex), không quét bảng users.
+* Note: schema không có GPA nên không hỗ trợ lọc theo GPA.
+*/
+Page<CandidateSearchItem> searchCandidates(CandidateSearchRequest request, Pageable pageable);
+/**
+* Xếp hạng toàn bộ ứng viên theo mô tả công việc: tách kỹ năng cục bộ (không gọi AI), chấm fast-match song song,
+* trả về top-K kèm kỹ năng khớp / còn thiếu.
 */
-List<User> searchCandidates(String skill, Double minGpa, String name);
-List<CandidateProfileResponse> searchByJobDescription(String jobDescription);
-}
\ No newline at end of file
+CandidateMatchResult searchByJobDescription(String jobDescription, int minScore, int limit);
+}
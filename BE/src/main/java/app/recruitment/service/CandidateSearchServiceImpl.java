@@ -1,63 +1,80 @@
 package app.recruitment.service;
 
-import app.auth.model.User;
-import app.auth.model.enums.UserRole;
-import app.auth.repository.UserRepository;
-import app.candidate.dto.response.CandidateProfileResponse; // Import DTO mới
+import app.ai.service.matching.LocalSkillExtractor;
+import app.recruitment.dto.request.CandidateSearchRequest;
+import app.recruitment.dto.response.CandidateMatchResult;
+import app.recruitment.dto.response.CandidateSearchItem;
+import app.recruitment.search.CandidateSearchIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
- * LƯU Ý:
- * - Hiện tại `User` trong workspace không có fields skills hoặc gpa. 
- * Vì vậy implement hiện tại hỗ trợ tìm theo tên + role=CANDIDATE.
- * - Để search theo skills/gpa, cần mở rộng schema hoặc sử dụng CVAnalysisService.
+ * Tìm kiếm ứng viên cho nhà tuyển dụng.
+ * - Mọi truy vấn chạy trên CandidateSearchIndex (tên, địa chỉ, vị trí kinh nghiệm, kỹ năng của CandidateProfile),
+ *   không còn nạp toàn bộ bảng users vào heap rồi lọc bằng Java.
+ * - Xếp hạng theo JD: kỹ năng tách bằng LocalSkillExtractor, chấm điểm song song trên chỉ mục, không gọi Gemini.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CandidateSearchServiceImpl implements CandidateSearchService {
 
-    private final UserRepository userRepository;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_MATCH_LIMIT = 200;
+
+    private final CandidateSearchIndex candidateSearchIndex;
+    private final LocalSkillExtractor localSkillExtractor;
 
     @Override
-    public List<User> searchCandidates(String skill, Double minGpa, String name) {
-        // filter role = CANDIDATE
-        List<User> candidates;
-        
-        if (name != null && !name.isBlank()) {
-            // Logic cũ: tìm placeholder rồi filter stream
-            candidates = userRepository.findByStatus(null) 
-                    .stream()
-                    .filter(u -> u.getUserRole() == UserRole.CANDIDATE)
-                    .filter(u -> u.getFullName() != null && u.getFullName().toLowerCase().contains(name.toLowerCase()))
-                    .collect(Collectors.toList());
-        } else {
-            // Logic cũ: tìm tất cả rồi filter role
-            candidates = userRepository.findAll().stream()
-                    .filter(u -> u.getUserRole() == UserRole.CANDIDATE)
-                    .collect(Collectors.toList());
+    public Page<CandidateSearchItem> searchCandidates(CandidateSearchRequest request, Pageable pageable) {
+        requireIndexReady();
+        // Chặn size quá lớn: kết quả dựng từ RAM nhưng vẫn phải serialize trả về
+        if (pageable.getPageSize() > MAX_PAGE_SIZE) {
+            pageable = PageRequest.of(pageable.getPageNumber(), MAX_PAGE_SIZE);
+        }
+        long offset = pageable.getOffset();
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Trang không hợp lệ");
         }
 
-        // Skill / GPA filtering: chưa có trường lưu trữ -> log warning như code cũ
-        if (skill != null && !skill.isBlank()) {
-            log.warn("Skill filter requested ('{}') but User.skills not present in schema. Returning name-filtered results only.", skill);
+        CandidateSearchIndex.SearchHits hits = candidateSearchIndex.search(
+                request != null ? request : new CandidateSearchRequest(), (int) offset, pageable.getPageSize());
+        return new PageImpl<>(hits.items(), pageable, hits.total());
+    }
+
+    @Override
+    public CandidateMatchResult searchByJobDescription(String jobDescription, int minScore, int limit) {
+        if (jobDescription == null || jobDescription.isBlank()) {
+            throw new IllegalArgumentException("Mô tả công việc không được để trống");
         }
-        if (minGpa != null) {
-            log.warn("GPA filter requested ({}) but User.gpa not present in schema. Ignored.", minGpa);
+        requireIndexReady();
+
+        List<String> jobSkills = localSkillExtractor.extract(jobDescription);
+        if (jobSkills.isEmpty()) {
+            throw new IllegalArgumentException("Không tìm thấy kỹ năng nào trong mô tả công việc");
         }
-        return candidates;
+
+        CandidateSearchIndex.RankedCandidates ranked = candidateSearchIndex.rankBySkills(
+                jobSkills, minScore, Math.max(1, Math.min(limit, MAX_MATCH_LIMIT)));
+        log.debug("Xếp hạng ứng viên theo JD: {} kỹ năng, {} hồ sơ khớp", jobSkills.size(), ranked.totalMatched());
+
+        return CandidateMatchResult.builder()
+                .jobSkills(jobSkills)
+                .totalMatched(ranked.totalMatched())
+                .candidates(ranked.items())
+                .build();
     }
 
-    @Override
-    public List<CandidateProfileResponse> searchByJobDescription(String jobDescription) {
-        // Tạm thời trả về list rỗng để fix lỗi biên dịch
-        // Sau này bạn sẽ gọi AI Service ở đây để match JD với Candidate
-        return Collections.emptyList();
+    private void requireIndexReady() {
+        if (!candidateSearchIndex.isReady()) {
+            throw new IllegalStateException("Chỉ mục ứng viên đang được khởi tạo, vui lòng thử lại sau giây lát");
+        }
     }
-}
\ No newline at end of file
+}
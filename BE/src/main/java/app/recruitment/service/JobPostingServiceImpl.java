@@ -1,6 +1,6 @@
 package app.recruitment.service;
 
-import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.matching.LocalSkillExtractor;
 import app.auth.model.User;
 import app.auth.model.enums.UserRole;
 import app.auth.repository.UserRepository;
@@ -8,6 +8,7 @@ import app.recruitment.dto.request.JobPostingRequest;
 import app.recruitment.dto.response.JobPostingResponse;
 import app.recruitment.entity.JobPosting;
 import app.recruitment.entity.enums.JobStatus;
+import app.recruitment.event.JobPostingChangedEvent;
 import app.recruitment.mapper.RecruitmentMapper;
 import app.recruitment.repository.JobApplicationRepository; // MỚI: Import Repo này
 import app.recruitment.repository.JobPostingRepository;
@@ -27,6 +28,7 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -41,7 +43,8 @@ public class JobPostingServiceImpl implements JobPostingService {
     // MỚI: Thêm Repository này để đếm số lượng đơn ứng tuyển
     private final JobApplicationRepository jobApplicationRepository; 
     private final RecruitmentMapper recruitmentMapper;
-    private final GeminiService geminiService;
+    private final LocalSkillExtractor localSkillExtractor;
+    private final JobSkillEnrichmentService skillEnrichmentService;
     private final ApplicationEventPublisher eventPublisher;
     private final CompanyRepository companyRepository;
 
@@ -56,12 +59,8 @@ public class JobPostingServiceImpl implements JobPostingService {
         }
         Company company = companyRepository.findByRecruiterId(recruiterId)
                 .orElseThrow(() -> new IllegalArgumentException("Vui lòng cập nhật thông tin công ty trước khi đăng bài!"));
-        List<String> skills = new ArrayList<>();
-        try {
-            skills = geminiService.extractSkillsFromJob(request.getDescription(), request.getRequirements());
-        } catch (Exception e) {
-            log.error("Lỗi khi trích xuất kỹ năng bằng AI (Vẫn tiếp tục tạo Job): {}", e.getMessage());
-        }
+        // Tách kỹ năng cục bộ theo từ điển (micro giây, tên chuẩn, đã bỏ trùng); Gemini chỉ bổ sung nền khi tìm được quá ít
+        List<String> skills = localSkillExtractor.extract(request.getTitle(), request.getDescription(), request.getRequirements());
 
         LocalDateTime expiryDateTime = request.getExpiryDate().atTime(LocalTime.MAX);
 
@@ -79,6 +78,10 @@ public class JobPostingServiceImpl implements JobPostingService {
                 .build();
 
         JobPosting savedJob = jobPostingRepository.save(j);
+        eventPublisher.publishEvent(new JobPostingChangedEvent(this, savedJob.getId()));
+        if (skillEnrichmentService.needsEnrichment(skills)) {
+            skillEnrichmentService.enrichAfterCommit(savedJob.getId(), request.getDescription(), request.getRequirements());
+        }
 
         try {
             eventPublisher.publishEvent(new PointEvent(
@@ -105,6 +108,10 @@ public class JobPostingServiceImpl implements JobPostingService {
             throw new IllegalArgumentException("Unauthorized: cannot edit job of another recruiter");
         }
 
+        boolean textChanged = !Objects.equals(job.getTitle(), request.getTitle())
+                || !Objects.equals(job.getDescription(), request.getDescription())
+                || !Objects.equals(job.getRequirements(), request.getRequirements());
+
         job.setTitle(request.getTitle());
         job.setDescription(request.getDescription());
         job.setRequirements(request.getRequirements());
@@ -115,11 +122,14 @@ public class JobPostingServiceImpl implements JobPostingService {
             job.setExpiryDate(request.getExpiryDate().atTime(LocalTime.MAX));
         }
 
-        try {
-            List<String> newSkills = geminiService.extractSkillsFromJob(request.getDescription(), request.getRequirements());
-            job.setExtractedSkills(newSkills);
-        } catch (Exception e) {
-            log.error("Lỗi khi cập nhật kỹ năng bằng AI (Giữ nguyên kỹ năng cũ): {}", e.getMessage());
+        // Nội dung không đổi -> giữ nguyên kỹ năng (kể cả phần Gemini đã bổ sung trước đó)
+        List<String> newSkills = List.of();
+        if (textChanged) {
+            newSkills = localSkillExtractor.extract(request.getTitle(), request.getDescription(), request.getRequirements());
+            // Không tách được kỹ năng nào -> giữ nguyên kỹ năng cũ
+            if (!newSkills.isEmpty()) {
+                job.setExtractedSkills(new ArrayList<>(newSkills));
+            }
         }
 
         if (request.getStatus() != null) {
@@ -129,7 +139,12 @@ public class JobPostingServiceImpl implements JobPostingService {
                 log.warn("Invalid job status: {}", request.getStatus());
             }
         }
-        return jobPostingRepository.save(job);
+        JobPosting savedJob = jobPostingRepository.save(job);
+        eventPublisher.publishEvent(new JobPostingChangedEvent(this, jobId));
+        if (textChanged && skillEnrichmentService.needsEnrichment(newSkills)) {
+            skillEnrichmentService.enrichAfterCommit(jobId, request.getDescription(), request.getRequirements());
+        }
+        return savedJob;
     }
 
     @Override
@@ -142,6 +157,7 @@ public class JobPostingServiceImpl implements JobPostingService {
         }
         job.setStatus(JobStatus.DELETED); 
         jobPostingRepository.save(job);
+        eventPublisher.publishEvent(new JobPostingChangedEvent(this, jobId));
     }
 
     @Override
@@ -0,0 +1,155 @@
+package app.recruitment.service;
+
+import app.ai.service.cv.gemini.GeminiService;
+import app.ai.service.matching.SkillLexicon;
+import app.recruitment.entity.JobPosting;
+import app.recruitment.event.JobPostingChangedEvent;
+import app.recruitment.repository.JobPostingRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bổ sung kỹ năng cho tin tuyển dụng bằng Gemini, chạy NỀN sau khi tin đã lưu.
+ * <p>
+ * Kỹ năng lúc tạo / sửa job lấy từ bộ tách cục bộ (LocalSkillExtractor), nên request không phải chờ LLM.
+ * Chỉ khi bộ tách cục bộ tìm được quá ít kỹ năng (skill.extract.min-local-skills) hoặc bật skill.extract.always-enrich
+ * thì mới gọi Gemini ở đây, gộp thêm kỹ năng vào job rồi cập nhật chỉ mục.
+ */
+@Service
+@Slf4j
+public class JobSkillEnrichmentService {
+
+    private final GeminiService geminiService;
+    private final JobPostingRepository jobPostingRepository;
+    private final SkillLexicon skillLexicon;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+
+    @Value("${skill.extract.min-local-skills:3}")
+    private int minLocalSkills;
+
+    @Value("${skill.extract.always-enrich:false}")
+    private boolean alwaysEnrich;
+
+    public JobSkillEnrichmentService(GeminiService geminiService,
+                                     JobPostingRepository jobPostingRepository,
+                                     SkillLexicon skillLexicon,
+                                     ApplicationEventPublisher eventPublisher,
+                                     MeterRegistry meterRegistry,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${skill.extract.enrich-queue-capacity:200}") int queueCapacity) {
+        this.geminiService = geminiService;
+        this.jobPostingRepository = jobPostingRepository;
+        this.skillLexicon = skillLexicon;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // 1 luồng là đủ: đây là việc phụ, Gemini đã có circuit breaker / cache riêng
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "job-skill-enrich-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /** Số kỹ năng bộ tách cục bộ tìm được có đủ tin cậy không, hay cần nhờ Gemini bổ sung. */
+    public boolean needsEnrichment(List<String> localSkills) {
+        return alwaysEnrich || localSkills == null || localSkills.size() < minLocalSkills;
+    }
+
+    /**
+     * Xếp lịch bổ sung kỹ năng cho job. Đang trong transaction thì chỉ chạy sau khi commit (job đã có trong DB).
+     */
+    public void enrichAfterCommit(Long jobId, String description, String requirements) {
+        Runnable submit = () -> {
+            try {
+                executor.execute(() -> enrich(jobId, description, requirements));
+            } catch (RejectedExecutionException e) {
+                count("rejected");
+                log.warn("Hàng đợi bổ sung kỹ năng đã đầy, bỏ qua job {}", jobId);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit.run();
+                }
+            });
+        } else {
+            submit.run();
+        }
+    }
+
+    private void enrich(Long jobId, String description, String requirements) {
+        try {
+            List<String> aiSkills = geminiService.extractSkillsFromJob(description, requirements);
+            if (aiSkills.isEmpty()) {
+                count("empty");
+                return;
+            }
+
+            Boolean changed = transactionTemplate.execute(status -> {
+                JobPosting job = jobPostingRepository.findById(jobId).orElse(null);
+                // Job đã bị xóa hoặc đã được sửa tiếp (lần sửa đó tự xếp lịch bổ sung riêng)
+                if (job == null
+                        || !Objects.equals(job.getDescription(), description)
+                        || !Objects.equals(job.getRequirements(), requirements)) {
+                    return false;
+                }
+                List<String> merged = new ArrayList<>(job.getExtractedSkills());
+                merged.addAll(aiSkills);
+                merged = skillLexicon.canonicalize(merged);
+                if (merged.size() == job.getExtractedSkills().size()) {
+                    return false;
+                }
+                log.info("Gemini bổ sung {} kỹ năng cho job {}", merged.size() - job.getExtractedSkills().size(), jobId);
+                job.setExtractedSkills(merged);
+                return true;
+            });
+
+            if (Boolean.TRUE.equals(changed)) {
+                count("merged");
+                eventPublisher.publishEvent(new JobPostingChangedEvent(this, jobId));
+            } else {
+                count("unchanged");
+            }
+        } catch (Exception e) {
+            count("failed");
+            log.warn("Lỗi bổ sung kỹ năng bằng AI cho job {} (giữ kỹ năng cục bộ): {}", jobId, e.getMessage());
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("skill.extract.enrich", "outcome", outcome).increment();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
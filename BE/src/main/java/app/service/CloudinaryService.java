@@ -22,14 +22,24 @@ public class CloudinaryService {
      */
     public String uploadFile(MultipartFile file) {
         try {
-            String originalFileName = file.getOriginalFilename();
+            return uploadFile(file.getBytes(), file.getOriginalFilename());
+        } catch (IOException e) {
+            throw new RuntimeException("Lỗi upload file lên Cloudinary: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Upload CV từ nội dung đã đọc sẵn (dùng cho xử lý nền, khi MultipartFile không còn hợp lệ)
+     */
+    public String uploadFile(byte[] content, String originalFileName) {
+        try {
             if (originalFileName == null) {
                 originalFileName = "cv_file"; 
             }
 
             @SuppressWarnings("unchecked")
             Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                file.getBytes(),
+                content,
                 ObjectUtils.asMap(
                     "resource_type", "auto",
                     "public_id", originalFileName,
@@ -38,6 +38,9 @@ export default function JobsPage() {
     company: string;
   } | null>(null);
   const [appliedJobIds, setAppliedJobIds] = useState<number[]>([]);
+  // Phân trang tab "Phù hợp": con trỏ trang kế do API trả về (null = hết)
+  const [matchingCursor, setMatchingCursor] = useState<string | null>(null);
+  const [loadingMore, setLoadingMore] = useState(false);
 
   // Logic bắt URL
   useEffect(() => {
@@ -76,8 +79,10 @@ export default function JobsPage() {
       let data = [];
 
       if (activeTab === "matching") {
-        // Tab phụ: API matching đã có sẵn điểm
-        data = await candidateService.getMatchingJobs();
+        // Tab phụ: API matching đã có sẵn điểm, xếp hạng sẵn, tải theo trang
+        const page = await candidateService.getMatchingJobsPage();
+        data = page?.items || [];
+        setMatchingCursor(page?.nextCursor || null);
       } else {
         // Tab chính: Lấy tất cả job
         if (typeof candidateService.getAllJobs === "function") {
@@ -150,6 +155,21 @@ export default function JobsPage() {
     }
   };
 
+  const loadMoreMatching = async () => {
+    if (!matchingCursor || loadingMore) return;
+    try {
+      setLoadingMore(true);
+      const page = await candidateService.getMatchingJobsPage(matchingCursor);
+      const more = Array.isArray(page?.items) ? page.items : [];
+      setJobs((prev) => [...prev, ...more]);
+      setMatchingCursor(page?.nextCursor || null);
+    } catch (error) {
+      console.error("Lỗi tải thêm việc làm phù hợp:", error);
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const fetchAppliedStatus = async () => {
     if (!user?.id) return;
     try {
@@ -321,7 +341,8 @@ export default function JobsPage() {
 
                     {/* MÔ TẢ & YÊU CẦU */}
                     <div className="space-y-3 mt-5 border-t border-gray-100 pt-4">
-                      {job.description && (
+                      {/* Tab matching chỉ trả về đoạn trích (descriptionSnippet / requirementsSnippet) */}
+                      {(job.description || job.descriptionSnippet) && (
                         <div className="flex gap-3 items-start">
                           <FileText
                             size={16}
@@ -332,13 +353,13 @@ export default function JobsPage() {
                               Mô tả:
                             </span>
                             <p className="text-sm text-gray-700 line-clamp-2 leading-relaxed">
-                              {job.description}
+                              {job.description || job.descriptionSnippet}
                             </p>
                           </div>
                         </div>
                       )}
 
-                      {job.requirements && (
+                      {(job.requirements || job.requirementsSnippet) && (
                         <div className="flex gap-3 items-start">
                           <ListChecks
                             size={16}
@@ -349,7 +370,7 @@ export default function JobsPage() {
                               Yêu cầu:
                             </span>
                             <p className="text-sm text-gray-700 line-clamp-2 leading-relaxed">
-                              {job.requirements}
+                              {job.requirements || job.requirementsSnippet}
                             </p>
                           </div>
                         </div>
@@ -430,6 +451,15 @@ export default function JobsPage() {
                 </div>
               </div>
             ))}
+            {activeTab === "matching" && matchingCursor && (
+              <button
+                onClick={loadMoreMatching}
+                disabled={loadingMore}
+                className="mx-auto px-6 py-2.5 bg-white text-blue-600 border border-blue-600 rounded-lg font-medium hover:bg-blue-50 transition-colors disabled:opacity-50"
+              >
+                {loadingMore ? "Đang tải..." : "Xem thêm việc làm phù hợp"}
+              </button>
+            )}
           </div>
         ) : (
           /* Empty State */
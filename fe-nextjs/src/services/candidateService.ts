@@ -1,13 +1,25 @@
 import api from "./api";
 import { CandidateResponse, CandidateProfile } from "@/types/candidate";
 
-// API Upload CV
+interface CvIngestionStatus {
+  ingestionId: string;
+  status: "PENDING" | "RUNNING" | "COMPLETED" | "FAILED";
+  stages: Record<string, string>;
+  cvFilePath?: string;
+  error?: string;
+}
+
+const INGESTION_POLL_INTERVAL_MS = 1500;
+const INGESTION_TIMEOUT_MS = 3 * 60 * 1000;
+
+// API Upload CV: BE nhận file và trả về mã ingestion (202), việc phân tích chạy nền
+// -> hỏi tiến độ định kỳ đến khi xong rồi lấy hồ sơ mới
 export const uploadCV = async (file: File): Promise<CandidateProfile> => {
   const formData = new FormData();
   formData.append("file", file);
 
   // Header 'Content-Type': 'multipart/form-data' thường được axios tự động set khi thấy FormData
-  const response = await api.post<CandidateResponse>(
+  const response = await api.post<{ data: CvIngestionStatus }>(
     "/candidate/profile/upload-cv",
     formData,
     {
@@ -17,7 +29,22 @@ export const uploadCV = async (file: File): Promise<CandidateProfile> => {
     },
   );
 
-  return response.data.data;
+  const ingestionId = response.data.data.ingestionId;
+  const deadline = Date.now() + INGESTION_TIMEOUT_MS;
+  while (Date.now() < deadline) {
+    await new Promise((resolve) => setTimeout(resolve, INGESTION_POLL_INTERVAL_MS));
+    const statusResponse = await api.get<{ data: CvIngestionStatus }>(
+      `/candidate/profile/upload-cv/${ingestionId}`,
+    );
+    const status = statusResponse.data.data;
+    if (status.status === "COMPLETED") {
+      return getMyProfile();
+    }
+    if (status.status === "FAILED") {
+      throw new Error(status.error || "Phân tích CV thất bại");
+    }
+  }
+  throw new Error("Phân tích CV quá lâu, vui lòng tải lại trang sau ít phút");
 };
 
 // API Lấy thông tin hồ sơ hiện tại
@@ -44,6 +71,14 @@ export const getMatchingJobs = async () => {
   return response.data.data;
 };
 
+// Gợi ý việc làm theo trang (top-K, mô tả/yêu cầu chỉ là đoạn trích descriptionSnippet/requirementsSnippet). Trả về { items, nextCursor, hasMore, totalMatched }
+export const getMatchingJobsPage = async (cursor?: string | null, size = 20) => {
+  const response = await api.get("/candidate/recommendations/matching/top", {
+    params: { size, ...(cursor ? { cursor } : {}) },
+  });
+  return response.data.data;
+};
+
 export const applyJob = async (data: {
   jobId: number;
   coverLetter: string;